@@ -0,0 +1,88 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single balance mutation on {@link Account}: the lock-free deposit and withdrawal, and the credit and debit
+ * done under the balance lock. The {@code contended} variants have every thread update one shared account.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountBenchmark {
+
+	@State(Scope.Thread)
+	public static class Own {
+		Account account;
+
+		@Setup(Level.Iteration)
+		public void setup() {
+			account = Account.ofMinor("Id-own", Long.MAX_VALUE / 2);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Shared {
+		Account account;
+
+		@Setup(Level.Iteration)
+		public void setup() {
+			account = Account.ofMinor("Id-shared", Long.MAX_VALUE / 2);
+		}
+	}
+
+	@Benchmark
+	public long depositWithdraw(Own own) {
+		own.account.deposit(1);
+		return own.account.withdraw(1) ? 1 : 0;
+	}
+
+	@Benchmark
+	public Account lockedCreditDebit(Own own) {
+		Account account = own.account.lockBalance();
+		try {
+			return account.credit(1).debit(1);
+		} finally {
+			account.unlockBalance();
+		}
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public long contendedDepositWithdraw(Shared shared) {
+		shared.account.deposit(1);
+		return shared.account.withdraw(1) ? 1 : 0;
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public Account contendedLockedCreditDebit(Shared shared) {
+		Account account = shared.account.lockBalance();
+		try {
+			return account.credit(1).debit(1);
+		} finally {
+			account.unlockBalance();
+		}
+	}
+
+	@Benchmark
+	public long readBalance(Own own) {
+		return own.account.readBalanceMinor();
+	}
+}
@@ -0,0 +1,75 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferCode;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.NotificationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a transfer that fails for insufficient funds, reported as a {@link TransferCode} by
+ * {@link AccountsService#tryTransfer} compared with the {@link InsufficientFundsException} thrown by
+ * {@link AccountsService#transfer(Transfer)}. Run with {@code -prof gc} to compare allocation as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FailedTransferBenchmark {
+
+	private AccountsService accountsService;
+	private Transfer overdraft;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		NotificationService notifications = (account, transferDescription) -> { };
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), notifications);
+		accountsService.createAccount(Account.ofMinor("empty", 0));
+		accountsService.createAccount(Account.ofMinor("payee", 0));
+		overdraft = Transfer.ofMinor("empty", "payee", 100);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		accountsService.shutdown();
+	}
+
+	@Benchmark
+	public TransferCode code() {
+		return accountsService.tryTransfer(overdraft);
+	}
+
+	@Benchmark
+	public TransferResult result() {
+		return accountsService.resultOf(accountsService.tryTransfer(overdraft), overdraft);
+	}
+
+	@Benchmark
+	public Exception exception() {
+		try {
+			accountsService.transfer(overdraft);
+			return null;
+		} catch (InsufficientFundsException e) {
+			return e;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.web.AccountsController;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+/**
+ * Request and response binding of {@link AccountsController}. The {@code jackson} benchmarks measure the object mapper
+ * alone; the {@code mvc} benchmarks dispatch through a standalone {@link MockMvc}, adding message conversion,
+ * validation and handler lookup but no servlet container.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBindingBenchmark {
+
+	private static final String ACCOUNT_JSON = "{\"accountId\":\"Id-123\",\"balance\":1000.25}";
+	private static final String TRANSFER_JSON = "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":0.01}";
+
+	private ObjectMapper objectMapper;
+	private Account account;
+	private AccountsService accountsService;
+	private MockMvc mockMvc;
+	private long nextAccountId;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		account = Account.ofMinor("Id-123", 100025);
+
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), (account, transferDescription) -> { });
+		mockMvc = standaloneSetup(new AccountsController(accountsService))
+				.setMessageConverters(new MappingJackson2HttpMessageConverter(objectMapper))
+				.build();
+	}
+
+	@Setup(Level.Iteration)
+	public void resetAccounts() {
+		accountsService.getAccountsRepository().clearAccounts();
+		accountsService.createAccount(Account.ofMinor("Id-1", Long.MAX_VALUE / 2));
+		accountsService.createAccount(Account.ofMinor("Id-2", 0));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		accountsService.shutdown();
+	}
+
+	@Benchmark
+	public Account jacksonReadAccount() throws IOException {
+		return objectMapper.readValue(ACCOUNT_JSON, Account.class);
+	}
+
+	@Benchmark
+	public Transfer jacksonReadTransfer() throws IOException {
+		return objectMapper.readValue(TRANSFER_JSON, Transfer.class);
+	}
+
+	@Benchmark
+	public String jacksonWriteAccount() throws IOException {
+		return objectMapper.writeValueAsString(account);
+	}
+
+	@Benchmark
+	public MvcResult mvcCreateAccount() throws Exception {
+		return mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountId\":\"Id-new-" + nextAccountId++ + "\",\"balance\":1000.25}")).andReturn();
+	}
+
+	@Benchmark
+	public MvcResult mvcGetAccount() throws Exception {
+		return mockMvc.perform(get("/v1/accounts/Id-1")).andReturn();
+	}
+
+	@Benchmark
+	public MvcResult mvcTransfer() throws Exception {
+		return mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+				.content(TRANSFER_JSON)).andReturn();
+	}
+}
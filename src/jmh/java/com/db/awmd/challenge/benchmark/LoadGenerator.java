@@ -0,0 +1,205 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferCode;
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Soak driver: fires transfers of a {@link Workload} through {@link AccountsService} from a number of threads for a
+ * fixed time, reports throughput, latency percentiles and outcomes, and then checks that the sum of all balances is
+ * unchanged and that no balance lock is left held. Unlike the JMH benchmarks, amounts are drawn up to
+ * {@code max-amount} against modest balances, so a share of the transfers fails for insufficient funds and the failure
+ * paths are soaked as well. Runs are repeatable for a given seed and thread count, up to thread scheduling.
+ * <p>
+ * Options, given as {@code name=value}: {@code accounts} (1000), {@code threads} (4), {@code seconds} (10),
+ * {@code workload} (UNIFORM), {@code mode} (locking or sharded), {@code hot} (false, promotes account 0 to striped
+ * credits), {@code initial-balance} (100000) and {@code max-amount} (50000), both in minor units, and {@code seed}
+ * (1). Exits with status 1 if a check fails.
+ */
+public final class LoadGenerator {
+
+	private static final int RING_SIZE = 1 << 16;
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+	private int accountCount = 1000;
+	private int threads = 4;
+	private long seconds = 10;
+	private Workload workload = Workload.UNIFORM;
+	private boolean sharded;
+	private boolean hot;
+	private long initialBalance = 100_000;
+	private long maxAmount = 50_000;
+	private long seed = 1;
+
+	public static void main(String[] args) throws InterruptedException {
+		LoadGenerator generator = new LoadGenerator();
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+			if (split < 0) {
+				throw new IllegalArgumentException("Expected name=value, got " + arg);
+			}
+			generator.set(arg.substring(0, split).replaceFirst("^--", ""), arg.substring(split + 1));
+		}
+		if (!generator.run()) {
+			System.exit(1);
+		}
+	}
+
+	private void set(String name, String value) {
+		switch (name) {
+			case "accounts":
+				accountCount = Integer.parseInt(value);
+				break;
+			case "threads":
+				threads = Integer.parseInt(value);
+				break;
+			case "seconds":
+				seconds = Long.parseLong(value);
+				break;
+			case "workload":
+				workload = Workload.valueOf(value.toUpperCase(Locale.ROOT));
+				break;
+			case "mode":
+				sharded = "sharded".equals(value);
+				break;
+			case "hot":
+				hot = Boolean.parseBoolean(value);
+				break;
+			case "initial-balance":
+				initialBalance = Long.parseLong(value);
+				break;
+			case "max-amount":
+				maxAmount = Long.parseLong(value);
+				break;
+			case "seed":
+				seed = Long.parseLong(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + name);
+		}
+	}
+
+	/**
+	 * Runs the load and prints the report.
+	 *
+	 * @return whether money was conserved and every lock released
+	 */
+	public boolean run() throws InterruptedException {
+		NotificationService notifications = (account, transferDescription) -> { };
+		AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory(), notifications);
+		TransferMetrics metrics = new TransferMetrics();
+		accountsService.setMetrics(metrics);
+		ShardedTransferEngine transferEngine = null;
+		if (sharded) {
+			transferEngine = new ShardedTransferEngine(0, 1024);
+			accountsService.setTransferEngine(transferEngine);
+		}
+
+		Account[] accounts = new Account[accountCount];
+		for (int i = 0; i < accountCount; i++) {
+			accounts[i] = Account.ofMinor("Id-" + i, initialBalance);
+			accountsService.createAccount(accounts[i]);
+		}
+		if (hot) {
+			accounts[0].promoteToHot();
+		}
+
+		System.out.printf(Locale.ROOT, "%s, %d accounts, %d threads, %s mode%s, %ds%n", workload, accountCount, threads,
+				sharded ? "sharded" : "locking", hot ? ", hot account 0" : "", seconds);
+
+		AtomicBoolean running = new AtomicBoolean(true);
+		CountDownLatch start = new CountDownLatch(1);
+		long[][] outcomes = new long[threads][TransferCode.values().length];
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			int[] ring = workload.pairs(31L * seed + t, accountCount, t, RING_SIZE);
+			long[] amounts = new SplittableRandom(seed * 17 + t).longs(RING_SIZE, 1, maxAmount + 1).toArray();
+			long[] counts = outcomes[t];
+			workers[t] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; running.get(); i = (i + 1) & (RING_SIZE - 1)) {
+					TransferCode code = accountsService.tryTransferMinor(accounts[ring[2 * i]], accounts[ring[2 * i + 1]],
+							amounts[i]);
+					counts[code.ordinal()]++;
+				}
+			}, "load-" + t);
+			workers[t].start();
+		}
+
+		long started = System.nanoTime();
+		start.countDown();
+		Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+		running.set(false);
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long elapsed = System.nanoTime() - started;
+		if (transferEngine != null) {
+			// Drains credits still in flight between shards.
+			transferEngine.shutdown();
+		}
+		accountsService.shutdown();
+
+		report(metrics, outcomes, elapsed);
+		return verify(accounts);
+	}
+
+	private static void report(TransferMetrics metrics, long[][] outcomes, long elapsedNanos) {
+		LatencyHistogram latency = metrics.getTransferLatency();
+		System.out.printf(Locale.ROOT, "%,d transfers, %,.0f/s%n", latency.getCount(),
+				latency.getCount() / (elapsedNanos / 1e9));
+		print("latency", latency);
+		print("lock wait", metrics.getLockWait());
+		print("lock hold", metrics.getLockHold());
+		for (TransferCode code : TransferCode.values()) {
+			long count = 0;
+			for (long[] counts : outcomes) {
+				count += counts[code.ordinal()];
+			}
+			if (count > 0) {
+				System.out.printf(Locale.ROOT, "  %-24s %,d%n", code, count);
+			}
+		}
+	}
+
+	private static void print(String name, LatencyHistogram histogram) {
+		long[] values = histogram.quantiles(QUANTILES);
+		System.out.printf(Locale.ROOT, "%-9s us: p50 %.1f, p90 %.1f, p99 %.1f, p999 %.1f, max %.1f%n", name,
+				values[0] / 1e3, values[1] / 1e3, values[2] / 1e3, values[3] / 1e3, histogram.getMax() / 1e3);
+	}
+
+	/**
+	 * Runs once the workers have ended, so a lock this thread cannot take was left held by one of them.
+	 */
+	private boolean verify(Account[] accounts) {
+		long total = 0;
+		int held = 0;
+		for (Account account : accounts) {
+			total += account.readBalanceMinor();
+			if (account.tryLockBalance(0)) {
+				account.unlockBalance();
+			} else {
+				held++;
+			}
+		}
+		long expected = initialBalance * accounts.length;
+		System.out.printf(Locale.ROOT, "balances %s: %,d of %,d; locks held: %d%n",
+				total == expected ? "conserved" : "NOT CONSERVED", total, expected, held);
+		return total == expected && held == 0;
+	}
+}
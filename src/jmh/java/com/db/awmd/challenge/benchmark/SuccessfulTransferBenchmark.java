@@ -0,0 +1,77 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferCode;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.NotificationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a transfer that succeeds, through {@link AccountsService#tryTransfer} alone and with the
+ * {@link TransferResult} clients get. Notifications are kept unformatted, the way a queueing notification service
+ * keeps them, so the figures include the {@link Transfer} handed to it. Run with {@code -prof gc} to see allocation
+ * per transfer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SuccessfulTransferBenchmark {
+
+	private static final long INITIAL_BALANCE = 1_000_000_000_000L;
+
+	private AccountsService accountsService;
+	private Transfer transfer;
+	private volatile Transfer notified;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		NotificationService notifications = new NotificationService() {
+			@Override
+			public void notifyAboutTransfer(Account account, String transferDescription) {
+			}
+
+			@Override
+			public void notifyAboutTransfer(Account account, Transfer transfer) {
+				notified = transfer;
+			}
+		};
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), notifications);
+		accountsService.createAccount(Account.ofMinor("payer", INITIAL_BALANCE));
+		accountsService.createAccount(Account.ofMinor("payee", 0));
+		transfer = Transfer.ofMinor("payer", "payee", 1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		accountsService.shutdown();
+	}
+
+	@Benchmark
+	public TransferCode code() {
+		return accountsService.tryTransfer(transfer);
+	}
+
+	@Benchmark
+	public TransferResult result() {
+		return accountsService.resultOf(accountsService.tryTransfer(transfer), transfer);
+	}
+}
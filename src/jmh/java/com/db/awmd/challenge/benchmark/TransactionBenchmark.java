@@ -0,0 +1,82 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Posting;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.NotificationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fee split, in which one account pays three others, as one {@link AccountsService#transact transaction} compared
+ * with the three transfers clients otherwise send. Every thread pays from the same source account, so the source
+ * balance lock is contended as it is for a busy payer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class TransactionBenchmark {
+
+	private static final long INITIAL_BALANCE = 1_000_000_000_000L;
+
+	private AccountsService accountsService;
+	private Account payer;
+	private Account merchant;
+	private Account platform;
+	private Account tax;
+	private Transaction feeSplit;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		NotificationService notifications = (account, transferDescription) -> { };
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), notifications);
+		payer = create("payer");
+		merchant = create("merchant");
+		platform = create("platform");
+		tax = create("tax");
+		feeSplit = new Transaction(Posting.ofMinor("payer", -100), Posting.ofMinor("merchant", 80),
+				Posting.ofMinor("platform", 15), Posting.ofMinor("tax", 5));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		accountsService.shutdown();
+	}
+
+	@Benchmark
+	public void transaction() {
+		accountsService.transact(feeSplit);
+	}
+
+	@Benchmark
+	public void separateTransfers() {
+		accountsService.transferMinor(payer, merchant, 80);
+		accountsService.transferMinor(payer, platform, 15);
+		accountsService.transferMinor(payer, tax, 5);
+	}
+
+	private Account create(String accountId) {
+		Account account = Account.ofMinor(accountId, INITIAL_BALANCE);
+		accountsService.createAccount(account);
+		return account;
+	}
+}
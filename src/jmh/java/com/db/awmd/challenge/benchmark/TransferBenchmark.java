@@ -0,0 +1,128 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of {@link AccountsService#transferMinor} against {@link AccountsRepositoryInMemory}, for each
+ * {@link Workload} and transfer mode. Balances are large enough that no transfer fails, and notifications go nowhere.
+ * <p>
+ * {@link #main(String[])} runs the suite at 1, 2, 4, ... threads up to the number of processors; any other JMH
+ * options passed to it are applied on top.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferBenchmark {
+
+	private static final long INITIAL_BALANCE = 1_000_000_000_000L;
+	private static final int RING_SIZE = 1 << 16;
+
+	@Param({"UNIFORM", "ZIPF", "HOT_DESTINATION", "OPPOSITE_PAIRS"})
+	public Workload workload;
+
+	@Param({"10000"})
+	public int accountCount;
+
+	@Param({"locking", "sharded"})
+	public String mode;
+
+	/**
+	 * Whether account 0, the destination of {@link Workload#HOT_DESTINATION}, takes striped credits.
+	 */
+	@Param({"false", "true"})
+	public boolean hotDestination;
+
+	private Account[] accounts;
+	private AccountsService accountsService;
+	private ShardedTransferEngine transferEngine;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		NotificationService notifications = (account, transferDescription) -> { };
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), notifications);
+		if ("sharded".equals(mode)) {
+			transferEngine = new ShardedTransferEngine(0, 1024);
+			accountsService.setTransferEngine(transferEngine);
+		}
+
+		accounts = new Account[accountCount];
+		for (int i = 0; i < accountCount; i++) {
+			accounts[i] = Account.ofMinor("Id-" + i, INITIAL_BALANCE);
+			accountsService.createAccount(accounts[i]);
+		}
+		if (hotDestination) {
+			accounts[0].promoteToHot();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		accountsService.shutdown();
+		if (transferEngine != null) {
+			transferEngine.shutdown();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Pairs {
+
+		private int[] ring;
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setup(TransferBenchmark benchmark, ThreadParams threadParams) {
+			int threadIndex = threadParams.getThreadIndex();
+			ring = benchmark.workload.pairs(31L * threadIndex + 17, benchmark.accountCount, threadIndex, RING_SIZE);
+		}
+	}
+
+	@Benchmark
+	public void transfer(Pairs pairs) {
+		int next = pairs.next;
+		pairs.next = (next + 2) & (2 * RING_SIZE - 1);
+		accountsService.transferMinor(accounts[pairs.ring[next]], accounts[pairs.ring[next + 1]], 1);
+	}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; ; threads = Math.min(2 * threads, processors)) {
+			ChainedOptionsBuilder options = new OptionsBuilder()
+					.parent(new CommandLineOptions(args))
+					.include(TransferBenchmark.class.getSimpleName())
+					.threads(threads);
+			new Runner(options.build()).run();
+			if (threads == processors) {
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * Account pair selection for the transfer benchmarks. Pairs are drawn up front into a ring, so that drawing them does
+ * not show up in the measurement.
+ */
+public enum Workload {
+
+	/**
+	 * Source and destination drawn uniformly from all accounts.
+	 */
+	UNIFORM {
+		@Override
+		void next(SplittableRandom random, int accounts, int threadIndex, int[] pair) {
+			pair[0] = random.nextInt(accounts);
+			pair[1] = random.nextInt(accounts);
+		}
+	},
+
+	/**
+	 * Source and destination drawn from a Zipf distribution with exponent 1, so a few accounts see most transfers.
+	 */
+	ZIPF {
+		@Override
+		void next(SplittableRandom random, int accounts, int threadIndex, int[] pair) {
+			pair[0] = zipf(random, accounts);
+			pair[1] = zipf(random, accounts);
+		}
+	},
+
+	/**
+	 * Every transfer credits account 0, from a uniformly drawn source.
+	 */
+	HOT_DESTINATION {
+		@Override
+		void next(SplittableRandom random, int accounts, int threadIndex, int[] pair) {
+			pair[0] = 1 + random.nextInt(accounts - 1);
+			pair[1] = 0;
+		}
+	},
+
+	/**
+	 * A few fixed pairs with even threads transferring one way and odd threads the other, the pattern that deadlocks
+	 * without ordered locking.
+	 */
+	OPPOSITE_PAIRS {
+		@Override
+		void next(SplittableRandom random, int accounts, int threadIndex, int[] pair) {
+			int first = 2 * random.nextInt(Math.min(OPPOSITE_PAIR_COUNT, accounts / 2));
+			boolean forward = (threadIndex & 1) == 0;
+			pair[0] = forward ? first : first + 1;
+			pair[1] = forward ? first + 1 : first;
+		}
+	};
+
+	private static final int OPPOSITE_PAIR_COUNT = 4;
+
+	abstract void next(SplittableRandom random, int accounts, int threadIndex, int[] pair);
+
+	/**
+	 * Fills the ring with account index pairs, two ints per transfer. Pairs drawn with the same account on both sides
+	 * are redrawn.
+	 */
+	public int[] pairs(long seed, int accounts, int threadIndex, int transfers) {
+		SplittableRandom random = new SplittableRandom(seed);
+		int[] pair = new int[2];
+		int[] ring = new int[2 * transfers];
+		for (int i = 0; i < transfers; i++) {
+			do {
+				next(random, accounts, threadIndex, pair);
+			} while (pair[0] == pair[1]);
+			ring[2 * i] = pair[0];
+			ring[2 * i + 1] = pair[1];
+		}
+		return ring;
+	}
+
+	private static int zipf(SplittableRandom random, int accounts) {
+		// Inverse transform of the continuous approximation of Zipf(1) over [1, accounts + 1)
+		double rank = Math.exp(random.nextDouble() * Math.log(accounts + 1.0));
+		return Math.min(accounts, (int) rank) - 1;
+	}
+}
@@ -0,0 +1,80 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Transfer;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * The secret shared by the nodes of a cluster. Every node-to-node request carries it in the {@value #HEADER} header,
+ * and the owner of a source account signs each reservation with it, so that the owner of the destination only
+ * prepares, and later commits, credits whose debit was actually reserved.
+ */
+public class ClusterCredentials {
+
+	public static final String HEADER = "X-Cluster-Secret";
+
+	static final int MIN_SECRET_LENGTH = 16;
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private final String secret;
+	private final SecretKeySpec key;
+
+	public ClusterCredentials(String secret) {
+		if (secret == null || secret.length() < MIN_SECRET_LENGTH) {
+			throw new IllegalArgumentException("The cluster secret must be at least " + MIN_SECRET_LENGTH
+					+ " characters long");
+		}
+		this.secret = secret;
+		this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+	}
+
+	public String getSecret() {
+		return secret;
+	}
+
+	/**
+	 * Compares in constant time, so that the secret cannot be guessed byte by byte from response times.
+	 */
+	public boolean authenticates(String presented) {
+		return presented != null && MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8),
+				presented.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Proof, issued by the owner of the source account once the amount is reserved, that the transfer may be credited.
+	 */
+	public String signReservation(String transferId, Transfer transfer) {
+		Mac mac;
+		try {
+			mac = Mac.getInstance(ALGORITHM);
+			mac.init(key);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(ALGORITHM + " is not available", e);
+		}
+		update(mac, transferId);
+		update(mac, transfer.getFromAccountId());
+		update(mac, transfer.getToAccountId());
+		mac.update(ByteBuffer.allocate(8).putLong(0, transfer.getAmountMinor()));
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(mac.doFinal());
+	}
+
+	public boolean verifyReservation(String token, String transferId, Transfer transfer) {
+		return token != null && MessageDigest.isEqual(signReservation(transferId, transfer).getBytes(StandardCharsets.UTF_8),
+				token.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Length-prefixed, so that no two different id combinations sign the same bytes.
+	 */
+	private static void update(Mac mac, String value) {
+		byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+		mac.update(ByteBuffer.allocate(4).putInt(0, bytes.length));
+		mac.update(bytes);
+	}
+}
@@ -0,0 +1,135 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountView;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.ShardUnavailableException;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * The accounts of another node, reached through its {@code /internal/shard} endpoints, see
+ * {@link com.db.awmd.challenge.web.ShardController}. Every request carries the cluster secret.
+ */
+public class HttpShardClient implements ShardClient {
+
+	private final String nodeId;
+	private final String baseUrl;
+	private final RestTemplate restTemplate;
+
+	public HttpShardClient(String nodeId, String baseUrl, ClusterCredentials credentials, int connectTimeoutMillis,
+						   int readTimeoutMillis) {
+		SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+		requestFactory.setConnectTimeout(connectTimeoutMillis);
+		requestFactory.setReadTimeout(readTimeoutMillis);
+		this.nodeId = nodeId;
+		this.baseUrl = baseUrl + "/internal/shard";
+		this.restTemplate = new RestTemplate(requestFactory);
+		this.restTemplate.getInterceptors().add((request, body, execution) -> {
+			request.getHeaders().set(ClusterCredentials.HEADER, credentials.getSecret());
+			return execution.execute(request, body);
+		});
+	}
+
+	@Override
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	@Override
+	public void createAccount(Account account) {
+		try {
+			restTemplate.postForEntity(baseUrl + "/accounts", account, Void.class);
+		} catch (HttpClientErrorException e) {
+			if (e.getStatusCode() == HttpStatus.BAD_REQUEST) {
+				throw new DuplicateAccountIdException(e.getResponseBodyAsString());
+			}
+			throw new ShardUnavailableException(nodeId, e);
+		} catch (RestClientException e) {
+			throw new ShardUnavailableException(nodeId, e);
+		}
+	}
+
+	/**
+	 * The JSON body carries no version, so it is taken from the ETag.
+	 */
+	@Override
+	public AccountView getAccount(String accountId) {
+		try {
+			ResponseEntity<AccountView> response = restTemplate.getForEntity(baseUrl + "/accounts/{accountId}",
+					AccountView.class, accountId);
+			AccountView view = response.getBody();
+			if (view == null) {
+				return null;
+			}
+			String eTag = response.getHeaders().getETag();
+			long version = eTag != null ? Long.parseLong(eTag.replace("\"", "")) : 0;
+			return new AccountView(view.getAccountId(), view.getBalanceMinor(), version);
+		} catch (RestClientException e) {
+			throw new ShardUnavailableException(nodeId, e);
+		}
+	}
+
+	@Override
+	public TransferResult transfer(Transfer transfer, String idempotencyKey) {
+		HttpHeaders headers = new HttpHeaders();
+		if (idempotencyKey != null) {
+			headers.set("Idempotency-Key", idempotencyKey);
+		}
+		try {
+			return restTemplate.exchange(baseUrl + "/transfer", HttpMethod.PUT, new HttpEntity<>(transfer, headers),
+					TransferResult.class).getBody();
+		} catch (RestClientException e) {
+			throw new ShardUnavailableException(nodeId, e);
+		}
+	}
+
+	@Override
+	public Reservation reserve(String transferId, Transfer transfer) {
+		try {
+			return restTemplate.exchange(baseUrl + "/transfers/{transferId}/reserve", HttpMethod.PUT,
+					new HttpEntity<>(transfer), Reservation.class, transferId).getBody();
+		} catch (RestClientException e) {
+			throw new ShardUnavailableException(nodeId, e);
+		}
+	}
+
+	@Override
+	public TransferResult prepareCredit(String transferId, Transfer transfer, String reservation) {
+		return hold("/transfers/{transferId}/prepare-credit?reservation={reservation}", transfer, transferId,
+				reservation);
+	}
+
+	@Override
+	public TransferResult commit(String transferId) {
+		return hold("/transfers/{transferId}/commit", null, transferId);
+	}
+
+	@Override
+	public void abort(String transferId) {
+		hold("/transfers/{transferId}/abort", null, transferId);
+	}
+
+	@Override
+	public TransferResult settleCredit(String transferId) {
+		return hold("/transfers/{transferId}/settle-credit", null, transferId);
+	}
+
+	private TransferResult hold(String path, Transfer transfer, Object... uriVariables) {
+		try {
+			return restTemplate.exchange(baseUrl + path, HttpMethod.PUT, new HttpEntity<>(transfer),
+					TransferResult.class, uriVariables).getBody();
+		} catch (RestClientException e) {
+			throw new ShardUnavailableException(nodeId, e);
+		}
+	}
+}
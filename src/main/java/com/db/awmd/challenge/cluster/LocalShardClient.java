@@ -0,0 +1,76 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountView;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.service.AccountsService;
+
+/**
+ * The accounts of the node it runs on.
+ */
+public class LocalShardClient implements ShardClient {
+
+	private final String nodeId;
+	private final AccountsService accountsService;
+	private final ShardParticipant participant;
+
+	public LocalShardClient(String nodeId, AccountsService accountsService, ShardParticipant participant) {
+		this.nodeId = nodeId;
+		this.accountsService = accountsService;
+		this.participant = participant;
+	}
+
+	@Override
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	@Override
+	public void createAccount(Account account) {
+		accountsService.createAccount(account);
+	}
+
+	@Override
+	public AccountView getAccount(String accountId) {
+		return accountsService.getAccountView(accountId);
+	}
+
+	@Override
+	public TransferResult transfer(Transfer transfer, String idempotencyKey) {
+		if (idempotencyKey == null) {
+			return accountsService.resultOf(accountsService.tryTransfer(transfer), transfer);
+		}
+		try {
+			return accountsService.transfer(transfer, idempotencyKey);
+		} catch (IllegalArgumentException e) {
+			return TransferResult.failed(TransferStatus.REJECTED, e);
+		}
+	}
+
+	@Override
+	public Reservation reserve(String transferId, Transfer transfer) {
+		return participant.reserve(transferId, transfer);
+	}
+
+	@Override
+	public TransferResult prepareCredit(String transferId, Transfer transfer, String reservation) {
+		return participant.prepareCredit(transferId, transfer, reservation);
+	}
+
+	@Override
+	public TransferResult commit(String transferId) {
+		return participant.commit(transferId);
+	}
+
+	@Override
+	public void abort(String transferId) {
+		participant.abort(transferId);
+	}
+
+	@Override
+	public TransferResult settleCredit(String transferId) {
+		return participant.settleCredit(transferId);
+	}
+}
@@ -0,0 +1,29 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.TransferResult;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+/**
+ * Answer to a reservation: its result and, if the amount is reserved, the token that lets the owner of the destination
+ * prepare the credit, see {@link ClusterCredentials#signReservation}. A reservation of an aborted transfer id says so,
+ * since nothing of that attempt was applied and the transfer may be attempted again under a new id.
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Reservation {
+
+	private final TransferResult result;
+	private final String token;
+	private final boolean aborted;
+
+	@JsonCreator
+	public Reservation(@JsonProperty("result") TransferResult result, @JsonProperty("token") String token,
+					   @JsonProperty("aborted") boolean aborted) {
+		this.result = result;
+		this.token = token;
+		this.aborted = aborted;
+	}
+}
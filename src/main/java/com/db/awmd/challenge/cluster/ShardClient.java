@@ -0,0 +1,48 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountView;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.ShardUnavailableException;
+
+/**
+ * Operations on the accounts owned by one node, in process or over HTTP. Every method may throw
+ * {@link ShardUnavailableException}; the hold operations are idempotent per transfer id and safe to retry, see
+ * {@link ShardParticipant}.
+ */
+public interface ShardClient {
+
+	String getNodeId();
+
+	void createAccount(Account account) throws DuplicateAccountIdException;
+
+	AccountView getAccount(String accountId);
+
+	/**
+	 * Transfers between two accounts owned by this node, at most once per idempotency key if one is given.
+	 */
+	TransferResult transfer(Transfer transfer, String idempotencyKey);
+
+	Reservation reserve(String transferId, Transfer transfer);
+
+	/**
+	 * @param reservation the token of the {@link #reserve reservation} of the transfer on the owner of the source
+	 */
+	TransferResult prepareCredit(String transferId, Transfer transfer, String reservation);
+
+	/**
+	 * @return completed once committed, otherwise why the transfer cannot be committed on this node
+	 */
+	TransferResult commit(String transferId);
+
+	void abort(String transferId);
+
+	/**
+	 * Aborts the credit of the transfer unless it is already committed, see {@link ShardParticipant#settleCredit}.
+	 *
+	 * @return completed if the credit is committed
+	 */
+	TransferResult settleCredit(String transferId);
+}
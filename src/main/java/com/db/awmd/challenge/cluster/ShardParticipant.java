@@ -0,0 +1,402 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.persistence.HoldRecord;
+import com.db.awmd.challenge.persistence.HoldRecord.State;
+import com.db.awmd.challenge.persistence.TransferJournal;
+import com.db.awmd.challenge.service.AccountsService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Node-local half of a transfer between accounts owned by different nodes. The coordinator, {@link ShardRouter},
+ * reserves the amount on the node owning the source account, which debits it into a hold and signs the reservation,
+ * and prepares the credit on the node owning the destination, which checks the signature and that the account
+ * exists. If both succeed it commits the credit and then the debit. Otherwise it aborts both, which refunds a reserved
+ * debit. A credit is thus only ever applied for an amount reserved on the source. Until then reserved money is counted
+ * by {@link #getReservedMinor()}: it is held, never lost.
+ * <p>
+ * Every step is idempotent per transfer id, so the coordinator can retry one whose answer it did not get. An abort
+ * leaves a tombstone, so a reservation that arrives after it is refused rather than held forever. The refusal is
+ * marked {@link Reservation#isAborted() aborted}, which lets a retried request move on to a new attempt id instead of
+ * failing for good. Resolved holds are forgotten after {@code retentionMillis}.
+ * <p>
+ * With a {@link TransferJournal}, every state change of a hold is journaled in one record with the balance change it
+ * makes, and the holds replayed at startup are taken over, so a restart neither loses a reservation nor applies a
+ * credit twice. A reservation whose coordinator has not committed or aborted it within {@code timeoutMillis} is
+ * {@link #settleExpired settled} with the owner of the destination: a credit committed there is final, any other
+ * credit is aborted there, and the debit follows.
+ */
+@Slf4j
+public class ShardParticipant {
+
+	private final AccountsService accountsService;
+	private final ClusterCredentials credentials;
+	private final long retentionMillis;
+	private final long timeoutMillis;
+	private final ConcurrentHashMap<String, Hold> holds = new ConcurrentHashMap<>();
+	private final AtomicLong reserved = new AtomicLong();
+	private volatile TransferJournal journal;
+
+	public ShardParticipant(AccountsService accountsService, ClusterCredentials credentials, long retentionMillis,
+							long timeoutMillis) {
+		this.accountsService = accountsService;
+		this.credentials = credentials;
+		this.retentionMillis = retentionMillis;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Takes over the holds the journal replayed at startup and journals every hold from now on. Recovered
+	 * reservations wait a full timeout again before they are settled.
+	 */
+	public void setJournal(TransferJournal journal) {
+		int open = 0;
+		for (HoldRecord record : journal.takeReplayedHolds()) {
+			Hold hold = new Hold(record.getTransferId(), record.isDebit(), record.getTransfer());
+			hold.moveTo(record.getState());
+			if (record.getState() == State.RESERVED) {
+				reserved.addAndGet(record.getTransfer().getAmountMinor());
+			}
+			if (record.getState().isOpen()) {
+				open++;
+			}
+			holds.put(record.key(), hold);
+		}
+		this.journal = journal;
+		log.info("Recovered {} holds from the journal, {} of them open", holds.size(), open);
+	}
+
+	/**
+	 * Debits the source account of the transfer into a hold.
+	 *
+	 * @return the result, with a token for {@link #prepareCredit} once the amount is reserved
+	 */
+	public Reservation reserve(String transferId, Transfer transfer) {
+		Hold hold = holds.computeIfAbsent(HoldRecord.key(transferId, true),
+				key -> new Hold(transferId, true, transfer));
+		hold.lock.lock();
+		try {
+			if (hold.state == State.NEW) {
+				TransferResult result = AccountsService.toResult(() -> {
+					Account from = account(transfer.getFromAccountId());
+					if (!from.withdraw(checkAmount(transfer))) {
+						throw new InsufficientFundsException(from);
+					}
+				});
+				if (result.getStatus() == TransferStatus.COMPLETED) {
+					advance(hold, State.RESERVED, -transfer.getAmountMinor());
+					reserved.addAndGet(transfer.getAmountMinor());
+				} else {
+					hold.fail(result);
+				}
+			}
+			TransferResult outcome = hold.outcome(transferId, transfer);
+			boolean held = hold.state == State.RESERVED || hold.state == State.COMMITTED;
+			boolean aborted = hold.state == State.ABORTED
+					&& (hold.transfer == null || Hold.sameTransfer(hold.transfer, transfer));
+			return new Reservation(outcome, held && outcome.getStatus() == TransferStatus.COMPLETED
+					? credentials.signReservation(transferId, transfer) : null, aborted);
+		} finally {
+			hold.lock.unlock();
+		}
+	}
+
+	/**
+	 * Checks that the destination account of the transfer exists and remembers the credit until it is committed. Only
+	 * transfers whose amount the owner of the source has reserved, as shown by its token, are prepared.
+	 */
+	public TransferResult prepareCredit(String transferId, Transfer transfer, String reservation) {
+		if (!credentials.verifyReservation(reservation, transferId, transfer)) {
+			log.warn("Refusing to prepare transfer {} without a valid reservation", transferId);
+			return TransferResult.failed(TransferStatus.REJECTED,
+					"Transfer " + transferId + " has no valid reservation");
+		}
+		Hold hold = holds.computeIfAbsent(HoldRecord.key(transferId, false),
+				key -> new Hold(transferId, false, transfer));
+		hold.lock.lock();
+		try {
+			if (hold.state == State.NEW) {
+				TransferResult result = AccountsService.toResult(() -> {
+					checkAmount(transfer);
+					account(transfer.getToAccountId());
+				});
+				if (result.getStatus() == TransferStatus.COMPLETED) {
+					advance(hold, State.PREPARED, 0);
+				} else {
+					hold.fail(result);
+				}
+			}
+			return hold.outcome(transferId, transfer);
+		} finally {
+			hold.lock.unlock();
+		}
+	}
+
+	/**
+	 * Applies the holds of the transfer on this node. Committing again is a no-op, also after a restart.
+	 *
+	 * @return completed once committed, rejected if the transfer was aborted or is unknown here
+	 */
+	public TransferResult commit(String transferId) {
+		Hold debit = holds.get(HoldRecord.key(transferId, true));
+		Hold credit = holds.get(HoldRecord.key(transferId, false));
+		if (debit == null && credit == null) {
+			return TransferResult.failed(TransferStatus.REJECTED, "Transfer " + transferId + " is unknown");
+		}
+		TransferResult result = TransferResult.completed();
+		if (credit != null) {
+			result = commit(credit);
+		}
+		if (debit != null && result.getStatus() == TransferStatus.COMPLETED) {
+			result = commit(debit);
+		}
+		return result;
+	}
+
+	public void abort(String transferId) {
+		abort(holds.computeIfAbsent(HoldRecord.key(transferId, true), key -> new Hold(transferId, true, null)));
+		abort(holds.computeIfAbsent(HoldRecord.key(transferId, false), key -> new Hold(transferId, false, null)));
+	}
+
+	/**
+	 * Answers the owner of the source of a transfer whose reservation timed out: a committed credit stays committed,
+	 * any other is aborted, so that a commit from the coordinator arriving later is refused.
+	 *
+	 * @return completed if the credit is committed, rejected if it is aborted
+	 */
+	public TransferResult settleCredit(String transferId) {
+		Hold credit = holds.computeIfAbsent(HoldRecord.key(transferId, false),
+				key -> new Hold(transferId, false, null));
+		credit.lock.lock();
+		try {
+			if (credit.state != State.COMMITTED) {
+				abort(credit);
+			}
+			return commitOutcome(credit);
+		} finally {
+			credit.lock.unlock();
+		}
+	}
+
+	/**
+	 * Settles reservations that their coordinator has left open for longer than the timeout, with the owners of
+	 * their destinations. Reservations whose destination cannot be reached are tried again on the next call.
+	 *
+	 * @param owners the owner of an account
+	 */
+	public void settleExpired(Function<String, ShardClient> owners) {
+		long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		for (Hold hold : holds.values()) {
+			if (!hold.debit || hold.state != State.RESERVED || hold.createdAt - cutoff > 0) {
+				continue;
+			}
+			TransferResult credit;
+			try {
+				credit = owners.apply(hold.transfer.getToAccountId()).settleCredit(hold.transferId);
+			} catch (RuntimeException e) {
+				log.warn("Could not settle expired transfer {}, will retry: {}", hold.transferId, e.getMessage());
+				continue;
+			}
+			boolean committed = credit.getStatus() == TransferStatus.COMPLETED;
+			log.warn("Settled transfer {} left open by its coordinator: {}", hold.transferId,
+					committed ? "committed" : "aborted");
+			if (committed) {
+				commit(hold);
+			} else {
+				abort(hold);
+			}
+		}
+	}
+
+	/**
+	 * Forgets committed, aborted and failed holds resolved longer than the retention period ago.
+	 */
+	public void purgeResolved() {
+		long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(retentionMillis);
+		for (Iterator<Hold> iterator = holds.values().iterator(); iterator.hasNext(); ) {
+			Hold hold = iterator.next();
+			if (hold.resolvedAt != 0 && hold.resolvedAt - cutoff < 0) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Money debited by reservations that are neither committed nor aborted yet, in minor units.
+	 */
+	public long getReservedMinor() {
+		return reserved.get();
+	}
+
+	public int getHolds() {
+		return holds.size();
+	}
+
+	private TransferResult commit(Hold hold) {
+		hold.lock.lock();
+		try {
+			Transfer transfer = hold.transfer;
+			if (hold.state == State.RESERVED) {
+				advance(hold, State.COMMITTED, 0);
+				reserved.addAndGet(-transfer.getAmountMinor());
+				accountsService.getLedger().recordOneSide(transfer.getFromAccountId(), transfer.getToAccountId(),
+						-transfer.getAmountMinor());
+				Account from = accountsService.getAccount(transfer.getFromAccountId());
+				if (from != null) {
+					accountsService.getNotificationService().notifyAboutTransfer(from, transfer);
+				}
+			} else if (hold.state == State.PREPARED) {
+				advance(hold, State.COMMITTED, transfer.getAmountMinor());
+				accountsService.getLedger().recordOneSide(transfer.getToAccountId(), transfer.getFromAccountId(),
+						transfer.getAmountMinor());
+			} else if (hold.state != State.COMMITTED) {
+				log.error("Cannot commit transfer {} in state {}", hold.transferId, hold.state);
+			}
+			return commitOutcome(hold);
+		} finally {
+			hold.lock.unlock();
+		}
+	}
+
+	private void abort(Hold hold) {
+		hold.lock.lock();
+		try {
+			if (hold.state == State.COMMITTED) {
+				log.error("Cannot abort committed transfer {}", hold.transferId);
+			} else if (hold.state == State.RESERVED) {
+				advance(hold, State.ABORTED, hold.transfer.getAmountMinor());
+				reserved.addAndGet(-hold.transfer.getAmountMinor());
+			} else if (hold.state == State.PREPARED) {
+				advance(hold, State.ABORTED, 0);
+			} else if (hold.state != State.ABORTED) {
+				// Nothing is held, so the tombstone need not survive a restart.
+				hold.moveTo(State.ABORTED);
+			}
+		} finally {
+			hold.lock.unlock();
+		}
+	}
+
+	/**
+	 * Moves the hold to the given state and the balance of its account by the delta, journaled as one record. A debit
+	 * is already taken when this is called and is given back if the record cannot be appended; a credit is applied
+	 * only once the record is appended. Waits for the record to be durable only after the state has changed, so that
+	 * a retry after a failed wait finds the change applied and does not apply it again.
+	 */
+	private void advance(Hold hold, State state, long delta) {
+		TransferJournal journal = this.journal;
+		long position = 0;
+		if (journal != null) {
+			try {
+				position = journal.appendHold(new HoldRecord(hold.transferId, hold.debit, state, hold.transfer, delta));
+			} catch (RuntimeException e) {
+				if (delta < 0) {
+					account(hold.accountId()).deposit(-delta);
+				}
+				throw e;
+			}
+		}
+		if (delta > 0) {
+			account(hold.accountId()).deposit(delta);
+		}
+		hold.moveTo(state);
+		if (position > 0) {
+			journal.awaitCommit(position);
+		}
+	}
+
+	private Account account(String accountId) {
+		Account account = accountsService.getAccount(accountId);
+		if (account == null) {
+			throw new AccountNotFoundException(Collections.singletonList(accountId));
+		}
+		return account;
+	}
+
+	private static long checkAmount(Transfer transfer) {
+		if (transfer.getAmountMinor() <= 0) {
+			throw new IllegalArgumentException("Invalid amount " + transfer.getAmount());
+		}
+		return transfer.getAmountMinor();
+	}
+
+	private static TransferResult commitOutcome(Hold hold) {
+		if (hold.state == State.COMMITTED) {
+			return TransferResult.completed();
+		}
+		return TransferResult.failed(TransferStatus.REJECTED, hold.state == State.ABORTED
+				? "Transfer " + hold.transferId + " was aborted"
+				: "Transfer " + hold.transferId + " cannot be committed in state " + hold.state);
+	}
+
+	/**
+	 * One side of a transfer on this node. Guarded by its lock, which is held across journaled balance updates and so
+	 * is not a monitor, see {@link com.db.awmd.challenge.service.VirtualThreads}. The state is volatile for
+	 * {@link #settleExpired}, which looks for expired reservations without taking every lock.
+	 */
+	private static final class Hold {
+		private final ReentrantLock lock = new ReentrantLock();
+		private final String transferId;
+		private final boolean debit;
+		private final Transfer transfer;
+		private final long createdAt = System.nanoTime();
+		private volatile State state = State.NEW;
+		private TransferResult failure;
+		private volatile long resolvedAt;
+
+		private Hold(String transferId, boolean debit, Transfer transfer) {
+			this.transferId = transferId;
+			this.debit = debit;
+			this.transfer = transfer;
+		}
+
+		private String accountId() {
+			return debit ? transfer.getFromAccountId() : transfer.getToAccountId();
+		}
+
+		private void fail(TransferResult result) {
+			failure = result;
+			moveTo(State.FAILED);
+		}
+
+		private void moveTo(State state) {
+			this.state = state;
+			if (!state.isOpen()) {
+				this.resolvedAt = System.nanoTime() | 1;
+			}
+		}
+
+		private TransferResult outcome(String transferId, Transfer request) {
+			if (transfer != null && !sameTransfer(transfer, request)) {
+				return new TransferResult(TransferStatus.REJECTED, "Transfer id " + transferId
+						+ " was used for a different transfer");
+			}
+			if (state == State.ABORTED) {
+				return new TransferResult(TransferStatus.REJECTED, "Transfer " + transferId + " was aborted");
+			}
+			if (transfer == null) {
+				return new TransferResult(TransferStatus.REJECTED, "Transfer " + transferId + " is unknown");
+			}
+			return state == State.FAILED ? failure : TransferResult.completed();
+		}
+
+		private static boolean sameTransfer(Transfer a, Transfer b) {
+			return a.getAmountMinor() == b.getAmountMinor() && Objects.equals(a.getFromAccountId(), b.getFromAccountId())
+					&& Objects.equals(a.getToAccountId(), b.getToAccountId());
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.db.awmd.challenge.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring that maps account ids to the node owning them. Every node is placed on the ring at
+ * {@code virtualNodes} points, and an account belongs to the first node point at or after the hash of its id. Adding or
+ * removing a node only moves the accounts between its points and their predecessors, about {@code 1/n} of them.
+ * <p>
+ * The hash depends only on the UTF-8 bytes of the id, so every node computes the same owner.
+ */
+public class ShardRing {
+
+	private final NavigableMap<Integer, String> ring = new TreeMap<>();
+
+	public ShardRing(Collection<String> nodeIds, int virtualNodes) {
+		if (nodeIds.isEmpty() || virtualNodes <= 0) {
+			throw new IllegalArgumentException("A ring needs at least one node and one virtual node per node");
+		}
+		for (String nodeId : nodeIds) {
+			for (int i = 0; i < virtualNodes; i++) {
+				int point = hash(nodeId + "#" + i);
+				String other = ring.get(point);
+				// On a collision the smaller id wins, so placement does not depend on the order nodes are listed in.
+				if (other == null || nodeId.compareTo(other) < 0) {
+					ring.put(point, nodeId);
+				}
+			}
+		}
+	}
+
+	public String ownerOf(String accountId) {
+		Map.Entry<Integer, String> point = ring.ceilingEntry(hash(accountId));
+		return (point != null ? point : ring.firstEntry()).getValue();
+	}
+
+	/**
+	 * FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 mixer so that similar ids spread over the ring.
+	 */
+	static int hash(String key) {
+		int hash = 0x811c9dc5;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			hash = (hash ^ (b & 0xff)) * 0x01000193;
+		}
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+}
@@ -0,0 +1,275 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountView;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.ShardUnavailableException;
+import com.db.awmd.challenge.service.DaemonThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends every account operation to the node owning the account, as given by a {@link ShardRing}, and coordinates
+ * transfers between accounts owned by different nodes.
+ * <p>
+ * A transfer within one node is forwarded to it as a whole and runs under that node's balance locks. A transfer
+ * across nodes runs the reserve/commit protocol of {@link ShardParticipant}: reserve on the source owner, prepare
+ * the credit on the destination owner, then commit both, or abort both if either step failed or did not answer. The
+ * credit is committed first and is the point of no return: the debit is only committed once the destination has
+ * confirmed the credit, and is aborted if the destination reports it aborted instead. A transfer is reported completed
+ * only after that confirmation; until then it is unavailable, and a retry with the same idempotency key learns its
+ * outcome. Commits and aborts that fail are retried in the background until they succeed, and reservations left open
+ * by a coordinator that failed are settled by their participants, so a reserved amount ends up either credited or
+ * refunded. The transfer id is derived from the idempotency key when there is one, which makes a retried request safe
+ * even when it reaches another coordinator.
+ * <p>
+ * Each attempt of a transfer has its own id, the derived id with an attempt number. An aborted attempt, for example
+ * one that found a node unavailable, keeps its tombstone so that late messages for it stay refused, and a retried
+ * request moves past it to the next attempt. An attempt that is not aborted is taken up where it stands, so a
+ * transfer that completed is not executed again. An abort never overrides a credit that another coordinator of the
+ * same attempt has committed: the destination then reports it committed, and the debit is committed too.
+ */
+@Slf4j
+public class ShardRouter implements Closeable {
+
+	/**
+	 * Attempts of one transfer a retried request goes through before it gives up.
+	 */
+	static final int MAX_ATTEMPTS = 16;
+
+	private final String localNodeId;
+	private final ShardRing ring;
+	private final Map<String, ShardClient> clients;
+	private final ShardParticipant participant;
+	private final Queue<Decision> unresolved = new ConcurrentLinkedQueue<>();
+	private final ScheduledExecutorService scheduler =
+			Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("shard-router"));
+
+	public ShardRouter(String localNodeId, ShardRing ring, Map<String, ShardClient> clients,
+					   ShardParticipant participant, long retryMillis) {
+		if (!clients.containsKey(localNodeId)) {
+			throw new IllegalArgumentException("Node " + localNodeId + " is not one of the cluster nodes " + clients.keySet());
+		}
+		this.localNodeId = localNodeId;
+		this.ring = ring;
+		this.clients = clients;
+		this.participant = participant;
+		scheduler.scheduleWithFixedDelay(this::retryUnresolved, retryMillis, retryMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public ShardClient ownerOf(String accountId) {
+		return clients.get(ring.ownerOf(accountId));
+	}
+
+	public boolean isLocal(String accountId) {
+		return localNodeId.equals(ring.ownerOf(accountId));
+	}
+
+	/**
+	 * @throws ShardUnavailableException if the owner cannot be reached
+	 */
+	public void createAccount(Account account) throws DuplicateAccountIdException {
+		ownerOf(account.getAccountId()).createAccount(account);
+	}
+
+	/**
+	 * @throws ShardUnavailableException if the owner cannot be reached
+	 */
+	public AccountView getAccount(String accountId) {
+		return ownerOf(accountId).getAccount(accountId);
+	}
+
+	public TransferResult transfer(Transfer transfer, String idempotencyKey) {
+		if (transfer.getFromAccountId() == null || transfer.getToAccountId() == null) {
+			// Rejected locally, the same way as without sharding.
+			return clients.get(localNodeId).transfer(transfer, idempotencyKey);
+		}
+
+		ShardClient source = ownerOf(transfer.getFromAccountId());
+		ShardClient destination = ownerOf(transfer.getToAccountId());
+		if (source == destination) {
+			try {
+				return source.transfer(transfer, idempotencyKey);
+			} catch (ShardUnavailableException e) {
+				return TransferResult.failed(TransferStatus.UNAVAILABLE, e);
+			}
+		}
+
+		// Name-based for a key, so that every coordinator derives the same id; either way safe in a URL path.
+		UUID transferId = idempotencyKey != null
+				? UUID.nameUUIDFromBytes(idempotencyKey.getBytes(StandardCharsets.UTF_8)) : UUID.randomUUID();
+		return transferAcrossShards(transferId.toString(), transfer, source, destination);
+	}
+
+	/**
+	 * Executes the transfers one after another and returns one result per transfer, in request order.
+	 */
+	public List<TransferResult> transferAll(List<Transfer> transfers) {
+		List<TransferResult> results = new ArrayList<>(transfers.size());
+		for (Transfer transfer : transfers) {
+			results.add(transfer(transfer, null));
+		}
+		return results;
+	}
+
+	/**
+	 * Number of commits and aborts waiting to be retried.
+	 */
+	public int getUnresolved() {
+		return unresolved.size();
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdown();
+	}
+
+	private TransferResult transferAcrossShards(String baseId, Transfer transfer, ShardClient source,
+												ShardClient destination) {
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			String transferId = baseId + "-" + attempt;
+			Reservation reserved;
+			try {
+				reserved = source.reserve(transferId, transfer);
+			} catch (ShardUnavailableException e) {
+				// The reservation may have been applied; the abort refunds it or keeps it from being applied later.
+				resolve(new Decision(transferId, false, source, destination));
+				return TransferResult.failed(TransferStatus.UNAVAILABLE, e);
+			}
+			if (!reserved.isAborted()) {
+				return transferReserved(transferId, transfer, reserved, source, destination);
+			}
+		}
+		return TransferResult.failed(TransferStatus.REJECTED, "Transfer " + baseId + " was aborted " + MAX_ATTEMPTS
+				+ " times");
+	}
+
+	private TransferResult transferReserved(String transferId, Transfer transfer, Reservation reserved,
+											ShardClient source, ShardClient destination) {
+		if (reserved.getResult().getStatus() != TransferStatus.COMPLETED) {
+			return reserved.getResult();
+		}
+
+		TransferResult prepared;
+		try {
+			prepared = destination.prepareCredit(transferId, transfer, reserved.getToken());
+		} catch (ShardUnavailableException e) {
+			resolve(new Decision(transferId, false, source, destination));
+			return TransferResult.failed(TransferStatus.UNAVAILABLE, e);
+		}
+		if (prepared.getStatus() != TransferStatus.COMPLETED) {
+			resolve(new Decision(transferId, false, source, destination));
+			return prepared;
+		}
+
+		Decision decision = new Decision(transferId, true, source, destination);
+		boolean applied = decision.apply();
+		// Read before the decision is queued, after which the retrying thread owns it.
+		TransferResult result;
+		if (!decision.destinationDone) {
+			result = TransferResult.failed(TransferStatus.UNAVAILABLE, "Transfer " + transferId
+					+ " is not confirmed by " + destination.getNodeId()
+					+ " yet; retry with the same Idempotency-Key for its outcome");
+		} else if (!decision.commit) {
+			result = TransferResult.failed(TransferStatus.UNAVAILABLE, "Transfer " + transferId + " was aborted");
+		} else {
+			result = TransferResult.completed();
+		}
+		if (!applied) {
+			unresolved.add(decision);
+		}
+		return result;
+	}
+
+	private void resolve(Decision decision) {
+		if (!decision.apply()) {
+			unresolved.add(decision);
+		}
+	}
+
+	private void retryUnresolved() {
+		for (int i = unresolved.size(); i > 0; i--) {
+			resolve(unresolved.poll());
+		}
+		participant.settleExpired(this::ownerOf);
+		participant.purgeResolved();
+	}
+
+	/**
+	 * The outcome of a cross-shard transfer, to be applied on the nodes that have not acknowledged it yet. Either is
+	 * applied on the destination first: a commit turns into an abort if the destination has aborted the credit, and an
+	 * abort into a commit if the destination has committed it.
+	 */
+	private static final class Decision {
+		private final String transferId;
+		private final ShardClient source;
+		private final ShardClient destination;
+		private boolean commit;
+		private boolean sourceDone;
+		private boolean destinationDone;
+
+		private Decision(String transferId, boolean commit, ShardClient source, ShardClient destination) {
+			this.transferId = transferId;
+			this.commit = commit;
+			this.source = source;
+			this.destination = destination;
+		}
+
+		/**
+		 * @return true once both nodes have acknowledged the decision
+		 */
+		private boolean apply() {
+			if (!destinationDone) {
+				destinationDone = send(destination);
+			}
+			if (!sourceDone && (destinationDone || !commit)) {
+				sourceDone = send(source);
+			}
+			return sourceDone && destinationDone;
+		}
+
+		private boolean send(ShardClient client) {
+			try {
+				if (!commit && client == destination) {
+					if (client.settleCredit(transferId).getStatus() == TransferStatus.COMPLETED) {
+						// Committed by another coordinator of the same attempt; the debit must follow the credit.
+						log.warn("Transfer {} is committed on {}, committing it instead", transferId,
+								client.getNodeId());
+						commit = true;
+					}
+					return true;
+				}
+				if (!commit) {
+					client.abort(transferId);
+					return true;
+				}
+				TransferResult result = client.commit(transferId);
+				if (result.getStatus() != TransferStatus.COMPLETED) {
+					// Only the credit can be aborted before the commit reaches it, by the source settling it.
+					log.warn("Transfer {} was not committed on {}, aborting it: {}", transferId, client.getNodeId(),
+							result.getMessage());
+					commit = false;
+				}
+				return true;
+			} catch (RuntimeException e) {
+				log.warn("Could not {} transfer {} on {}, will retry: {}", commit ? "commit" : "abort", transferId,
+						client.getNodeId(), e.getMessage());
+				return false;
+			}
+		}
+	}
+}
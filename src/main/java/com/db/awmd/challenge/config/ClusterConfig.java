@@ -0,0 +1,88 @@
+package com.db.awmd.challenge.config;
+
+import com.db.awmd.challenge.cluster.ClusterCredentials;
+import com.db.awmd.challenge.cluster.HttpShardClient;
+import com.db.awmd.challenge.cluster.LocalShardClient;
+import com.db.awmd.challenge.cluster.ShardClient;
+import com.db.awmd.challenge.cluster.ShardParticipant;
+import com.db.awmd.challenge.cluster.ShardRing;
+import com.db.awmd.challenge.cluster.ShardRouter;
+import com.db.awmd.challenge.persistence.TransferJournal;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.web.ClusterAuthenticationFilter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs this node as one shard of a cluster. Every node is configured with the same {@code cluster.nodes} list of
+ * {@code id=baseUrl} entries and its own {@code cluster.node-id}. The nodes share {@code cluster.secret}, without
+ * which the node-to-node endpoints refuse every request.
+ */
+@Configuration
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+public class ClusterConfig {
+
+	@Bean
+	public ClusterCredentials clusterCredentials(@Value("${cluster.secret}") String secret) {
+		return new ClusterCredentials(secret);
+	}
+
+	@Bean
+	public FilterRegistrationBean clusterAuthenticationFilter(ClusterCredentials clusterCredentials) {
+		FilterRegistrationBean registration = new FilterRegistrationBean(
+				new ClusterAuthenticationFilter(clusterCredentials));
+		registration.addUrlPatterns("/internal/shard/*");
+		return registration;
+	}
+
+	@Bean
+	public ShardParticipant shardParticipant(AccountsService accountsService, ClusterCredentials clusterCredentials,
+			ObjectProvider<TransferJournal> transferJournal,
+			@Value("${cluster.hold-retention-seconds:600}") long holdRetentionSeconds,
+			@Value("${cluster.hold-timeout-seconds:60}") long holdTimeoutSeconds) {
+		ShardParticipant participant = new ShardParticipant(accountsService, clusterCredentials,
+				TimeUnit.SECONDS.toMillis(holdRetentionSeconds), TimeUnit.SECONDS.toMillis(holdTimeoutSeconds));
+		TransferJournal journal = transferJournal.getIfAvailable();
+		if (journal != null) {
+			participant.setJournal(journal);
+		}
+		return participant;
+	}
+
+	@Bean
+	public LocalShardClient localShardClient(AccountsService accountsService, ShardParticipant shardParticipant,
+			@Value("${cluster.node-id}") String nodeId) {
+		return new LocalShardClient(nodeId, accountsService, shardParticipant);
+	}
+
+	@Bean(destroyMethod = "close")
+	public ShardRouter shardRouter(LocalShardClient localShardClient, ShardParticipant shardParticipant,
+			ClusterCredentials clusterCredentials,
+			@Value("${cluster.nodes}") String[] nodes,
+			@Value("${cluster.virtual-nodes:128}") int virtualNodes,
+			@Value("${cluster.retry-millis:1000}") long retryMillis,
+			@Value("${cluster.connect-timeout-millis:1000}") int connectTimeoutMillis,
+			@Value("${cluster.read-timeout-millis:5000}") int readTimeoutMillis) {
+		Map<String, ShardClient> clients = new LinkedHashMap<>();
+		for (String node : nodes) {
+			String[] idAndUrl = node.trim().split("=", 2);
+			if (idAndUrl.length != 2) {
+				throw new IllegalArgumentException("Cluster node " + node + " is not of the form id=baseUrl");
+			}
+			String nodeId = idAndUrl[0].trim();
+			clients.put(nodeId, nodeId.equals(localShardClient.getNodeId()) ? localShardClient
+					: new HttpShardClient(nodeId, idAndUrl[1].trim(), clusterCredentials, connectTimeoutMillis,
+							readTimeoutMillis));
+		}
+		return new ShardRouter(localShardClient.getNodeId(), new ShardRing(clients.keySet(), virtualNodes), clients,
+				shardParticipant, retryMillis);
+	}
+}
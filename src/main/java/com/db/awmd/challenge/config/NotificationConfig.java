@@ -0,0 +1,35 @@
+package com.db.awmd.challenge.config;
+
+import com.db.awmd.challenge.service.EmailNotificationService;
+import com.db.awmd.challenge.service.NotificationDispatcher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+@Configuration
+public class NotificationConfig {
+
+	@Bean
+	public EmailNotificationService emailNotificationService() {
+		return new EmailNotificationService();
+	}
+
+	/**
+	 * Takes notification delivery off the transfer path. Disable with {@code notifications.dispatch.enabled=false} to
+	 * notify synchronously through {@link EmailNotificationService}.
+	 */
+	@Bean
+	@Primary
+	@ConditionalOnProperty(name = "notifications.dispatch.enabled", havingValue = "true", matchIfMissing = true)
+	public NotificationDispatcher notificationDispatcher(EmailNotificationService emailNotificationService,
+			@Value("${notifications.dispatch.queue-capacity:10000}") int queueCapacity,
+			@Value("${notifications.dispatch.workers:2}") int workers,
+			@Value("${notifications.dispatch.max-batch-size:100}") int maxBatchSize,
+			@Value("${notifications.dispatch.overflow-policy:BLOCK}") NotificationDispatcher.OverflowPolicy overflowPolicy,
+			@Value("${notifications.dispatch.spill-capacity:100000}") int spillCapacity) {
+		return new NotificationDispatcher(emailNotificationService, queueCapacity, workers, maxBatchSize,
+				overflowPolicy, spillCapacity);
+	}
+}
@@ -0,0 +1,49 @@
+package com.db.awmd.challenge.config;
+
+import com.db.awmd.challenge.persistence.AccountSnapshotter;
+import com.db.awmd.challenge.persistence.TransferJournal;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+@Configuration
+public class PersistenceConfig {
+
+	/**
+	 * The snapshot is loaded while the bean initialises, before the web layer takes traffic.
+	 */
+	@Bean(initMethod = "load", destroyMethod = "close")
+	@ConditionalOnProperty(name = "snapshot.enabled", havingValue = "true")
+	public AccountSnapshotter accountSnapshotter(AccountsRepository accountsRepository,
+			@Value("${snapshot.directory:snapshot}") String directory,
+			@Value("${snapshot.interval-seconds:300}") long intervalSeconds) {
+		return new AccountSnapshotter(Paths.get(directory), intervalSeconds, accountsRepository);
+	}
+
+	/**
+	 * The journal is replayed into the repository while the bean initialises, after any snapshot has been loaded and
+	 * before the web layer takes traffic.
+	 */
+	@Bean(initMethod = "open", destroyMethod = "close")
+	@ConditionalOnProperty(name = "journal.enabled", havingValue = "true")
+	public TransferJournal transferJournal(AccountsRepository accountsRepository,
+			ObjectProvider<AccountSnapshotter> accountSnapshotter,
+			@Value("${journal.directory:journal}") String directory,
+			@Value("${journal.segment-size:67108864}") int segmentSize,
+			@Value("${journal.commit-window-micros:1000}") long commitWindowMicros) {
+		TransferJournal journal = new TransferJournal(Paths.get(directory), segmentSize, commitWindowMicros,
+				accountsRepository);
+		AccountSnapshotter snapshotter = accountSnapshotter.getIfAvailable();
+		if (snapshotter != null) {
+			journal.setFirstSegment(snapshotter.getCheckpointSegment());
+			journal.restoreHolds(snapshotter.getLoadedHolds());
+			snapshotter.setJournal(journal);
+		}
+		return journal;
+	}
+}
@@ -0,0 +1,43 @@
+package com.db.awmd.challenge.config;
+
+import com.db.awmd.challenge.service.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerCustomizer;
+import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Runs Tomcat request processing on a virtual thread per request instead of the bounded worker pool, so the number of
+ * requests in progress, including those waiting for a balance lock, is limited by {@code threads.max-connections}
+ * rather than by {@code server.tomcat.max-threads}. Falls back to platform threads on JVMs without virtual threads.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "threads.virtual", havingValue = "true")
+public class VirtualThreadConfig {
+
+	@Bean
+	public EmbeddedServletContainerCustomizer virtualThreadContainerCustomizer(
+			@Value("${threads.max-connections:50000}") int maxConnections) {
+		return container -> {
+			if (!(container instanceof TomcatEmbeddedServletContainerFactory)) {
+				return;
+			}
+			log.info("Handling requests on {} threads, up to {} connections",
+					VirtualThreads.isAvailable() ? "virtual" : "platform", maxConnections);
+			((TomcatEmbeddedServletContainerFactory) container).addConnectorCustomizers(connector -> {
+				ProtocolHandler handler = connector.getProtocolHandler();
+				if (handler instanceof AbstractProtocol) {
+					AbstractProtocol<?> protocol = (AbstractProtocol<?>) handler;
+					protocol.setExecutor(VirtualThreads.newThreadPerTaskExecutor("http-request"));
+					protocol.setMaxConnections(maxConnections);
+				}
+			});
+		};
+	}
+}
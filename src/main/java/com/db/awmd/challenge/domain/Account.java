@@ -1,64 +1,257 @@
 package com.db.awmd.challenge.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
 import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 @Data
 public class Account {
 
+	private static final AtomicLongFieldUpdater<Account> BALANCE =
+			AtomicLongFieldUpdater.newUpdater(Account.class, "balance");
+	private static final AtomicLongFieldUpdater<Account> VERSION =
+			AtomicLongFieldUpdater.newUpdater(Account.class, "version");
+	private static final AtomicLongFieldUpdater<Account> WRITES_STARTED =
+			AtomicLongFieldUpdater.newUpdater(Account.class, "writesStarted");
+	private static final AtomicLongFieldUpdater<Account> WRITES_FINISHED =
+			AtomicLongFieldUpdater.newUpdater(Account.class, "writesFinished");
+	private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+	private static final int CONSISTENT_READ_ATTEMPTS = 16;
+	private static final int VIEW_ATTEMPTS = 1024;
+
+	/**
+	 * Longest account id accepted, in characters. Its UTF-8 encoding always fits the unsigned 16-bit length that the
+	 * journal and snapshot files store.
+	 */
+	public static final int MAX_ID_LENGTH = 255;
+
 	@NotNull
 	@NotEmpty
+	@Size(max = MAX_ID_LENGTH)
 	private final String accountId;
 
-	@NotNull
+	/**
+	 * Balance in minor units, see {@link Money}. Exposed as a decimal through {@link #getBalance()}. All updates go
+	 * through {@link #BALANCE} so that lock-free deposits and withdrawals compose with locked transfers.
+	 */
 	@Min(value = 0, message = "Initial balance must be positive.")
-	private BigDecimal balance;
-	private Lock balanceLock = new ReentrantLock();
+	private volatile long balance;
+	/**
+	 * Number of balance changes applied to this account; incremented right after each change.
+	 */
+	@JsonIgnore
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private volatile long version;
+	/**
+	 * Sequence counters around every update of {@link #balance} and {@link #version}, see {@link #view()}. Unlike a
+	 * single-writer seqlock they tolerate concurrent lock-free writers: no update is in progress while both are equal.
+	 */
+	@JsonIgnore
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private volatile long writesStarted;
+	@JsonIgnore
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private volatile long writesFinished;
+	/**
+	 * Credit cells of a hot account, null until {@link #promoteToHot()}. The balance is then {@link #balance} plus the
+	 * sum of the cells, and {@link #balance} only takes debits.
+	 */
+	@JsonIgnore
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private volatile BalanceStripes stripes;
+	/**
+	 * Number of times {@link #lockBalance()} found the lock taken. Updated without synchronization, so approximate.
+	 */
+	@JsonIgnore
+	@Setter(AccessLevel.NONE)
+	private volatile int contendedLocks;
+	@JsonIgnore
+	private Lock balanceLock;
+	@JsonIgnore
 	private Thread balanceLockOwner;
 
 	public Account(String accountId) {
+		this(accountId, new ReentrantLock());
+	}
+
+	/**
+	 * For subclasses that keep balance, version and lock elsewhere and override every method that touches them.
+	 */
+	protected Account(String accountId, Lock balanceLock) {
 		this.accountId = accountId;
-		this.balance = BigDecimal.ZERO;
+		this.balanceLock = balanceLock;
 	}
 
 	@JsonCreator
 	public Account(@JsonProperty("accountId") String accountId,
 				   @JsonProperty("balance") BigDecimal balance) {
-		this.accountId = accountId;
-		this.balance = balance;
+		this(accountId);
+		setBalance(balance);
 	}
 
 	public Account(String accountId, double balance) {
-		this(accountId, new BigDecimal(balance));
+		this(accountId);
+		this.balance = Money.toMinor(balance);
+	}
+
+	public static Account ofMinor(String accountId, long balanceMinor) {
+		return restore(accountId, balanceMinor, 0);
+	}
+
+	/**
+	 * Recreates an account as recorded in a snapshot.
+	 */
+	public static Account restore(String accountId, long balanceMinor, long version) {
+		Account account = new Account(accountId);
+		account.balance = balanceMinor;
+		account.version = version;
+		return account;
+	}
+
+	public BigDecimal getBalance() {
+		return Money.toDecimal(readBalanceMinor());
+	}
+
+	public void setBalance(BigDecimal balance) {
+		if (balance == null) {
+			throw new IllegalArgumentException("Balance is required.");
+		}
+		this.balance = Money.toMinor(balance);
 	}
 
 	public double readBalance() {
-		return balance.floatValue();
+		return Money.toDouble(readBalanceMinor());
 	}
 
-	public double readBalanceSynchronized() {
-		try {
-			balanceLock.lock();
-			return readBalance();
-		} finally {
-			balanceLock.unlock();
+	/**
+	 * For a hot account, re-reads the debit balance and the credit cells until two passes agree, which makes the
+	 * result a balance the account had at one instant. Under sustained credit traffic it gives up after a few passes
+	 * and returns the last sum, like {@link java.util.concurrent.atomic.LongAdder#sum()}.
+	 */
+	public long readBalanceMinor() {
+		BalanceStripes stripes = this.stripes;
+		if (stripes == null) {
+			return balance;
+		}
+		long debits = balance;
+		long credits = stripes.sum();
+		for (int attempt = 1; attempt < CONSISTENT_READ_ATTEMPTS; attempt++) {
+			long nextDebits = balance;
+			long nextCredits = stripes.sum();
+			if (nextDebits == debits && nextCredits == credits) {
+				break;
+			}
+			debits = nextDebits;
+			credits = nextCredits;
 		}
+		return debits + credits;
+	}
+
+	/**
+	 * Immutable copy of the balance and the version it belongs to, taken without the balance lock. Reads finished,
+	 * balance and version, then started, and retries unless started still equals finished: then no update was in
+	 * progress in between, so balance and version belong together. After a few spins it yields between attempts, so
+	 * that a preempted writer can finish. If updates never pause it eventually gives up; the balance is then still one
+	 * the account had, with a version that may lag by the updates in flight.
+	 * Hot accounts report {@link #readBalanceMinor()} and {@link #getVersion()}.
+	 */
+	public AccountView view() {
+		if (stripes != null) {
+			return new AccountView(accountId, readBalanceMinor(), getVersion());
+		}
+		for (int attempt = 1; ; attempt++) {
+			long finished = writesFinished;
+			long balance = this.balance;
+			long version = this.version;
+			if (writesStarted == finished || attempt == VIEW_ATTEMPTS) {
+				return new AccountView(accountId, balance, version);
+			}
+			if (attempt >= CONSISTENT_READ_ATTEMPTS) {
+				Thread.yield();
+			}
+		}
+	}
+
+	public long getVersion() {
+		BalanceStripes stripes = this.stripes;
+		return stripes == null ? version : version + stripes.count();
+	}
+
+	@JsonIgnore
+	public boolean isHot() {
+		return stripes != null;
+	}
+
+	/**
+	 * Switches the account to striped credits: {@link #credit(long)} and {@link #deposit(long)} of positive amounts then
+	 * go to per-thread cells and no longer need the balance lock, while debits still check the whole balance.
+	 *
+	 * @return false if the account already was hot
+	 */
+	public synchronized boolean promoteToHot() {
+		if (stripes != null) {
+			return false;
+		}
+		stripes = new BalanceStripes(STRIPES);
+		return true;
+	}
+
+	/**
+	 * Reads the balance last published by a completed update. Does not take the balance lock.
+	 */
+	public double readBalanceSynchronized() {
+		return readBalance();
 	}
 
 	public Account lockBalance() {
-		balanceLock.lock();
+		if (!balanceLock.tryLock()) {
+			contendedLocks++;
+			balanceLock.lock();
+		}
 		balanceLockOwner = Thread.currentThread();
 		return this;
 	}
 
+	/**
+	 * Like {@link #lockBalance()}, but waits at most the given time. An interrupted wait gives up and keeps the
+	 * interrupt flag set.
+	 *
+	 * @return false if the lock was not acquired
+	 */
+	public boolean tryLockBalance(long timeoutNanos) {
+		if (!balanceLock.tryLock()) {
+			contendedLocks++;
+			try {
+				if (timeoutNanos <= 0 || !balanceLock.tryLock(timeoutNanos, TimeUnit.NANOSECONDS)) {
+					return false;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		balanceLockOwner = Thread.currentThread();
+		return true;
+	}
+
 	public Account unlockBalance() {
 		balanceLockOwner = null;
 		balanceLock.unlock();
@@ -66,17 +259,82 @@ public class Account {
 	}
 
 	public Account decreaseBalance(double amount) {
+		return debit(Money.toMinor(amount));
+	}
+
+	public Account increaseBalance(double amount) {
+		return credit(Money.toMinor(amount));
+	}
+
+	public Account debit(long amountMinor) {
 		checkBalanceLock();
-		balance = balance.subtract(new BigDecimal(amount));
+		add(-amountMinor);
 		return this;
 	}
 
-	public Account increaseBalance(double amount) {
+	/**
+	 * Requires the balance lock, unless the account is hot.
+	 */
+	public Account credit(long amountMinor) {
+		BalanceStripes stripes = this.stripes;
+		if (stripes != null && amountMinor > 0) {
+			stripes.add(amountMinor);
+			return this;
+		}
 		checkBalanceLock();
-		balance = balance.add(new BigDecimal(amount));
+		add(amountMinor);
 		return this;
 	}
 
+	/**
+	 * Adds the amount with a single atomic update; the balance lock is not needed.
+	 *
+	 * @return the new balance in minor units
+	 */
+	public long deposit(long amountMinor) {
+		BalanceStripes stripes = this.stripes;
+		if (stripes != null && amountMinor > 0) {
+			stripes.add(amountMinor);
+			return readBalanceMinor();
+		}
+		return add(amountMinor);
+	}
+
+	/**
+	 * Subtracts the amount with compare-and-set, provided the balance covers it; the balance lock is not needed. On a
+	 * hot account the credit cells count towards the balance. They only grow, so the check cannot be invalidated by a
+	 * concurrent credit, and concurrent debits are serialized by the compare-and-set.
+	 *
+	 * @return false, leaving the balance untouched, if the balance does not cover the amount
+	 */
+	public boolean withdraw(long amountMinor) {
+		while (true) {
+			long current = balance;
+			BalanceStripes stripes = this.stripes;
+			long available = stripes == null ? current : current + stripes.sum();
+			if (available < amountMinor) {
+				return false;
+			}
+			WRITES_STARTED.incrementAndGet(this);
+			boolean applied = BALANCE.compareAndSet(this, current, current - amountMinor);
+			if (applied) {
+				VERSION.incrementAndGet(this);
+			}
+			WRITES_FINISHED.incrementAndGet(this);
+			if (applied) {
+				return true;
+			}
+		}
+	}
+
+	private long add(long amountMinor) {
+		WRITES_STARTED.incrementAndGet(this);
+		long balance = BALANCE.addAndGet(this, amountMinor);
+		VERSION.incrementAndGet(this);
+		WRITES_FINISHED.incrementAndGet(this);
+		return balance;
+	}
+
 	private void checkBalanceLock() {
 		if (!Thread.currentThread().equals(balanceLockOwner)) {
 			String ownerName = "Balance lock is owned by thread " +
@@ -0,0 +1,48 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable, versioned copy of an account for reads, see {@link Account#view()}. Serializes to the same JSON as
+ * {@link Account}; the version is meant for ETags and is not part of the body.
+ */
+@Getter
+@JsonPropertyOrder({"accountId", "balance"})
+public final class AccountView {
+
+	private final String accountId;
+	@JsonIgnore
+	private final long balanceMinor;
+	@JsonIgnore
+	private final long version;
+
+	public AccountView(String accountId, long balanceMinor, long version) {
+		this.accountId = accountId;
+		this.balanceMinor = balanceMinor;
+		this.version = version;
+	}
+
+	/**
+	 * Binds the JSON form, which carries no version.
+	 */
+	@JsonCreator
+	public static AccountView fromJson(@JsonProperty("accountId") String accountId,
+									   @JsonProperty("balance") BigDecimal balance) {
+		return new AccountView(accountId, Money.toMinor(balance), 0);
+	}
+
+	public BigDecimal getBalance() {
+		return Money.toDecimal(balanceMinor);
+	}
+
+	@Override
+	public String toString() {
+		return "AccountView(accountId=" + accountId + ", balance=" + getBalance() + ", version=" + version + ")";
+	}
+}
@@ -0,0 +1,54 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Credit cells of a hot {@link Account}, in the manner of {@link java.util.concurrent.atomic.LongAdder}. Each thread
+ * adds to the cell picked by its id, and cells are padded onto separate cache lines, so concurrent credits do not
+ * contend on one balance. Only positive amounts are added, which makes every cell, and their sum, non-decreasing.
+ */
+final class BalanceStripes {
+
+	/**
+	 * Longs per cell: amount, count and padding up to 64 bytes.
+	 */
+	private static final int CELL = 8;
+
+	private final AtomicLongArray cells;
+	private final int mask;
+
+	BalanceStripes(int stripes) {
+		if (Integer.bitCount(stripes) != 1) {
+			throw new IllegalArgumentException("Stripe count must be a power of two: " + stripes);
+		}
+		cells = new AtomicLongArray(stripes * CELL);
+		mask = stripes - 1;
+	}
+
+	void add(long amountMinor) {
+		int cell = cell();
+		cells.addAndGet(cell, amountMinor);
+		cells.incrementAndGet(cell + 1);
+	}
+
+	long sum() {
+		long sum = 0;
+		for (int cell = 0; cell < cells.length(); cell += CELL) {
+			sum += cells.get(cell);
+		}
+		return sum;
+	}
+
+	long count() {
+		long count = 0;
+		for (int cell = 0; cell < cells.length(); cell += CELL) {
+			count += cells.get(cell + 1);
+		}
+		return count;
+	}
+
+	private int cell() {
+		long id = Thread.currentThread().getId();
+		return ((int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask) * CELL;
+	}
+}
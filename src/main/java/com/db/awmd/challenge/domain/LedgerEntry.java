@@ -0,0 +1,39 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * One transfer in the history of an account, see {@link com.db.awmd.challenge.service.TransferLedger}. The amount is
+ * negative for money leaving the account and positive for money arriving; the timestamp is in epoch milliseconds.
+ */
+@Getter
+@JsonPropertyOrder({"sequence", "timestamp", "counterpartyAccountId", "amount"})
+public final class LedgerEntry {
+
+	private final long sequence;
+	private final long timestamp;
+	private final String counterpartyAccountId;
+	@JsonIgnore
+	private final long amountMinor;
+
+	public LedgerEntry(long sequence, long timestamp, String counterpartyAccountId, long amountMinor) {
+		this.sequence = sequence;
+		this.timestamp = timestamp;
+		this.counterpartyAccountId = counterpartyAccountId;
+		this.amountMinor = amountMinor;
+	}
+
+	public BigDecimal getAmount() {
+		return Money.toDecimal(amountMinor);
+	}
+
+	@Override
+	public String toString() {
+		return "LedgerEntry(sequence=" + sequence + ", counterpartyAccountId=" + counterpartyAccountId + ", amount="
+				+ getAmount() + ")";
+	}
+}
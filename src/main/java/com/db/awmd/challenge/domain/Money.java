@@ -0,0 +1,44 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between decimal amounts, as used at the REST edge, and the minor units (hundredths) in which balances
+ * and transfer amounts are held internally.
+ */
+public final class Money {
+
+	public static final int SCALE = 2;
+
+	private static final double MINOR_PER_UNIT = 100.0;
+
+	private Money() {
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the amount has more than {@link #SCALE} decimals or does not fit a long
+	 */
+	public static long toMinor(BigDecimal amount) {
+		try {
+			return amount.movePointRight(SCALE).longValueExact();
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException("Amount " + amount.toPlainString() + " is not a valid monetary amount");
+		}
+	}
+
+	/**
+	 * Rounds the amount half-even to minor units.
+	 */
+	public static long toMinor(double amount) {
+		return toMinor(BigDecimal.valueOf(amount).setScale(SCALE, RoundingMode.HALF_EVEN));
+	}
+
+	public static BigDecimal toDecimal(long minor) {
+		return BigDecimal.valueOf(minor, SCALE);
+	}
+
+	public static double toDouble(long minor) {
+		return minor / MINOR_PER_UNIT;
+	}
+}
@@ -0,0 +1,60 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+
+/**
+ * One leg of a {@link Transaction}: an amount credited to an account, or debited from it when negative.
+ */
+public class Posting {
+	private String accountId;
+	// Minor units, see Money. Bound to JSON as a decimal "amount".
+	private long amount;
+
+	public Posting() {
+
+	}
+
+	public Posting(String accountId, double amount) {
+		this.accountId = accountId;
+		this.amount = Money.toMinor(amount);
+	}
+
+	public static Posting ofMinor(String accountId, long amountMinor) {
+		Posting posting = new Posting();
+		posting.accountId = accountId;
+		posting.amount = amountMinor;
+		return posting;
+	}
+
+	@Override
+	public String toString() {
+		return "{accountId='" + accountId + "', amount=" + Money.toDecimal(amount) + "}";
+	}
+
+	public String getAccountId() {
+		return accountId;
+	}
+
+	public void setAccountId(String accountId) {
+		this.accountId = accountId;
+	}
+
+	public BigDecimal getAmount() {
+		return Money.toDecimal(amount);
+	}
+
+	public void setAmount(BigDecimal amount) {
+		this.amount = Money.toMinor(amount);
+	}
+
+	@JsonIgnore
+	public long getAmountMinor() {
+		return amount;
+	}
+
+	public void setAmountMinor(long amountMinor) {
+		this.amount = amountMinor;
+	}
+}
@@ -0,0 +1,35 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Postings applied together or not at all, see
+ * {@link com.db.awmd.challenge.service.AccountsService#transact(Transaction)}. The amounts must sum to zero, so a
+ * transaction only moves money between its accounts.
+ */
+public class Transaction {
+	private List<Posting> postings = new ArrayList<>();
+
+	public Transaction() {
+
+	}
+
+	public Transaction(Posting... postings) {
+		this.postings = new ArrayList<>(Arrays.asList(postings));
+	}
+
+	@Override
+	public String toString() {
+		return "{postings=" + postings + "}";
+	}
+
+	public List<Posting> getPostings() {
+		return postings;
+	}
+
+	public void setPostings(List<Posting> postings) {
+		this.postings = postings;
+	}
+}
@@ -1,9 +1,14 @@
 package com.db.awmd.challenge.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+
 public class Transfer {
 	private String fromAccountId;
 	private String toAccountId;
-	private double amount;
+	// Minor units, see Money. Bound to JSON as a decimal "amount".
+	private long amount;
 
 	public Transfer() {
 
@@ -12,14 +17,22 @@ public class Transfer {
 	public Transfer(String fromAccountId, String toAccountId, double amount) {
 		this.fromAccountId = fromAccountId;
 		this.toAccountId = toAccountId;
-		this.amount = amount;
+		this.amount = Money.toMinor(amount);
+	}
+
+	public static Transfer ofMinor(String fromAccountId, String toAccountId, long amountMinor) {
+		Transfer transfer = new Transfer();
+		transfer.fromAccountId = fromAccountId;
+		transfer.toAccountId = toAccountId;
+		transfer.amount = amountMinor;
+		return transfer;
 	}
 
 	@Override
 	public String toString() {
 		return new StringBuilder().append("{").append("fromAccountId='").append(fromAccountId)
 				.append('\'').append(", toAccountId='").append(toAccountId).append('\'').append(", amount=")
-				.append(amount).append('}').toString();
+				.append(Money.toDecimal(amount)).append('}').toString();
 	}
 
 	public String getFromAccountId() {
@@ -38,11 +51,20 @@ public class Transfer {
 		this.toAccountId = toAccountId;
 	}
 
-	public double getAmount() {
+	public BigDecimal getAmount() {
+		return Money.toDecimal(amount);
+	}
+
+	public void setAmount(BigDecimal amount) {
+		this.amount = Money.toMinor(amount);
+	}
+
+	@JsonIgnore
+	public long getAmountMinor() {
 		return amount;
 	}
 
-	public void setAmount(double amount) {
-		this.amount = amount;
+	public void setAmountMinor(long amountMinor) {
+		this.amount = amountMinor;
 	}
 }
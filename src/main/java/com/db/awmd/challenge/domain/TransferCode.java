@@ -0,0 +1,35 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * Outcome of a transfer as a constant, so that the transfer path reports failures without building an exception.
+ * Each code maps to the coarser {@link TransferStatus} reported to clients; the message for a failure is built only
+ * when a client needs it.
+ */
+public enum TransferCode {
+	OK(TransferStatus.COMPLETED),
+	SOURCE_NOT_FOUND(TransferStatus.ACCOUNT_NOT_FOUND),
+	DESTINATION_NOT_FOUND(TransferStatus.ACCOUNT_NOT_FOUND),
+	ACCOUNTS_NOT_FOUND(TransferStatus.ACCOUNT_NOT_FOUND),
+	INVALID_AMOUNT(TransferStatus.REJECTED),
+	SAME_ACCOUNT(TransferStatus.REJECTED),
+	INSUFFICIENT_FUNDS(TransferStatus.INSUFFICIENT_FUNDS),
+	SOURCE_BUSY(TransferStatus.BUSY),
+	DESTINATION_BUSY(TransferStatus.BUSY),
+	SOURCE_RATE_LIMITED(TransferStatus.RATE_LIMITED),
+	DESTINATION_RATE_LIMITED(TransferStatus.RATE_LIMITED),
+	NODE_RATE_LIMITED(TransferStatus.RATE_LIMITED);
+
+	private final TransferStatus status;
+
+	TransferCode(TransferStatus status) {
+		this.status = status;
+	}
+
+	public TransferStatus getStatus() {
+		return status;
+	}
+
+	public static TransferCode notFound(boolean source, boolean destination) {
+		return source ? (destination ? ACCOUNTS_NOT_FOUND : SOURCE_NOT_FOUND) : DESTINATION_NOT_FOUND;
+	}
+}
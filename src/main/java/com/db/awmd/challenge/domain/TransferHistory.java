@@ -0,0 +1,23 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * A page of an account's transfer history, newest first. The next cursor is a string, as the sequence may exceed what
+ * JavaScript clients can represent exactly, and is absent on the last page.
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class TransferHistory {
+
+	private final List<LedgerEntry> transfers;
+	private final String nextCursor;
+
+	public TransferHistory(List<LedgerEntry> transfers, String nextCursor) {
+		this.transfers = transfers;
+		this.nextCursor = nextCursor;
+	}
+}
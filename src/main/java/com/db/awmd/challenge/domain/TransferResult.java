@@ -0,0 +1,38 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransferResult {
+	private static final TransferResult COMPLETED = new TransferResult(TransferStatus.COMPLETED, null);
+
+	private final TransferStatus status;
+	private final String message;
+
+	@JsonCreator
+	public TransferResult(@JsonProperty("status") TransferStatus status, @JsonProperty("message") String message) {
+		this.status = status;
+		this.message = message;
+	}
+
+	public static TransferResult completed() {
+		return COMPLETED;
+	}
+
+	public static TransferResult failed(TransferStatus status, Exception e) {
+		return new TransferResult(status, e.getMessage());
+	}
+
+	public static TransferResult failed(TransferStatus status, String message) {
+		return new TransferResult(status, message);
+	}
+
+	@Override
+	public String toString() {
+		return "{status=" + status + (message != null ? ", message='" + message + '\'' : "") + '}';
+	}
+}
@@ -0,0 +1,22 @@
+package com.db.awmd.challenge.domain;
+
+public enum TransferStatus {
+	COMPLETED,
+	ACCOUNT_NOT_FOUND,
+	INSUFFICIENT_FUNDS,
+	REJECTED,
+	/**
+	 * The node owning an account did not answer, or this node is saturated. Retrying with the same idempotency key is
+	 * safe.
+	 */
+	UNAVAILABLE,
+	/**
+	 * A balance lock was not free within the lock budget. Nothing was applied; retrying later is safe.
+	 */
+	BUSY,
+	/**
+	 * Admission control turned the transfer away because an account, or the node, exceeded its transfer rate. Nothing
+	 * was applied; retrying later is safe.
+	 */
+	RATE_LIMITED
+}
@@ -21,6 +21,10 @@ public class AccountNotFoundException extends RuntimeException {
 
 	@Override
 	public String getMessage() {
+		return message(accountIds);
+	}
+
+	public static String message(List<String> accountIds) {
 		return "Account(s) with id(s) " + accountIds + " could not be found";
 	}
 
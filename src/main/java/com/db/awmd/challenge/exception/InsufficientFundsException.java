@@ -11,6 +11,10 @@ public class InsufficientFundsException extends RuntimeException {
 
 	@Override
 	public String getMessage() {
+		return message(source);
+	}
+
+	public static String message(Account source) {
 		return "Available balance in account with id " + source.getAccountId() + " is " + source.getBalance();
 	}
 }
@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * The balance lock of an account could not be acquired within the lock budget. Nothing was applied, so the request
+ * can be retried.
+ */
+public class LockTimeoutException extends RuntimeException {
+
+	public LockTimeoutException(String accountId) {
+		super(message(accountId));
+	}
+
+	public static String message(String accountId) {
+		return "Account " + accountId + " is busy, retry later";
+	}
+}
@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * A transfer was turned away by admission control before any lock was taken. Nothing was applied, so the request
+ * can be retried.
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+	public RateLimitExceededException(String accountId) {
+		super(message(accountId));
+	}
+
+	/**
+	 * @param accountId the account whose rate was exceeded, or null for the rate of the node
+	 */
+	public static String message(String accountId) {
+		return accountId != null ? "Transfer rate limit of account " + accountId + " exceeded, retry later"
+				: "Transfer rate limit exceeded, retry later";
+	}
+}
@@ -0,0 +1,12 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * The node owning an account could not be reached, or did not answer in time. The request may or may not have been
+ * applied there.
+ */
+public class ShardUnavailableException extends RuntimeException {
+
+	public ShardUnavailableException(String nodeId, Throwable cause) {
+		super("Shard " + nodeId + " is unavailable: " + cause.getMessage(), cause);
+	}
+}
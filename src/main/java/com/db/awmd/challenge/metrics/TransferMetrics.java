@@ -0,0 +1,181 @@
+package com.db.awmd.challenge.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hot-path metrics of the transfer path: end-to-end latency, balance lock wait and hold times, and failure counts.
+ * Recording only updates preallocated counters; formatting happens when the metrics are read.
+ */
+@Component
+public class TransferMetrics {
+
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+	private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+	private final LatencyHistogram transferLatency = new LatencyHistogram();
+	private final LatencyHistogram lockWait = new LatencyHistogram();
+	private final LatencyHistogram lockHold = new LatencyHistogram();
+	private final LongAdder insufficientFunds = new LongAdder();
+	private final LongAdder accountNotFound = new LongAdder();
+	private final LongAdder lockTimeouts = new LongAdder();
+	private final LongAdder rateLimited = new LongAdder();
+
+	/**
+	 * Records a transfer that reached the service with both accounts, whatever its outcome.
+	 */
+	public void recordTransfer(long nanos) {
+		transferLatency.record(nanos);
+	}
+
+	public void recordLockWait(long nanos) {
+		lockWait.record(nanos);
+	}
+
+	public void recordLockHold(long nanos) {
+		lockHold.record(nanos);
+	}
+
+	public void recordInsufficientFunds() {
+		insufficientFunds.increment();
+	}
+
+	public void recordAccountNotFound() {
+		accountNotFound.increment();
+	}
+
+	public void recordLockTimeout() {
+		lockTimeouts.increment();
+	}
+
+	public void recordRateLimited() {
+		rateLimited.increment();
+	}
+
+	public LatencyHistogram getTransferLatency() {
+		return transferLatency;
+	}
+
+	public LatencyHistogram getLockWait() {
+		return lockWait;
+	}
+
+	public LatencyHistogram getLockHold() {
+		return lockHold;
+	}
+
+	public long getInsufficientFunds() {
+		return insufficientFunds.sum();
+	}
+
+	public long getAccountNotFound() {
+		return accountNotFound.sum();
+	}
+
+	public long getLockTimeouts() {
+		return lockTimeouts.sum();
+	}
+
+	public long getRateLimited() {
+		return rateLimited.sum();
+	}
+
+	/**
+	 * All transfer requests seen: those that reached the service with both accounts plus those rejected for unknown
+	 * accounts.
+	 */
+	public long getRequests() {
+		return transferLatency.getCount() + accountNotFound.sum();
+	}
+
+	/**
+	 * Metrics as nested maps, with times in microseconds.
+	 */
+	public Map<String, Object> toMap() {
+		long requests = getRequests();
+		Map<String, Object> transfers = new LinkedHashMap<>();
+		transfers.put("requests", requests);
+		transfers.put("insufficientFunds", getInsufficientFunds());
+		transfers.put("accountNotFound", getAccountNotFound());
+		transfers.put("lockTimeouts", getLockTimeouts());
+		transfers.put("rateLimited", getRateLimited());
+		transfers.put("insufficientFundsRate", rate(getInsufficientFunds(), requests));
+		transfers.put("accountNotFoundRate", rate(getAccountNotFound(), requests));
+
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("transfers", transfers);
+		metrics.put("transferLatencyMicros", toMap(transferLatency));
+		metrics.put("lockWaitMicros", toMap(lockWait));
+		metrics.put("lockHoldMicros", toMap(lockHold));
+		return metrics;
+	}
+
+	/**
+	 * Metrics in the Prometheus text exposition format, version 0.0.4, with times in seconds.
+	 */
+	public String toPrometheus() {
+		StringBuilder out = new StringBuilder(2048);
+		summary(out, "transfer_latency_seconds", "End-to-end latency of transfers.", transferLatency);
+		summary(out, "transfer_lock_wait_seconds", "Time spent acquiring both balance locks of a transfer.", lockWait);
+		summary(out, "transfer_lock_hold_seconds", "Time both balance locks of a transfer were held.", lockHold);
+		counter(out, "transfer_requests_total", "Transfer requests, including those for unknown accounts.",
+				getRequests());
+		counter(out, "transfer_insufficient_funds_total", "Transfers rejected for insufficient funds.",
+				getInsufficientFunds());
+		counter(out, "transfer_account_not_found_total", "Transfers rejected for unknown accounts.",
+				getAccountNotFound());
+		counter(out, "transfer_lock_timeouts_total", "Transfers turned away because a balance lock was not free in time.",
+				getLockTimeouts());
+		counter(out, "transfer_rate_limited_total", "Transfers turned away by admission control.", getRateLimited());
+		return out.toString();
+	}
+
+	private static Map<String, Object> toMap(LatencyHistogram histogram) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("count", histogram.getCount());
+		map.put("mean", histogram.getMean() / 1e3);
+		long[] values = histogram.quantiles(QUANTILES);
+		for (int i = 0; i < values.length; i++) {
+			map.put(QUANTILE_NAMES[i], values[i] / 1e3);
+		}
+		map.put("max", histogram.getMax() / 1e3);
+		return map;
+	}
+
+	private static double rate(long count, long total) {
+		return total == 0 ? 0 : (double) count / total;
+	}
+
+	private static void summary(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" summary\n");
+		long[] values = histogram.quantiles(QUANTILES);
+		for (int i = 0; i < values.length; i++) {
+			out.append(name).append("{quantile=\"").append(QUANTILES[i]).append("\"} ").append(seconds(values[i]))
+					.append('\n');
+		}
+		out.append(name).append("_sum ").append(seconds(histogram.getSum())).append('\n');
+		out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+	}
+
+	public static void counter(StringBuilder out, String name, String help, long value) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" counter\n");
+		out.append(name).append(' ').append(value).append('\n');
+	}
+
+	public static void gauge(StringBuilder out, String name, String help, double value) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" gauge\n");
+		out.append(name).append(' ').append(value == (long) value ? Long.toString((long) value)
+				: String.format(Locale.ROOT, "%.3f", value)).append('\n');
+	}
+
+	private static String seconds(long nanos) {
+		return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+	}
+}
@@ -0,0 +1,294 @@
+package com.db.awmd.challenge.persistence;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountView;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.DaemonThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Periodically writes a compact binary snapshot of all accounts, and loads it on startup through a memory mapping.
+ * <p>
+ * Without a journal the snapshot is taken from the live accounts while transfers continue. Each account is then
+ * recorded with a balance it really had, but accounts are not captured at one common instant. With a
+ * {@link TransferJournal} the live accounts are not touched: the snapshot folds the previous snapshot and every
+ * segment before a fresh {@link TransferJournal#checkpoint() checkpoint} into a shadow repository. The result is
+ * exactly consistent with that checkpoint, and the folded segments are deleted afterwards.
+ * <p>
+ * File layout: {@code int magic, int formatVersion, int checkpointSegment, long accountCount}, then per account
+ * {@code short idLength, id, long balance, long version}, then {@code int holdCount} and per open {@link HoldRecord}
+ * {@code byte debit, byte state, short idLength, transferId, short fromIdLength, fromId, short toIdLength, toId, long
+ * amount}. Holds resolved before the checkpoint are left out. Snapshots are written to a temporary file and moved into
+ * place atomically; files of format version 1, without holds, are still read.
+ */
+@Slf4j
+public class AccountSnapshotter implements Closeable {
+
+	private static final int MAGIC = 0x41534e50;
+	private static final int FORMAT_VERSION = 2;
+	private static final String SNAPSHOT_FILE = "accounts.snapshot";
+
+	private final Path directory;
+	private final long intervalSeconds;
+	private static final int SCAN_BATCH = 4096;
+
+	private final AccountsRepository accountsRepository;
+	private final ScheduledExecutorService scheduler =
+			Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("account-snapshotter"));
+
+	private volatile TransferJournal journal;
+	private int checkpointSegment;
+	private final Map<String, HoldRecord> loadedHolds = new LinkedHashMap<>();
+
+	private volatile long loadedAccounts;
+	private volatile long loadMillis;
+	private volatile long snapshots;
+	private volatile long lastSnapshotAccounts;
+	private volatile long lastSnapshotMillis;
+
+	public AccountSnapshotter(Path directory, long intervalSeconds, AccountsRepository accountsRepository) {
+		this.directory = directory;
+		this.intervalSeconds = intervalSeconds;
+		this.accountsRepository = accountsRepository;
+	}
+
+	/**
+	 * Switches to building snapshots from the journal instead of from the live accounts.
+	 */
+	public void setJournal(TransferJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * First journal segment not contained in the loaded snapshot.
+	 */
+	public int getCheckpointSegment() {
+		return checkpointSegment;
+	}
+
+	/**
+	 * Open holds of the loaded snapshot, which the journal picks up before its replay.
+	 */
+	public Collection<HoldRecord> getLoadedHolds() {
+		return loadedHolds.values();
+	}
+
+	/**
+	 * Loads the latest snapshot, if there is one, into the repository and schedules periodic snapshots.
+	 */
+	public void load() throws IOException {
+		Files.createDirectories(directory);
+		long start = System.nanoTime();
+		Path snapshot = directory.resolve(SNAPSHOT_FILE);
+		if (Files.exists(snapshot)) {
+			loadedAccounts = read(snapshot, accountsRepository, loadedHolds);
+		}
+		loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		log.info("Loaded {} accounts from snapshot in {} ms", loadedAccounts, loadMillis);
+
+		if (intervalSeconds > 0) {
+			scheduler.scheduleWithFixedDelay(this::snapshotQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Writes a new snapshot and returns the number of accounts in it.
+	 */
+	public synchronized long snapshot() throws IOException {
+		long start = System.nanoTime();
+		long accounts;
+		TransferJournal journal = this.journal;
+		if (journal == null) {
+			accounts = write(accountsRepository, 0, Collections.emptyList());
+		} else {
+			int checkpoint = journal.checkpoint();
+			AccountsRepositoryInMemory shadow = new AccountsRepositoryInMemory();
+			Map<String, HoldRecord> holds = new LinkedHashMap<>();
+			Path previous = directory.resolve(SNAPSHOT_FILE);
+			if (Files.exists(previous)) {
+				read(previous, shadow, holds);
+			}
+			journal.replay(checkpointSegment, checkpoint, shadow, holds);
+			accounts = write(shadow, checkpoint, holds.values());
+			checkpointSegment = checkpoint;
+			journal.deleteSegmentsBefore(checkpoint);
+		}
+
+		snapshots++;
+		lastSnapshotAccounts = accounts;
+		lastSnapshotMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		log.info("Wrote snapshot of {} accounts in {} ms", accounts, lastSnapshotMillis);
+		return accounts;
+	}
+
+	public long getLoadedAccounts() {
+		return loadedAccounts;
+	}
+
+	public long getLoadMillis() {
+		return loadMillis;
+	}
+
+	public long getSnapshots() {
+		return snapshots;
+	}
+
+	public long getLastSnapshotAccounts() {
+		return lastSnapshotAccounts;
+	}
+
+	public long getLastSnapshotMillis() {
+		return lastSnapshotMillis;
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdown();
+	}
+
+	private void snapshotQuietly() {
+		try {
+			snapshot();
+		} catch (IOException | UncheckedIOException e) {
+			log.error("Snapshot failed", e);
+		}
+	}
+
+	private long write(AccountsRepository source, int checkpoint, Collection<HoldRecord> holds) throws IOException {
+		Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+		long[] count = new long[1];
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+			 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel),
+					 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(checkpoint);
+			// Account count is patched in once known, accounts may be created while it is being written.
+			out.writeLong(0);
+
+			Consumer<Account> writer = account -> {
+				try {
+					AccountView view = account.view();
+					byte[] id = view.getAccountId().getBytes(StandardCharsets.UTF_8);
+					out.writeShort(id.length);
+					out.write(id);
+					out.writeLong(view.getBalanceMinor());
+					out.writeLong(view.getVersion());
+					count[0]++;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			};
+			for (long cursor = 0; cursor != AccountsRepository.END_OF_SCAN; ) {
+				cursor = source.scan(cursor, SCAN_BATCH, writer);
+			}
+			writeHolds(out, holds);
+			out.flush();
+
+			channel.write(ByteBuffer.allocate(8).putLong(0, count[0]), 12);
+			channel.force(true);
+		}
+
+		Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		return count[0];
+	}
+
+	private static void writeHolds(DataOutputStream out, Collection<HoldRecord> holds) throws IOException {
+		int open = 0;
+		for (HoldRecord hold : holds) {
+			if (hold.getState().isOpen()) {
+				open++;
+			}
+		}
+		out.writeInt(open);
+		for (HoldRecord hold : holds) {
+			if (hold.getState().isOpen()) {
+				out.writeByte(hold.isDebit() ? 1 : 0);
+				out.writeByte(hold.getState().ordinal());
+				writeString(out, hold.getTransferId());
+				writeString(out, hold.getTransfer().getFromAccountId());
+				writeString(out, hold.getTransfer().getToAccountId());
+				out.writeLong(hold.getTransfer().getAmountMinor());
+			}
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xffff];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private long read(Path snapshot, AccountsRepository target, Map<String, HoldRecord> holds) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(snapshot)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot " + snapshot + " exceeds the 2 GB mapping limit");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		int magic = buffer.getInt();
+		int formatVersion = buffer.getInt();
+		if (magic != MAGIC || formatVersion < 1 || formatVersion > FORMAT_VERSION) {
+			throw new IOException("Unsupported snapshot file " + snapshot);
+		}
+		checkpointSegment = buffer.getInt();
+		long count = buffer.getLong();
+
+		byte[] id = new byte[0xffff];
+		for (long i = 0; i < count; i++) {
+			int length = buffer.getShort() & 0xffff;
+			buffer.get(id, 0, length);
+			long balance = buffer.getLong();
+			long version = buffer.getLong();
+			target.createAccount(Account.restore(new String(id, 0, length, StandardCharsets.UTF_8), balance, version));
+		}
+		if (formatVersion >= 2) {
+			for (int holdCount = buffer.getInt(); holdCount > 0; holdCount--) {
+				boolean debit = buffer.get() != 0;
+				HoldRecord.State state = HoldRecord.State.values()[buffer.get()];
+				String transferId = readString(buffer);
+				String from = readString(buffer);
+				String to = readString(buffer);
+				Transfer transfer = Transfer.ofMinor(from, to, buffer.getLong());
+				HoldRecord hold = new HoldRecord(transferId, debit, state, transfer, 0);
+				holds.put(hold.key(), hold);
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,50 @@
+package com.db.awmd.challenge.persistence;
+
+import com.db.awmd.challenge.domain.Transfer;
+import lombok.Getter;
+
+/**
+ * A state change of one side of a transfer between accounts owned by different nodes, see
+ * {@link com.db.awmd.challenge.cluster.ShardParticipant}. The delta moves the balance of the account on that side, the
+ * source of a debit or the destination of a credit, in the same journal record as the state change.
+ */
+@Getter
+public final class HoldRecord {
+
+	public enum State {
+		NEW, RESERVED, PREPARED, FAILED, COMMITTED, ABORTED;
+
+		/**
+		 * Waiting for a commit or an abort.
+		 */
+		public boolean isOpen() {
+			return this == RESERVED || this == PREPARED;
+		}
+	}
+
+	private final String transferId;
+	private final boolean debit;
+	private final State state;
+	private final Transfer transfer;
+	private final long delta;
+
+	public HoldRecord(String transferId, boolean debit, State state, Transfer transfer, long delta) {
+		this.transferId = transferId;
+		this.debit = debit;
+		this.state = state;
+		this.transfer = transfer;
+		this.delta = delta;
+	}
+
+	public static String key(String transferId, boolean debit) {
+		return (debit ? "debit:" : "credit:") + transferId;
+	}
+
+	public String key() {
+		return key(transferId, debit);
+	}
+
+	public String getAccountId() {
+		return debit ? transfer.getFromAccountId() : transfer.getToAccountId();
+	}
+}
@@ -0,0 +1,544 @@
+package com.db.awmd.challenge.persistence;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of account creations, balance adjustments and transfers, written to memory-mapped segment
+ * files of a fixed size.
+ * <p>
+ * Appending only copies the record into the mapped segment and returns its end position. Callers then wait in
+ * {@link #awaitCommit(long)} until a background flusher has forced that position to disk. The flusher waits one
+ * commit window before each force, so every writer arriving within the window shares a single fsync.
+ * <p>
+ * Record layout: {@code int length, int crc32, byte type, short idLength, id, short otherIdLength, otherId, long
+ * amount}, where length and crc cover everything after the crc. A zero length marks the end of a segment. A
+ * transaction is a single record {@code int length, int crc32, byte type, short legs} followed by {@code short
+ * idLength, id, long delta} per leg, so that replay applies all of its legs or none. A {@link HoldRecord} is
+ * {@code int length, int crc32, byte type, byte debit, byte state, short idLength, transferId, short fromIdLength,
+ * fromId, short toIdLength, toId, long amount, long delta}, so that a hold and the balance change it makes are replayed
+ * together. Replayed holds are kept for {@link #takeReplayedHolds()}. Lengths and leg counts are unsigned shorts.
+ * On startup, {@link #open()} replays existing segments from {@link #setFirstSegment(int) the first segment} on
+ * into the repository and then starts a new segment. Replay stops at the first torn or corrupt record of a segment.
+ * <p>
+ * {@link #checkpoint()} rolls to a new segment, so that an {@link AccountSnapshotter} can fold every earlier segment
+ * into a snapshot and then {@link #deleteSegmentsBefore(int) delete} them.
+ */
+@Slf4j
+public class TransferJournal implements Closeable {
+
+	static final byte ACCOUNT_CREATED = 1;
+	static final byte BALANCE_ADJUSTED = 2;
+	static final byte TRANSFER = 3;
+	static final byte TRANSACTION = 4;
+	static final byte HOLD = 5;
+
+	private static final int HEADER_SIZE = 8;
+	private static final String SEGMENT_PREFIX = "journal-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private final Path directory;
+	private final int segmentSize;
+	private final long commitWindowNanos;
+	private final AccountsRepository accountsRepository;
+
+	private final CRC32 crc = new CRC32();
+	// A lock rather than a monitor, so that a virtual thread waiting for a commit does not pin its carrier.
+	private final ReentrantLock commitLock = new ReentrantLock();
+	private final Condition commitChanged = commitLock.newCondition();
+
+	// Guarded by this
+	private MappedByteBuffer segment;
+	private long segmentBase;
+	private int segmentIndex;
+	private int firstSegment;
+
+	private volatile long written;
+	private volatile long durable;
+	private volatile boolean running;
+	private volatile boolean closed;
+	private Thread flusher;
+
+	private volatile long appendedRecords;
+	private volatile long commits;
+	private volatile int rolledSegments;
+	private long replayedRecords;
+	private double replayRecordsPerSecond;
+	private Map<String, HoldRecord> replayedHolds = new LinkedHashMap<>();
+
+	public TransferJournal(Path directory, int segmentSize, long commitWindowMicros,
+						   AccountsRepository accountsRepository) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.commitWindowNanos = commitWindowMicros * 1000;
+		this.accountsRepository = accountsRepository;
+	}
+
+	/**
+	 * Segments before this index are already contained in the snapshot loaded at startup and are not replayed.
+	 */
+	public void setFirstSegment(int firstSegment) {
+		this.firstSegment = firstSegment;
+	}
+
+	/**
+	 * Holds restored from the snapshot loaded at startup, to which replay applies later state changes.
+	 */
+	public void restoreHolds(Collection<HoldRecord> holds) {
+		for (HoldRecord hold : holds) {
+			replayedHolds.put(hold.key(), hold);
+		}
+	}
+
+	/**
+	 * The latest state of every hold restored or replayed at startup. Returns them once, to the participant that
+	 * takes them over.
+	 */
+	public Collection<HoldRecord> takeReplayedHolds() {
+		Collection<HoldRecord> holds = replayedHolds.values();
+		replayedHolds = new LinkedHashMap<>();
+		return holds;
+	}
+
+	/**
+	 * Replays existing segments into the repository, then opens a fresh segment for appending.
+	 */
+	public void open() throws IOException {
+		Files.createDirectories(directory);
+		List<Path> segments = listSegments(firstSegment, Integer.MAX_VALUE);
+		replay(segments);
+
+		segmentIndex = segments.isEmpty() ? firstSegment : indexOf(segments.get(segments.size() - 1)) + 1;
+		segment = map(segmentIndex);
+
+		running = true;
+		flusher = new Thread(this::flush, "journal-flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	public long appendAccountCreated(String accountId, long balance) {
+		return append(ACCOUNT_CREATED, accountId, "", balance);
+	}
+
+	public long appendBalanceAdjusted(String accountId, long delta) {
+		return append(BALANCE_ADJUSTED, accountId, "", delta);
+	}
+
+	public long appendTransfer(String fromAccountId, String toAccountId, long amount) {
+		return append(TRANSFER, fromAccountId, toAccountId, amount);
+	}
+
+	/**
+	 * Records the balance deltas of a transaction as one record.
+	 */
+	public synchronized long appendTransaction(String[] accountIds, long[] deltas) {
+		byte[][] idBytes = new byte[accountIds.length][];
+		int length = 1 + 2;
+		for (int i = 0; i < accountIds.length; i++) {
+			idBytes[i] = accountIds[i].getBytes(StandardCharsets.UTF_8);
+			length += 2 + idBytes[i].length + 8;
+		}
+		int start = startRecord(length);
+		segment.put(TRANSACTION).putShort((short) accountIds.length);
+		for (int i = 0; i < accountIds.length; i++) {
+			segment.putShort((short) idBytes[i].length).put(idBytes[i]).putLong(deltas[i]);
+		}
+		return finishRecord(start, length);
+	}
+
+	public synchronized long appendHold(HoldRecord hold) {
+		Transfer transfer = hold.getTransfer();
+		byte[] transferId = hold.getTransferId().getBytes(StandardCharsets.UTF_8);
+		byte[] from = transfer.getFromAccountId().getBytes(StandardCharsets.UTF_8);
+		byte[] to = transfer.getToAccountId().getBytes(StandardCharsets.UTF_8);
+		int length = 1 + 1 + 1 + 2 + transferId.length + 2 + from.length + 2 + to.length + 8 + 8;
+		int start = startRecord(length);
+		segment.put(HOLD).put((byte) (hold.isDebit() ? 1 : 0)).put((byte) hold.getState().ordinal())
+				.putShort((short) transferId.length).put(transferId)
+				.putShort((short) from.length).put(from)
+				.putShort((short) to.length).put(to)
+				.putLong(transfer.getAmountMinor())
+				.putLong(hold.getDelta());
+		return finishRecord(start, length);
+	}
+
+	/**
+	 * Forces the current segment and rolls to a new one.
+	 *
+	 * @return the index of the new segment; every record in earlier segments is durable
+	 */
+	public synchronized int checkpoint() {
+		roll();
+		return segmentIndex;
+	}
+
+	/**
+	 * Applies the records of the segments in {@code [fromSegment, toSegment)} to the given repository, and puts the
+	 * latest state of each hold in them into the given map.
+	 *
+	 * @return the number of records applied
+	 */
+	public long replay(int fromSegment, int toSegment, AccountsRepository target, Map<String, HoldRecord> holds)
+			throws IOException {
+		long records = 0;
+		for (Path path : listSegments(fromSegment, toSegment)) {
+			records += replaySegment(path, target, holds);
+		}
+		return records;
+	}
+
+	public void deleteSegmentsBefore(int index) throws IOException {
+		for (Path path : listSegments(0, index)) {
+			Files.delete(path);
+		}
+	}
+
+	/**
+	 * Blocks until everything up to the given journal position has been forced to disk.
+	 */
+	public void awaitCommit(long position) {
+		commitLock.lock();
+		try {
+			commitChanged.signalAll();
+			while (durable < position) {
+				if (closed) {
+					throw new IllegalStateException("Journal is closed");
+				}
+				try {
+					commitChanged.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while waiting for journal commit", e);
+				}
+			}
+		} finally {
+			commitLock.unlock();
+		}
+	}
+
+	public long getAppendedRecords() {
+		return appendedRecords;
+	}
+
+	public long getCommits() {
+		return commits;
+	}
+
+	public int getRolledSegments() {
+		return rolledSegments;
+	}
+
+	public long getReplayedRecords() {
+		return replayedRecords;
+	}
+
+	public double getReplayRecordsPerSecond() {
+		return replayRecordsPerSecond;
+	}
+
+	/**
+	 * Bytes appended but not yet forced to disk, which writers waiting for a commit still have ahead of them.
+	 */
+	public long getCommitLagBytes() {
+		return Math.max(0, written - durable);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!running) {
+			return;
+		}
+		commitLock.lock();
+		try {
+			running = false;
+			commitChanged.signalAll();
+		} finally {
+			commitLock.unlock();
+		}
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			segment.force();
+		}
+		commitLock.lock();
+		try {
+			closed = true;
+			commitChanged.signalAll();
+		} finally {
+			commitLock.unlock();
+		}
+	}
+
+	private synchronized long append(byte type, String id, String otherId, long amount) {
+		byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+		byte[] otherIdBytes = otherId.getBytes(StandardCharsets.UTF_8);
+		int length = 1 + 2 + idBytes.length + 2 + otherIdBytes.length + 8;
+		int start = startRecord(length);
+		segment.put(type)
+				.putShort((short) idBytes.length).put(idBytes)
+				.putShort((short) otherIdBytes.length).put(otherIdBytes)
+				.putLong(amount);
+		return finishRecord(start, length);
+	}
+
+	/**
+	 * Makes room for a record body of the given length and positions the segment at its start.
+	 *
+	 * @return the position of the record header
+	 */
+	private int startRecord(int length) {
+		if (HEADER_SIZE + length > segmentSize) {
+			throw new IllegalArgumentException("Journal record of " + length + " bytes exceeds the segment size");
+		}
+		if (segment.remaining() < HEADER_SIZE + length) {
+			roll();
+		}
+		int start = segment.position();
+		segment.position(start + HEADER_SIZE);
+		return start;
+	}
+
+	private long finishRecord(int start, int length) {
+		ByteBuffer body = segment.duplicate();
+		body.position(start + HEADER_SIZE).limit(start + HEADER_SIZE + length);
+		crc.reset();
+		crc.update(body);
+		segment.putInt(start + 4, (int) crc.getValue());
+		// The length goes in last, so a reader never sees a record whose body is incomplete.
+		segment.putInt(start, length);
+
+		appendedRecords++;
+		written = segmentBase + segment.position();
+		return written;
+	}
+
+	private void roll() {
+		segment.force();
+		segmentBase += segment.position();
+		try {
+			segment = map(++segmentIndex);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		rolledSegments++;
+		log.info("Rolled journal to segment {}", segmentIndex);
+	}
+
+	private void flush() {
+		while (true) {
+			commitLock.lock();
+			try {
+				while (running && durable >= written) {
+					try {
+						commitChanged.await();
+					} catch (InterruptedException e) {
+						// Shutdown is signalled through running.
+					}
+				}
+				if (!running && durable >= written) {
+					return;
+				}
+			} finally {
+				commitLock.unlock();
+			}
+
+			if (running && commitWindowNanos > 0) {
+				LockSupport.parkNanos(commitWindowNanos);
+			}
+
+			long target;
+			MappedByteBuffer buffer;
+			synchronized (this) {
+				target = written;
+				buffer = segment;
+			}
+			buffer.force();
+			commits++;
+
+			commitLock.lock();
+			try {
+				durable = target;
+				commitChanged.signalAll();
+			} finally {
+				commitLock.unlock();
+			}
+		}
+	}
+
+	private MappedByteBuffer map(int index) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(segmentPath(index).toFile(), "rw")) {
+			file.setLength(segmentSize);
+			return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		}
+	}
+
+	private void replay(List<Path> segments) throws IOException {
+		long start = System.nanoTime();
+		long records = 0;
+		for (Path path : segments) {
+			records += replaySegment(path, accountsRepository, replayedHolds);
+		}
+
+		long elapsedNanos = Math.max(1, System.nanoTime() - start);
+		replayedRecords = records;
+		replayRecordsPerSecond = records * 1e9 / elapsedNanos;
+		log.info("Replayed {} journal records from {} segments in {} ms ({} records/sec)", records, segments.size(),
+				elapsedNanos / 1_000_000, (long) replayRecordsPerSecond);
+	}
+
+	private long replaySegment(Path path, AccountsRepository target, Map<String, HoldRecord> holds)
+			throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		CRC32 checksum = new CRC32();
+		long records = 0;
+		while (buffer.remaining() >= HEADER_SIZE) {
+			int start = buffer.position();
+			int length = buffer.getInt();
+			int expectedCrc = buffer.getInt();
+			if (length == 0) {
+				break;
+			}
+			if (length < 0 || length > buffer.remaining()) {
+				log.warn("Torn journal record at {}:{}, ignoring the rest of the segment", path, start);
+				break;
+			}
+
+			ByteBuffer body = buffer.slice();
+			body.limit(length);
+			checksum.reset();
+			checksum.update(body.duplicate());
+			if ((int) checksum.getValue() != expectedCrc) {
+				log.warn("Corrupt journal record at {}:{}, ignoring the rest of the segment", path, start);
+				break;
+			}
+
+			apply(body, target, holds);
+			buffer.position(start + HEADER_SIZE + length);
+			records++;
+		}
+		return records;
+	}
+
+	private void apply(ByteBuffer body, AccountsRepository target, Map<String, HoldRecord> holds) {
+		byte type = body.get();
+		if (type == TRANSACTION) {
+			for (int legs = body.getShort() & 0xffff; legs > 0; legs--) {
+				adjust(target, readString(body), body.getLong());
+			}
+			return;
+		}
+		if (type == HOLD) {
+			HoldRecord hold = readHold(body);
+			if (hold.getDelta() != 0) {
+				adjust(target, hold.getAccountId(), hold.getDelta());
+			}
+			holds.put(hold.key(), hold);
+			return;
+		}
+		String id = readString(body);
+		String otherId = readString(body);
+		long amount = body.getLong();
+
+		switch (type) {
+			case ACCOUNT_CREATED:
+				try {
+					target.createAccount(Account.ofMinor(id, amount));
+				} catch (DuplicateAccountIdException e) {
+					// A later attempt to create the same account; the first creation wins, as it did originally.
+				}
+				break;
+			case BALANCE_ADJUSTED:
+				adjust(target, id, amount);
+				break;
+			case TRANSFER:
+				// Deltas are applied unconditionally: balance checks already passed when the transfer was recorded.
+				adjust(target, id, -amount);
+				adjust(target, otherId, amount);
+				break;
+			default:
+				throw new IllegalStateException("Unknown journal record type " + type);
+		}
+	}
+
+	private void adjust(AccountsRepository target, String accountId, long delta) {
+		Account account = target.getAccount(accountId);
+		if (account == null) {
+			log.warn("Journal refers to unknown account {}", accountId);
+			return;
+		}
+		account.deposit(delta);
+	}
+
+	private static HoldRecord readHold(ByteBuffer body) {
+		boolean debit = body.get() != 0;
+		HoldRecord.State state = HoldRecord.State.values()[body.get()];
+		String transferId = readString(body);
+		String from = readString(body);
+		String to = readString(body);
+		long amount = body.getLong();
+		return new HoldRecord(transferId, debit, state, Transfer.ofMinor(from, to, amount), body.getLong());
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		// Lengths are unsigned; a signed read would turn ids of more than 32767 bytes negative.
+		byte[] bytes = new byte[buffer.getShort() & 0xffff];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private List<Path> listSegments(int fromSegment, int toSegment) throws IOException {
+		List<Path> segments = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path path : stream) {
+				int index = indexOf(path);
+				if (index >= fromSegment && index < toSegment) {
+					segments.add(path);
+				}
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private Path segmentPath(int index) {
+		return directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+	}
+
+	private static int indexOf(Path segment) {
+		String name = segment.getFileName().toString();
+		return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+}
@@ -3,11 +3,34 @@ package com.db.awmd.challenge.repository;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 
+import java.util.function.Consumer;
+
 public interface AccountsRepository {
 
+  /**
+   * Cursor returned by {@link #scan(long, int, Consumer)} once every account has been visited.
+   */
+  long END_OF_SCAN = -1;
+
   void createAccount(Account account) throws DuplicateAccountIdException;
 
   Account getAccount(String accountId);
 
+  /**
+   * Longest account id, in UTF-8 bytes, that the store can hold. Longer ids are never found.
+   */
+  default int getMaxIdBytes() {
+    return Integer.MAX_VALUE;
+  }
+
   void clearAccounts();
+
+  /**
+   * Visits up to {@code limit} accounts, continuing from {@code cursor}: 0 for the first call, then the value the
+   * previous call returned. Scanning never blocks concurrent transfers or account creation. Every account that exists
+   * when the scan starts is visited exactly once; accounts created while it runs may or may not be.
+   *
+   * @return the cursor to continue from, or {@link #END_OF_SCAN} when there are no more accounts
+   */
+  long scan(long cursor, int limit, Consumer<Account> action);
 }
@@ -2,15 +2,29 @@ package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
+/**
+ * Besides the map, accounts are kept in creation order in an append-only array of chunks, which gives scans a stable
+ * cursor: the creation index. Appends are serialized; readers only see entries below the published count.
+ */
 @Repository
+@ConditionalOnProperty(name = "accounts.store", havingValue = "heap", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
+  private static final int CHUNK_BITS = 12;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
   private final Map<String, Account> accounts = new ConcurrentHashMap<>();
 
+  private volatile Account[][] chunks = new Account[16][];
+  private volatile int created;
+
   @Override
   public void createAccount(Account account) throws DuplicateAccountIdException {
     Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
@@ -18,6 +32,7 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
       throw new DuplicateAccountIdException(
         "Account id " + account.getAccountId() + " already exists!");
     }
+    append(account);
   }
 
   @Override
@@ -26,8 +41,41 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
   }
 
   @Override
-  public void clearAccounts() {
+  public synchronized void clearAccounts() {
     accounts.clear();
+    chunks = new Account[16][];
+    created = 0;
+  }
+
+  @Override
+  public long scan(long cursor, int limit, Consumer<Account> action) {
+    int end = created;
+    Account[][] chunks = this.chunks;
+    long stop = Math.min(end, cursor + limit);
+    for (long index = cursor; index < stop; index++) {
+      action.accept(chunks[(int) (index >>> CHUNK_BITS)][(int) (index & (CHUNK_SIZE - 1))]);
+    }
+    return stop < end ? stop : END_OF_SCAN;
+  }
+
+  public int size() {
+    return accounts.size();
+  }
+
+  private synchronized void append(Account account) {
+    int index = created;
+    int chunk = index >>> CHUNK_BITS;
+    Account[][] chunks = this.chunks;
+    if (chunk == chunks.length) {
+      chunks = Arrays.copyOf(chunks, chunks.length * 2);
+    }
+    if (chunks[chunk] == null) {
+      chunks[chunk] = new Account[CHUNK_SIZE];
+    }
+    chunks[chunk][index & (CHUNK_SIZE - 1)] = account;
+    this.chunks = chunks;
+    // Published last, so a reader that sees the count also sees the entry and the chunk holding it.
+    created = index + 1;
   }
 
 }
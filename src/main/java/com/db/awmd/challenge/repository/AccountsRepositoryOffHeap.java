@@ -0,0 +1,323 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountView;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Account store that keeps every account in a fixed-size slot of an off-heap, open-addressing hash table with linear
+ * probing. {@link #getAccount(String)} returns a short-lived {@link OffHeapAccount} handle that reads and updates
+ * the slot directly, so the heap holds nothing per account.
+ * <p>
+ * Slot layout (72 bytes): {@code int hash, short idLength, id (up to 42 UTF-8 bytes), long balance, long version,
+ * long lockOwner}. The table is a single direct buffer addressed by slot index, so it has at most 2^24 slots. It does
+ * not grow; it holds up to three quarters of {@code accounts.off-heap.capacity} accounts. Slots are never freed
+ * individually.
+ * <p>
+ * Each slot is guarded by one of a fixed set of monitors. A slot is claimed and published, and its balance read and
+ * updated, while holding its monitor, which orders the plain buffer accesses between threads. The balance lock that
+ * a transfer holds across two accounts is the lock owner field of the slot, set and cleared under the monitor.
+ * <p>
+ * Scans walk the table in slot order, so the cursor is a slot index. Since slots never move, a scan sees every account
+ * that was published before it reached that account's slot.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "accounts.store", havingValue = "off-heap")
+public class AccountsRepositoryOffHeap implements AccountsRepository {
+
+	static final int MAX_ID_BYTES = 42;
+	static final int HASH = 0;
+	static final int ID_LENGTH = 4;
+	static final int ID = 6;
+	static final int BALANCE = 48;
+	static final int VERSION = 56;
+	static final int LOCK_OWNER = 64;
+	static final int SLOT_SIZE = 72;
+
+	private static final int MAX_CAPACITY = 1 << 24;
+	private static final int MONITORS = 1024;
+	private static final int EMPTY = 0;
+
+	private final int capacity;
+	private final int maxAccounts;
+	private final ByteBuffer table;
+	private final Object[] monitors = new Object[MONITORS];
+	private final AtomicInteger size = new AtomicInteger();
+
+	public AccountsRepositoryOffHeap(@Value("${accounts.off-heap.capacity:1048576}") int capacity) {
+		if (Integer.bitCount(capacity) != 1 || capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("Capacity must be a power of two up to " + MAX_CAPACITY + ": "
+					+ capacity);
+		}
+		this.capacity = capacity;
+		this.maxAccounts = capacity / 4 * 3;
+		this.table = ByteBuffer.allocateDirect(capacity * SLOT_SIZE).order(ByteOrder.nativeOrder());
+		for (int i = 0; i < MONITORS; i++) {
+			monitors[i] = new Object();
+		}
+		log.info("Allocated {} MB off-heap for {} account slots", (capacity * (long) SLOT_SIZE) >> 20, capacity);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the id is longer than {@value #MAX_ID_BYTES} UTF-8 bytes
+	 */
+	@Override
+	public void createAccount(Account account) throws DuplicateAccountIdException {
+		byte[] id = encode(account.getAccountId());
+		if (id == null) {
+			throw new IllegalArgumentException("Account id " + account.getAccountId() + " is longer than "
+					+ MAX_ID_BYTES + " bytes");
+		}
+		if (size.incrementAndGet() > maxAccounts) {
+			size.decrementAndGet();
+			throw new IllegalStateException("Off-heap account store is full (" + maxAccounts + " accounts)");
+		}
+
+		int hash = hash(id);
+		for (int index = hash & (capacity - 1); ; index = (index + 1) & (capacity - 1)) {
+			int slot = index * SLOT_SIZE;
+			synchronized (monitor(index)) {
+				int slotHash = table.getInt(slot + HASH);
+				if (slotHash == EMPTY) {
+					table.putShort(slot + ID_LENGTH, (short) id.length);
+					for (int i = 0; i < id.length; i++) {
+						table.put(slot + ID + i, id[i]);
+					}
+					table.putLong(slot + BALANCE, account.readBalanceMinor());
+					table.putLong(slot + VERSION, account.getVersion());
+					table.putLong(slot + LOCK_OWNER, 0);
+					table.putInt(slot + HASH, hash);
+					return;
+				}
+				if (slotHash == hash && matches(slot, id)) {
+					size.decrementAndGet();
+					throw new DuplicateAccountIdException("Account id " + account.getAccountId() + " already exists!");
+				}
+			}
+		}
+	}
+
+	@Override
+	public Account getAccount(String accountId) {
+		byte[] id = encode(accountId);
+		if (id == null) {
+			// Could never have been created.
+			return null;
+		}
+		int hash = hash(id);
+		for (int index = hash & (capacity - 1); ; index = (index + 1) & (capacity - 1)) {
+			int slot = index * SLOT_SIZE;
+			synchronized (monitor(index)) {
+				int slotHash = table.getInt(slot + HASH);
+				if (slotHash == EMPTY) {
+					return null;
+				}
+				if (slotHash == hash && matches(slot, id)) {
+					return new OffHeapAccount(accountId, this, index);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Not safe to call while other threads use the store.
+	 */
+	@Override
+	public void clearAccounts() {
+		for (int i = 0; i < capacity * SLOT_SIZE; i += 8) {
+			table.putLong(i, 0);
+		}
+		size.set(0);
+	}
+
+	@Override
+	public long scan(long cursor, int limit, Consumer<Account> action) {
+		int visited = 0;
+		for (long index = cursor; index < capacity; index++) {
+			if (visited == limit) {
+				return index;
+			}
+			String accountId = null;
+			synchronized (monitor((int) index)) {
+				int slot = (int) index * SLOT_SIZE;
+				if (table.getInt(slot + HASH) != EMPTY) {
+					accountId = decode(slot);
+				}
+			}
+			if (accountId != null) {
+				action.accept(new OffHeapAccount(accountId, this, (int) index));
+				visited++;
+			}
+		}
+		return END_OF_SCAN;
+	}
+
+	@Override
+	public int getMaxIdBytes() {
+		return MAX_ID_BYTES;
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	long balance(int index) {
+		synchronized (monitor(index)) {
+			return table.getLong(index * SLOT_SIZE + BALANCE);
+		}
+	}
+
+	long version(int index) {
+		synchronized (monitor(index)) {
+			return table.getLong(index * SLOT_SIZE + VERSION);
+		}
+	}
+
+	AccountView view(String accountId, int index) {
+		int slot = index * SLOT_SIZE;
+		synchronized (monitor(index)) {
+			return new AccountView(accountId, table.getLong(slot + BALANCE), table.getLong(slot + VERSION));
+		}
+	}
+
+	void setBalance(int index, long balance) {
+		synchronized (monitor(index)) {
+			table.putLong(index * SLOT_SIZE + BALANCE, balance);
+		}
+	}
+
+	/**
+	 * @return the new balance
+	 */
+	long add(int index, long amount) {
+		int slot = index * SLOT_SIZE;
+		synchronized (monitor(index)) {
+			long balance = table.getLong(slot + BALANCE) + amount;
+			table.putLong(slot + BALANCE, balance);
+			table.putLong(slot + VERSION, table.getLong(slot + VERSION) + 1);
+			return balance;
+		}
+	}
+
+	/**
+	 * @return false, leaving the balance unchanged, if it is less than the amount
+	 */
+	boolean withdraw(int index, long amount) {
+		int slot = index * SLOT_SIZE;
+		synchronized (monitor(index)) {
+			long balance = table.getLong(slot + BALANCE);
+			if (balance < amount) {
+				return false;
+			}
+			table.putLong(slot + BALANCE, balance - amount);
+			table.putLong(slot + VERSION, table.getLong(slot + VERSION) + 1);
+			return true;
+		}
+	}
+
+	void lock(int index) {
+		for (int spins = 0; !tryAcquire(index); spins++) {
+			if (spins < 64) {
+				Thread.yield();
+			} else {
+				LockSupport.parkNanos(10_000);
+			}
+		}
+	}
+
+	/**
+	 * @return false if the lock is still taken after the timeout
+	 */
+	boolean tryLock(int index, long timeoutNanos) {
+		long deadline = System.nanoTime() + timeoutNanos;
+		for (int spins = 0; !tryAcquire(index); spins++) {
+			if (deadline - System.nanoTime() <= 0) {
+				return false;
+			}
+			if (spins < 64) {
+				Thread.yield();
+			} else {
+				LockSupport.parkNanos(10_000);
+			}
+		}
+		return true;
+	}
+
+	void unlock(int index) {
+		synchronized (monitor(index)) {
+			table.putLong(index * SLOT_SIZE + LOCK_OWNER, 0);
+		}
+	}
+
+	long lockOwner(int index) {
+		synchronized (monitor(index)) {
+			return table.getLong(index * SLOT_SIZE + LOCK_OWNER);
+		}
+	}
+
+	private boolean tryAcquire(int index) {
+		int slot = index * SLOT_SIZE;
+		synchronized (monitor(index)) {
+			if (table.getLong(slot + LOCK_OWNER) != 0) {
+				return false;
+			}
+			table.putLong(slot + LOCK_OWNER, Thread.currentThread().getId());
+			return true;
+		}
+	}
+
+	private Object monitor(int index) {
+		return monitors[index & (MONITORS - 1)];
+	}
+
+	private boolean matches(int slot, byte[] id) {
+		if (table.getShort(slot + ID_LENGTH) != id.length) {
+			return false;
+		}
+		for (int i = 0; i < id.length; i++) {
+			if (table.get(slot + ID + i) != id[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the UTF-8 bytes of the id, or null if they do not fit into a slot
+	 */
+	private static byte[] encode(String accountId) {
+		byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+		return id.length > MAX_ID_BYTES ? null : id;
+	}
+
+	private String decode(int slot) {
+		byte[] id = new byte[table.getShort(slot + ID_LENGTH)];
+		for (int i = 0; i < id.length; i++) {
+			id[i] = table.get(slot + ID + i);
+		}
+		return new String(id, StandardCharsets.UTF_8);
+	}
+
+	private static int hash(byte[] id) {
+		int hash = 0;
+		for (byte b : id) {
+			hash = 31 * hash + b;
+		}
+		hash ^= hash >>> 16;
+		hash &= Integer.MAX_VALUE;
+		// EMPTY is reserved
+		return hash == EMPTY ? 1 : hash;
+	}
+}
@@ -0,0 +1,121 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountView;
+import com.db.awmd.challenge.domain.Money;
+
+import java.math.BigDecimal;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Handle onto an account slot of {@link AccountsRepositoryOffHeap}. Handles carry no state of their own; every
+ * handle for the same account shares balance, version and balance lock through the slot.
+ */
+class OffHeapAccount extends Account {
+
+	private final AccountsRepositoryOffHeap store;
+	private final int slot;
+
+	OffHeapAccount(String accountId, AccountsRepositoryOffHeap store, int slot) {
+		super(accountId, (Lock) null);
+		this.store = store;
+		this.slot = slot;
+	}
+
+	@Override
+	public long readBalanceMinor() {
+		return store.balance(slot);
+	}
+
+	@Override
+	public long getVersion() {
+		return store.version(slot);
+	}
+
+	@Override
+	public AccountView view() {
+		return store.view(getAccountId(), slot);
+	}
+
+	@Override
+	public void setBalance(BigDecimal balance) {
+		if (balance == null) {
+			throw new IllegalArgumentException("Balance is required.");
+		}
+		store.setBalance(slot, Money.toMinor(balance));
+	}
+
+	/**
+	 * Handles are transient, so there is nowhere to keep credit stripes.
+	 */
+	@Override
+	public boolean promoteToHot() {
+		return false;
+	}
+
+	@Override
+	public Account lockBalance() {
+		store.lock(slot);
+		return this;
+	}
+
+	@Override
+	public boolean tryLockBalance(long timeoutNanos) {
+		return store.tryLock(slot, timeoutNanos);
+	}
+
+	@Override
+	public Account unlockBalance() {
+		store.unlock(slot);
+		return this;
+	}
+
+	@Override
+	public Account debit(long amountMinor) {
+		checkBalanceLock();
+		add(-amountMinor);
+		return this;
+	}
+
+	@Override
+	public Account credit(long amountMinor) {
+		checkBalanceLock();
+		add(amountMinor);
+		return this;
+	}
+
+	@Override
+	public long deposit(long amountMinor) {
+		return add(amountMinor);
+	}
+
+	@Override
+	public boolean withdraw(long amountMinor) {
+		return store.withdraw(slot, amountMinor);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof OffHeapAccount && ((OffHeapAccount) o).store == store && ((OffHeapAccount) o).slot == slot;
+	}
+
+	@Override
+	public int hashCode() {
+		return slot;
+	}
+
+	@Override
+	public String toString() {
+		return "OffHeapAccount(accountId=" + getAccountId() + ", balance=" + getBalance() + ")";
+	}
+
+	private long add(long amountMinor) {
+		return store.add(slot, amountMinor);
+	}
+
+	private void checkBalanceLock() {
+		if (store.lockOwner(slot) != Thread.currentThread().getId()) {
+			throw new IllegalThreadStateException("Balance lock of " + getAccountId() + " is not held by this thread");
+		}
+	}
+}
@@ -1,67 +1,507 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountView;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.Posting;
+import com.db.awmd.challenge.domain.Transaction;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferCode;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
 import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.exception.RateLimitExceededException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.persistence.TransferJournal;
 import com.db.awmd.challenge.repository.AccountsRepository;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.validation.constraints.NotNull;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
 public class AccountsService {
 
+	/**
+	 * Most postings in one transaction, which keeps every transaction a single journal record.
+	 */
+	public static final int MAX_POSTINGS = 1000;
+
+	private static final String SAME_ACCOUNT_MESSAGE = "Cannot transfer amount to the same account";
+
 	@Getter
 	private final AccountsRepository accountsRepository;
 
 	@Getter
 	private final NotificationService notificationService;
 
+	private ExecutorService batchExecutor;
+
+	private ShardedTransferEngine transferEngine;
+
+	private TransferJournal journal;
+
+	private TransferMetrics metrics = new TransferMetrics();
+
+	private HotAccountPolicy hotAccountPolicy = new HotAccountPolicy(new String[0], 0);
+
+	private BalanceLockPolicy balanceLockPolicy = new BalanceLockPolicy(1000, 100);
+
+	private TransferRateLimiter rateLimiter = new TransferRateLimiter(0, 100, 0, 10000, 0);
+
+	private IdempotencyCache idempotencyCache = new IdempotencyCache(10000, 600, 16);
+
+	@Getter
+	private TransferLedger ledger = new TransferLedger(64);
+
 	@Autowired
 	public AccountsService(AccountsRepository accountsRepository, NotificationService notificationService) {
 		this.accountsRepository = accountsRepository;
 		this.notificationService = notificationService;
+		this.batchExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+				new DaemonThreadFactory("transfer-batch"));
 	}
 
 
+	/**
+	 * Runs batch transfer groups on a virtual thread each instead of a pool sized to the processors, when
+	 * {@code threads.virtual} is true. See {@link VirtualThreads}.
+	 */
+	@Autowired
+	public void setVirtualThreads(@Value("${threads.virtual:false}") boolean virtualThreads) {
+		if (virtualThreads) {
+			ExecutorService previous = batchExecutor;
+			batchExecutor = VirtualThreads.newThreadPerTaskExecutor("transfer-batch");
+			previous.shutdown();
+		}
+	}
+
+	/**
+	 * Switches transfers from per-account balance locks to the single-writer sharded engine. Only registered when
+	 * {@code accounts.transfer.mode} is {@code sharded}.
+	 */
+	@Autowired(required = false)
+	public void setTransferEngine(ShardedTransferEngine transferEngine) {
+		this.transferEngine = transferEngine;
+	}
+
+	/**
+	 * Makes every account creation, balance adjustment and transfer durable before it is acknowledged. Only registered
+	 * when {@code journal.enabled} is true.
+	 */
+	@Autowired(required = false)
+	public void setJournal(TransferJournal journal) {
+		this.journal = journal;
+	}
+
+	@Autowired
+	public void setMetrics(TransferMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Autowired
+	public void setHotAccountPolicy(HotAccountPolicy hotAccountPolicy) {
+		this.hotAccountPolicy = hotAccountPolicy;
+	}
+
+	@Autowired
+	public void setBalanceLockPolicy(BalanceLockPolicy balanceLockPolicy) {
+		this.balanceLockPolicy = balanceLockPolicy;
+	}
+
+	@Autowired
+	public void setRateLimiter(TransferRateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+	}
+
+	@Autowired
+	public void setIdempotencyCache(IdempotencyCache idempotencyCache) {
+		this.idempotencyCache = idempotencyCache;
+	}
+
+	@Autowired
+	public void setLedger(TransferLedger ledger) {
+		this.ledger = ledger;
+	}
+
+	/**
+	 * Promotes configured hot accounts that were restored from a snapshot or the journal rather than created.
+	 */
+	@PostConstruct
+	public void promoteHotAccounts() {
+		for (String accountId : hotAccountPolicy.getAccountIds()) {
+			Account account = accountsRepository.getAccount(accountId);
+			if (account != null) {
+				hotAccountPolicy.onCreated(account);
+			}
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the account id is longer than {@link Account#MAX_ID_LENGTH} or than the
+	 * repository can hold
+	 */
 	public void createAccount(Account account) {
+		String accountId = account.getAccountId();
+		if (accountId.length() > Account.MAX_ID_LENGTH) {
+			throw new IllegalArgumentException("Account id must not be longer than " + Account.MAX_ID_LENGTH
+					+ " characters");
+		}
+		// Checked before the account is journaled, so that replay never meets an account the store rejects.
+		int maxIdBytes = accountsRepository.getMaxIdBytes();
+		if (maxIdBytes < Integer.MAX_VALUE && accountId.getBytes(StandardCharsets.UTF_8).length > maxIdBytes) {
+			throw new IllegalArgumentException("Account id must not be longer than " + maxIdBytes + " UTF-8 bytes");
+		}
+		// Journaled before the account becomes visible, so that no transfer on it can precede it in the journal.
+		long position = journal != null ? journal.appendAccountCreated(account.getAccountId(), account.readBalanceMinor()) : 0;
 		this.accountsRepository.createAccount(account);
+		hotAccountPolicy.onCreated(account);
+		awaitCommit(position);
 	}
 
 	public Account getAccount(String accountId) {
 		return this.accountsRepository.getAccount(accountId);
 	}
 
+	/**
+	 * Consistent, immutable copy of the account for reads, or null if there is no such account. Never blocks transfers.
+	 */
+	public AccountView getAccountView(String accountId) {
+		Account account = this.accountsRepository.getAccount(accountId);
+		return account != null ? account.view() : null;
+	}
+
+	/**
+	 * Passes a view of up to {@code limit} accounts to {@code action}, continuing from {@code cursor}, and returns the
+	 * cursor of the next page or {@link AccountsRepository#END_OF_SCAN}. See {@link AccountsRepository#scan}.
+	 */
+	public long scanAccounts(long cursor, int limit, Consumer<AccountView> action) {
+		return this.accountsRepository.scan(cursor, limit, account -> action.accept(account.view()));
+	}
+
+	/**
+	 * Credits the account without taking its balance lock.
+	 *
+	 * @return the new balance in minor units
+	 */
+	public long deposit(String accountId, long amount) {
+		checkAmount(amount);
+		Account account = findAccount(accountId);
+		long balance = account.deposit(amount);
+		journalAdjustment(account, amount);
+		return balance;
+	}
+
+	/**
+	 * Debits the account without taking its balance lock.
+	 *
+	 * @return the new balance in minor units
+	 * @throws InsufficientFundsException if the balance does not cover the amount
+	 */
+	public long withdraw(String accountId, long amount) {
+		checkAmount(amount);
+		Account account = findAccount(accountId);
+		if (!account.withdraw(amount)) {
+			throw new InsufficientFundsException(account);
+		}
+		journalAdjustment(account, -amount);
+		return account.readBalanceMinor();
+	}
+
+	/**
+	 * Journals an adjustment already applied to the account, and reverses it if it cannot be journaled, since replay
+	 * would not reproduce it.
+	 */
+	private void journalAdjustment(Account account, long delta) {
+		if (journal == null) {
+			return;
+		}
+		long journalPosition;
+		try {
+			journalPosition = journal.appendBalanceAdjusted(account.getAccountId(), delta);
+		} catch (RuntimeException e) {
+			account.deposit(-delta);
+			log.error("Balance adjustment could not be journaled, undone", e);
+			throw e;
+		}
+		awaitCommit(journalPosition);
+	}
+
 	public void transfer(Transfer transfer) {
-		Account from = accountsRepository.getAccount(transfer.getFromAccountId());
-		Account to = accountsRepository.getAccount(transfer.getToAccountId());
+		Account from = lookup(transfer.getFromAccountId());
+		Account to = lookup(transfer.getToAccountId());
+		TransferCode code = tryTransfer(from, to, transfer);
+		if (code != TransferCode.OK) {
+			throw toException(code, transfer, from);
+		}
+	}
+
+	/**
+	 * Executes the transfer and reports its outcome as a code instead of throwing, for callers that only turn the
+	 * outcome into a response. No exception is built on any path; {@link #resultOf} adds the message of a failure.
+	 */
+	public TransferCode tryTransfer(Transfer transfer) {
+		return tryTransfer(lookup(transfer.getFromAccountId()), lookup(transfer.getToAccountId()), transfer);
+	}
+
+	/**
+	 * The result clients get for a transfer with the given outcome; the shared completed result when it succeeded.
+	 */
+	public TransferResult resultOf(TransferCode code, Transfer transfer) {
+		return resultOf(code, transfer, null);
+	}
+
+	/**
+	 * Executes the transfer at most once per idempotency key. A retry with the same key and transfer gets the result of
+	 * the first execution, for as long as {@link IdempotencyCache} remembers it.
+	 *
+	 * @throws IllegalArgumentException if the key is invalid or was used for a different transfer
+	 */
+	public TransferResult transfer(Transfer transfer, String idempotencyKey) {
+		return idempotencyCache.execute(idempotencyKey, transfer, () -> resultOf(tryTransfer(transfer), transfer));
+	}
+
+	/**
+	 * Executes a batch of transfers and returns one result per transfer, in request order. Accounts are looked up once
+	 * per batch. Transfers sharing an account run sequentially in request order, while transfers that touch disjoint
+	 * sets of accounts run concurrently.
+	 */
+	public List<TransferResult> transferAll(List<Transfer> transfers) {
+		Map<String, Account> accounts = new HashMap<>();
+		for (Transfer transfer : transfers) {
+			lookup(accounts, transfer.getFromAccountId());
+			lookup(accounts, transfer.getToAccountId());
+		}
 
-		AccountNotFoundException exception = new AccountNotFoundException();
-		exception.addAccountId(() -> from == null ? transfer.getFromAccountId() : null);
-		exception.addAccountId(() -> to == null ? transfer.getToAccountId() : null);
-		exception.throwMe();
+		TransferResult[] results = new TransferResult[transfers.size()];
+		List<List<Integer>> groups = groupByAccount(transfers);
+		if (groups.size() == 1) {
+			runGroup(groups.get(0), transfers, accounts, results);
+			return Arrays.asList(results);
+		}
+
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[groups.size()];
+		for (int i = 0; i < futures.length; i++) {
+			List<Integer> group = groups.get(i);
+			futures[i] = CompletableFuture.runAsync(() -> runGroup(group, transfers, accounts, results), batchExecutor);
+		}
+		CompletableFuture.allOf(futures).join();
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Applies every posting of the transaction or none. Postings on the same account are netted. The accounts are
+	 * locked once each, in the descending id order transfers lock in, and every net debit is checked against its
+	 * balance before any balance changes. Hot accounts that are only credited are not locked.
+	 *
+	 * @throws AccountNotFoundException if any of the accounts does not exist
+	 * @throws InsufficientFundsException for the first account whose balance does not cover its net debit
+	 * @throws IllegalArgumentException if there are too few or too many postings, an amount is zero or the amounts do
+	 *                                  not sum to zero
+	 * @throws LockTimeoutException if a balance lock was not free within the lock budget; nothing was applied
+	 */
+	public void transact(Transaction transaction) {
+		SortedMap<String, Long> net = netPostings(transaction);
+		String[] accountIds = net.keySet().toArray(new String[0]);
+		long[] deltas = new long[accountIds.length];
+		Account[] accounts = new Account[accountIds.length];
+		List<String> missing = new ArrayList<>(0);
+		for (int i = 0; i < accountIds.length; i++) {
+			deltas[i] = net.get(accountIds[i]);
+			accounts[i] = accountsRepository.getAccount(accountIds[i]);
+			if (accounts[i] == null) {
+				missing.add(accountIds[i]);
+			}
+		}
+		if (!missing.isEmpty()) {
+			metrics.recordAccountNotFound();
+			throw new AccountNotFoundException(missing);
+		}
+
+		log.info("Transaction initiated: {}", transaction);
+		boolean[] locked = new boolean[accounts.length];
+		for (int i = 0; i < accounts.length; i++) {
+			locked[i] = deltas[i] < 0 || !accounts[i].isHot();
+		}
+		long lockStart = System.nanoTime();
+		try {
+			balanceLockPolicy.lockAll(accounts, locked);
+		} catch (LockTimeoutException e) {
+			metrics.recordLockTimeout();
+			throw e;
+		}
+		long lockAcquired = System.nanoTime();
+		metrics.recordLockWait(lockAcquired - lockStart);
 
-		transfer(from, to, transfer.getAmount());
+		long journalPosition = 0;
+		try {
+			for (int i = 0; i < accounts.length; i++) {
+				if (deltas[i] < 0 && accounts[i].readBalanceMinor() < -deltas[i]) {
+					metrics.recordInsufficientFunds();
+					throw new InsufficientFundsException(accounts[i]);
+				}
+			}
+			// Lock-free withdrawals may still have drained a balance since the check, so debits can fail and are undone.
+			for (int i = 0; i < accounts.length; i++) {
+				if (deltas[i] < 0 && !accounts[i].withdraw(-deltas[i])) {
+					for (int j = 0; j < i; j++) {
+						if (deltas[j] < 0) {
+							accounts[j].deposit(-deltas[j]);
+						}
+					}
+					metrics.recordInsufficientFunds();
+					throw new InsufficientFundsException(accounts[i]);
+				}
+			}
+			for (int i = 0; i < accounts.length; i++) {
+				if (deltas[i] > 0) {
+					accounts[i].credit(deltas[i]);
+				}
+			}
+			// A transaction that is not journaled would be lost on replay, so it is undone while the locks are held.
+			if (journal != null) {
+				try {
+					journalPosition = journal.appendTransaction(accountIds, deltas);
+				} catch (RuntimeException e) {
+					for (int i = 0; i < accounts.length; i++) {
+						accounts[i].deposit(-deltas[i]);
+					}
+					log.error("Transaction could not be journaled, undone", e);
+					throw e;
+				}
+			}
+		} finally {
+			for (int i = accounts.length - 1; i >= 0; i--) {
+				if (locked[i]) {
+					accounts[i].unlockBalance();
+				}
+			}
+			metrics.recordLockHold(System.nanoTime() - lockAcquired);
+		}
+
+		awaitCommit(journalPosition);
+		for (Transfer transfer : toTransfers(accountIds, deltas)) {
+			ledger.recordTransfer(transfer.getFromAccountId(), transfer.getToAccountId(), transfer.getAmountMinor());
+			notificationService.notifyAboutTransfer(accountsRepository.getAccount(transfer.getFromAccountId()), transfer);
+		}
+		for (int i = 0; i < accounts.length; i++) {
+			if (locked[i] && deltas[i] > 0) {
+				hotAccountPolicy.onCredited(accounts[i]);
+			}
+		}
+		log.info("Transaction successful");
 	}
 
 	public void transfer(@NotNull Account from, @NotNull Account to, double amount) {
+		transferMinor(from, to, Money.toMinor(amount));
+	}
+
+	/**
+	 * Transfers an amount given in minor units, see {@link Money}.
+	 *
+	 * @throws LockTimeoutException if a balance lock was not free within the lock budget; nothing was applied
+	 * @throws RateLimitExceededException if admission control turned the transfer away; nothing was applied
+	 */
+	public void transferMinor(@NotNull Account from, @NotNull Account to, long amount) {
+		TransferCode code = tryTransferMinor(from, to, amount);
+		if (code != TransferCode.OK) {
+			throw toException(code, Transfer.ofMinor(from.getAccountId(), to.getAccountId(), amount), from);
+		}
+	}
+
+	/**
+	 * Transfers an amount given in minor units like {@link #transferMinor}, but reports the outcome as a code instead
+	 * of throwing.
+	 */
+	public TransferCode tryTransferMinor(@NotNull Account from, @NotNull Account to, long amount) {
+		return tryTransferMinor(from, to, amount, null);
+	}
+
+	/**
+	 * @param transfer the request being executed, handed to the notification service so that a successful transfer
+	 *                 allocates nothing; null to build one
+	 */
+	private TransferCode tryTransferMinor(Account from, Account to, long amount, Transfer transfer) {
+		long start = System.nanoTime();
+		try {
+			TransferCode code = executeTransfer(from, to, amount, transfer);
+			if (code == TransferCode.INSUFFICIENT_FUNDS) {
+				metrics.recordInsufficientFunds();
+			}
+			return code;
+		} finally {
+			metrics.recordTransfer(System.nanoTime() - start);
+		}
+	}
+
+	private TransferCode executeTransfer(Account from, Account to, long amount, Transfer transfer) {
+		// Shed before anything else, so that a flood on one account costs no lock, log line or journal record.
+		TransferCode admission = rateLimiter.tryAdmit(from.getAccountId(), to.getAccountId());
+		if (admission != TransferCode.OK) {
+			metrics.recordRateLimited();
+			return admission;
+		}
+
 		// To be called withing a transaction and following code be pushed to data access layer
-		log.info(String.format("Amount transfer initiated: [From: %s, To: %s, Amt: %f", from.getAccountId(), to.getAccountId(), amount));
+		if (log.isDebugEnabled()) {
+			log.debug("Amount transfer initiated: [From: {}, To: {}, Amt: {}]", from.getAccountId(), to.getAccountId(),
+					Money.toDecimal(amount));
+		}
 
 		if (amount <= 0) {
-			throw new IllegalArgumentException("Invalid amount " + amount);
+			return TransferCode.INVALID_AMOUNT;
 		}
 
 		Account bigger = from;
 		Account smaller = to;
 		int compareTo;
 		if ((compareTo = from.getAccountId().compareTo(to.getAccountId())) == 0) {
-			throw new IllegalArgumentException("Cannot transfer amount to the same account");
+			return TransferCode.SAME_ACCOUNT;
+		}
+
+		if (transferEngine != null) {
+			if (!transferEngine.tryTransfer(from, to, amount)) {
+				return TransferCode.INSUFFICIENT_FUNDS;
+			}
+			// Appended once the shards have applied both legs, so the journal may order transfers on an account
+			// differently from the shards; replay applies the deltas unconditionally, so the balances agree.
+			// A transfer that is not journaled would be lost on replay, so it is undone rather than acknowledged.
+			long journalPosition = 0;
+			if (journal != null) {
+				try {
+					journalPosition = journal.appendTransfer(from.getAccountId(), to.getAccountId(), amount);
+				} catch (RuntimeException e) {
+					to.deposit(-amount);
+					from.deposit(amount);
+					log.error("Amount transfer could not be journaled, undone", e);
+					throw e;
+				}
+			}
+			ledger.recordTransfer(from.getAccountId(), to.getAccountId(), amount);
+			awaitCommit(journalPosition);
+			notifyAboutTransfer(from, to, amount, transfer);
+			return TransferCode.OK;
 		}
 
 		if (compareTo < 1) {
@@ -69,30 +509,345 @@ public class AccountsService {
 			smaller = from;
 		}
 
-		bigger.lockBalance();
-		smaller.lockBalance();
-
-		// Move this check into separate class so that balance check can be externalised.
-		double balance = from.readBalanceSynchronized();
-		if (balance < amount) {
-			log.error("Insufficient funds: Requested: " + amount + ", Balance: " + balance);
-			throw new InsufficientFundsException(from);
+		// Credits to a hot account go to its balance stripes, so only the source account is locked.
+		boolean hotDestination = to.isHot();
+		long lockStart = System.nanoTime();
+		Account contended = hotDestination ? balanceLockPolicy.tryLock(from, null)
+				: balanceLockPolicy.tryLock(bigger, smaller);
+		if (contended != null) {
+			metrics.recordLockTimeout();
+			return contended == from ? TransferCode.SOURCE_BUSY : TransferCode.DESTINATION_BUSY;
 		}
+		long lockAcquired = System.nanoTime();
+		metrics.recordLockWait(lockAcquired - lockStart);
 
+		long journalPosition = 0;
+		boolean debited;
 		try {
-			from.decreaseBalance(amount);
-			to.increaseBalance(amount);
+			// The debit is a conditional compare-and-set so that it cannot race with lock-free withdrawals.
+			debited = from.withdraw(amount);
+			if (debited) {
+				try {
+					to.credit(amount);
+				} catch (RuntimeException e) {
+					from.deposit(amount);
+					log.error("Amount transfer failed, debit undone", e);
+					throw e;
+				}
 
-			// Logic to persist changes under an active transaction
-		} catch (Exception e) {
-			log.error("Amount transfer failed", e);
+				// Appended while both locks are held, so the journal orders transfers on an account as they applied.
+				// A transfer that is not journaled would be lost on replay, so it is undone rather than acknowledged.
+				if (journal != null) {
+					try {
+						journalPosition = journal.appendTransfer(from.getAccountId(), to.getAccountId(), amount);
+					} catch (RuntimeException e) {
+						to.deposit(-amount);
+						from.deposit(amount);
+						log.error("Amount transfer could not be journaled, undone", e);
+						throw e;
+					}
+				}
+			}
 		} finally {
-			bigger.unlockBalance();
-			smaller.unlockBalance();
+			if (hotDestination) {
+				from.unlockBalance();
+			} else {
+				bigger.unlockBalance();
+				smaller.unlockBalance();
+			}
+			metrics.recordLockHold(System.nanoTime() - lockAcquired);
+		}
+
+		if (!debited) {
+			if (log.isDebugEnabled()) {
+				log.debug("Insufficient funds: Requested: {}, Balance: {}", Money.toDecimal(amount), from.getBalance());
+			}
+			return TransferCode.INSUFFICIENT_FUNDS;
+		}
+
+		// Recorded once the locks are released.
+		ledger.recordTransfer(from.getAccountId(), to.getAccountId(), amount);
+
+		if (!hotDestination) {
+			hotAccountPolicy.onCredited(to);
+		}
+
+		awaitCommit(journalPosition);
+		notifyAboutTransfer(from, to, amount, transfer);
+		return TransferCode.OK;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		batchExecutor.shutdown();
+	}
+
+	private void awaitCommit(long journalPosition) {
+		if (journal != null && journalPosition > 0) {
+			journal.awaitCommit(journalPosition);
+		}
+	}
+
+	private Account findAccount(String accountId) {
+		Account account = accountsRepository.getAccount(accountId);
+		if (account == null) {
+			throw new AccountNotFoundException(Collections.singletonList(accountId));
+		}
+		return account;
+	}
+
+	private static void checkAmount(long amount) {
+		if (amount <= 0) {
+			throw new IllegalArgumentException(invalidAmount(amount));
+		}
+	}
+
+	private static String invalidAmount(long amount) {
+		return "Invalid amount " + Money.toDecimal(amount);
+	}
+
+	private Account lookup(String accountId) {
+		return accountId != null ? accountsRepository.getAccount(accountId) : null;
+	}
+
+	private TransferCode tryTransfer(Account from, Account to, Transfer transfer) {
+		if (from == null || to == null) {
+			metrics.recordAccountNotFound();
+			return TransferCode.notFound(from == null, to == null);
+		}
+		return tryTransferMinor(from, to, transfer.getAmountMinor(), transfer);
+	}
+
+	/**
+	 * @param from the source account, or null to look it up for an insufficient funds message
+	 */
+	private TransferResult resultOf(TransferCode code, Transfer transfer, Account from) {
+		if (code == TransferCode.OK) {
+			return TransferResult.completed();
+		}
+		String message;
+		switch (code) {
+			case INSUFFICIENT_FUNDS:
+				message = InsufficientFundsException.message(from != null ? from : lookup(transfer.getFromAccountId()));
+				break;
+			case SOURCE_BUSY:
+				message = LockTimeoutException.message(transfer.getFromAccountId());
+				break;
+			case DESTINATION_BUSY:
+				message = LockTimeoutException.message(transfer.getToAccountId());
+				break;
+			case SOURCE_RATE_LIMITED:
+				message = RateLimitExceededException.message(transfer.getFromAccountId());
+				break;
+			case DESTINATION_RATE_LIMITED:
+				message = RateLimitExceededException.message(transfer.getToAccountId());
+				break;
+			case NODE_RATE_LIMITED:
+				message = RateLimitExceededException.message(null);
+				break;
+			case INVALID_AMOUNT:
+				message = invalidAmount(transfer.getAmountMinor());
+				break;
+			case SAME_ACCOUNT:
+				message = SAME_ACCOUNT_MESSAGE;
+				break;
+			default:
+				message = AccountNotFoundException.message(notFoundIds(code, transfer));
+		}
+		return TransferResult.failed(code.getStatus(), message);
+	}
+
+	/**
+	 * The exception the throwing transfer methods report a failed outcome with.
+	 */
+	private RuntimeException toException(TransferCode code, Transfer transfer, Account from) {
+		switch (code.getStatus()) {
+			case ACCOUNT_NOT_FOUND:
+				return new AccountNotFoundException(notFoundIds(code, transfer));
+			case INSUFFICIENT_FUNDS:
+				return new InsufficientFundsException(from);
+			case BUSY:
+				return new LockTimeoutException(code == TransferCode.SOURCE_BUSY ? transfer.getFromAccountId()
+						: transfer.getToAccountId());
+			case RATE_LIMITED:
+				return new RateLimitExceededException(code == TransferCode.SOURCE_RATE_LIMITED ? transfer.getFromAccountId()
+						: code == TransferCode.DESTINATION_RATE_LIMITED ? transfer.getToAccountId() : null);
+			default:
+				return new IllegalArgumentException(resultOf(code, transfer, from).getMessage());
+		}
+	}
+
+	private static List<String> notFoundIds(TransferCode code, Transfer transfer) {
+		switch (code) {
+			case SOURCE_NOT_FOUND:
+				return Collections.singletonList(String.valueOf(transfer.getFromAccountId()));
+			case DESTINATION_NOT_FOUND:
+				return Collections.singletonList(String.valueOf(transfer.getToAccountId()));
+			default:
+				return Arrays.asList(String.valueOf(transfer.getFromAccountId()),
+						String.valueOf(transfer.getToAccountId()));
+		}
+	}
+
+	/**
+	 * Net amount per account, in descending id order, leaving out accounts whose postings cancel out.
+	 */
+	private static SortedMap<String, Long> netPostings(Transaction transaction) {
+		List<Posting> postings = transaction.getPostings();
+		if (postings == null || postings.size() < 2 || postings.size() > MAX_POSTINGS) {
+			throw new IllegalArgumentException("A transaction needs between 2 and " + MAX_POSTINGS + " postings");
+		}
+		SortedMap<String, Long> net = new TreeMap<>(Collections.reverseOrder());
+		long sum = 0;
+		for (Posting posting : postings) {
+			if (posting == null || posting.getAccountId() == null) {
+				throw new IllegalArgumentException("Posting without account id");
+			}
+			if (posting.getAmountMinor() == 0) {
+				throw new IllegalArgumentException("Invalid amount " + posting.getAmount());
+			}
+			try {
+				sum = Math.addExact(sum, posting.getAmountMinor());
+				net.put(posting.getAccountId(),
+						Math.addExact(net.getOrDefault(posting.getAccountId(), 0L), posting.getAmountMinor()));
+			} catch (ArithmeticException e) {
+				throw new IllegalArgumentException("Transaction amounts out of range");
+			}
+		}
+		if (sum != 0) {
+			throw new IllegalArgumentException("Postings must sum to zero, not " + Money.toDecimal(sum));
+		}
+		net.values().removeIf(amount -> amount == 0);
+		return net;
+	}
+
+	/**
+	 * Pairs the net debits with the net credits of a transaction as transfers, for the ledger and notifications.
+	 */
+	private static List<Transfer> toTransfers(String[] accountIds, long[] deltas) {
+		List<Transfer> transfers = new ArrayList<>();
+		int debit = nextWithSign(deltas, 0, -1);
+		int credit = nextWithSign(deltas, 0, 1);
+		long debitLeft = debit < deltas.length ? -deltas[debit] : 0;
+		long creditLeft = credit < deltas.length ? deltas[credit] : 0;
+		while (debit < deltas.length && credit < deltas.length) {
+			long amount = Math.min(debitLeft, creditLeft);
+			transfers.add(Transfer.ofMinor(accountIds[debit], accountIds[credit], amount));
+			if ((debitLeft -= amount) == 0 && (debit = nextWithSign(deltas, debit + 1, -1)) < deltas.length) {
+				debitLeft = -deltas[debit];
+			}
+			if ((creditLeft -= amount) == 0 && (credit = nextWithSign(deltas, credit + 1, 1)) < deltas.length) {
+				creditLeft = deltas[credit];
+			}
+		}
+		return transfers;
+	}
+
+	private static int nextWithSign(long[] deltas, int from, int sign) {
+		while (from < deltas.length && Long.signum(deltas[from]) != sign) {
+			from++;
+		}
+		return from;
+	}
+
+	private void notifyAboutTransfer(Account from, Account to, long amount, Transfer transfer) {
+		notificationService.notifyAboutTransfer(from, transfer != null ? transfer
+				: Transfer.ofMinor(from.getAccountId(), to.getAccountId(), amount));
+		log.debug("Amount transfer successful");
+	}
+
+	private void lookup(Map<String, Account> accounts, String accountId) {
+		if (accountId != null && !accounts.containsKey(accountId)) {
+			accounts.put(accountId, accountsRepository.getAccount(accountId));
+		}
+	}
+
+	private void runGroup(List<Integer> group, List<Transfer> transfers, Map<String, Account> accounts,
+						  TransferResult[] results) {
+		for (int index : group) {
+			results[index] = transferOne(transfers.get(index), accounts);
+		}
+	}
+
+	private TransferResult transferOne(Transfer transfer, Map<String, Account> accounts) {
+		Account from = transfer.getFromAccountId() != null ? accounts.get(transfer.getFromAccountId()) : null;
+		Account to = transfer.getToAccountId() != null ? accounts.get(transfer.getToAccountId()) : null;
+
+		return resultOf(tryTransfer(from, to, transfer), transfer, from);
+	}
+
+	/**
+	 * Runs the transfer, or a step of one, and reports the exceptions it may throw as a failed result.
+	 */
+	public static TransferResult toResult(Runnable transfer) {
+		try {
+			transfer.run();
+			return TransferResult.completed();
+		} catch (AccountNotFoundException e) {
+			return TransferResult.failed(TransferStatus.ACCOUNT_NOT_FOUND, e);
+		} catch (InsufficientFundsException e) {
+			return TransferResult.failed(TransferStatus.INSUFFICIENT_FUNDS, e);
+		} catch (IllegalArgumentException e) {
+			return TransferResult.failed(TransferStatus.REJECTED, e);
+		} catch (LockTimeoutException e) {
+			return TransferResult.failed(TransferStatus.BUSY, e);
+		} catch (RateLimitExceededException e) {
+			return TransferResult.failed(TransferStatus.RATE_LIMITED, e);
+		}
+	}
+
+	/**
+	 * Partitions the batch into groups of transfers connected through shared account ids (union-find over accounts).
+	 * Each group keeps the request order of its transfers.
+	 */
+	private static List<List<Integer>> groupByAccount(List<Transfer> transfers) {
+		Map<String, Integer> accountIndex = new HashMap<>();
+		int[] parent = new int[transfers.size() * 2];
+		for (int i = 0; i < parent.length; i++) {
+			parent[i] = i;
 		}
 
-		Transfer transfer = new Transfer(from.getAccountId(), to.getAccountId(), amount);
-		notificationService.notifyAboutTransfer(from, transfer.toString());
-		log.info("Amount transfer successful");
+		int[] transferRoot = new int[transfers.size()];
+		for (int i = 0; i < transfers.size(); i++) {
+			Transfer transfer = transfers.get(i);
+			int from = indexOf(accountIndex, transfer.getFromAccountId(), 2 * i);
+			int to = indexOf(accountIndex, transfer.getToAccountId(), 2 * i + 1);
+			union(parent, from, to);
+			transferRoot[i] = from;
+		}
+
+		Map<Integer, List<Integer>> groups = new HashMap<>();
+		List<List<Integer>> ordered = new ArrayList<>();
+		for (int i = 0; i < transferRoot.length; i++) {
+			int root = find(parent, transferRoot[i]);
+			List<Integer> group = groups.get(root);
+			if (group == null) {
+				group = new ArrayList<>();
+				groups.put(root, group);
+				ordered.add(group);
+			}
+			group.add(i);
+		}
+		return ordered;
+	}
+
+	private static int indexOf(Map<String, Integer> accountIndex, String accountId, int fallback) {
+		if (accountId == null) {
+			return fallback;
+		}
+		Integer index = accountIndex.putIfAbsent(accountId, fallback);
+		return index != null ? index : fallback;
+	}
+
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	private static void union(int[] parent, int a, int b) {
+		parent[find(parent, a)] = find(parent, b);
 	}
 }
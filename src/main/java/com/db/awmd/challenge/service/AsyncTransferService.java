@@ -0,0 +1,138 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.cluster.ShardRouter;
+import com.db.awmd.challenge.domain.AccountView;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Transfers that complete a future instead of blocking the caller. Everything that may wait, on balance locks, the
+ * journal, notification dispatch or another node, runs on a pool of {@code accounts.async.workers} threads, so a
+ * request thread returns as soon as the transfer is queued. Lock-free reads complete on the calling thread.
+ * <p>
+ * At most {@code accounts.async.queue-capacity} transfers wait for a worker; beyond that a transfer completes at once
+ * with {@link TransferStatus#UNAVAILABLE}. With {@code threads.virtual} every transfer gets a virtual thread of its own
+ * instead, and up to {@code workers + queue-capacity} of them may run at once.
+ */
+@Slf4j
+@Component
+public class AsyncTransferService {
+
+	private final AccountsService accountsService;
+	private final ExecutorService executor;
+	private final Semaphore permits;
+
+	private ShardRouter shardRouter;
+
+	public AsyncTransferService(AccountsService accountsService, int workers, int queueCapacity) {
+		this(accountsService, workers, queueCapacity, false);
+	}
+
+	@Autowired
+	public AsyncTransferService(AccountsService accountsService,
+								@Value("${accounts.async.workers:32}") int workers,
+								@Value("${accounts.async.queue-capacity:10000}") int queueCapacity,
+								@Value("${threads.virtual:false}") boolean virtualThreads) {
+		this.accountsService = accountsService;
+		if (virtualThreads) {
+			this.executor = VirtualThreads.newThreadPerTaskExecutor("transfer-async");
+			this.permits = new Semaphore(workers + queueCapacity);
+		} else {
+			this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(queueCapacity), new DaemonThreadFactory("transfer-async"));
+			this.permits = null;
+		}
+	}
+
+	/**
+	 * Sends transfers and reads to the node owning the accounts. Only registered when {@code cluster.enabled} is true.
+	 */
+	@Autowired(required = false)
+	public void setShardRouter(ShardRouter shardRouter) {
+		this.shardRouter = shardRouter;
+	}
+
+	/**
+	 * Completes with the result of the transfer, never exceptionally. An invalid or reused idempotency key is
+	 * reported as {@link TransferStatus#REJECTED}.
+	 */
+	public CompletableFuture<TransferResult> transfer(Transfer transfer, String idempotencyKey) {
+		return submit(() -> {
+			if (shardRouter != null) {
+				return shardRouter.transfer(transfer, idempotencyKey);
+			}
+			if (idempotencyKey == null) {
+				return accountsService.resultOf(accountsService.tryTransfer(transfer), transfer);
+			}
+			try {
+				return accountsService.transfer(transfer, idempotencyKey);
+			} catch (IllegalArgumentException e) {
+				return TransferResult.failed(TransferStatus.REJECTED, e);
+			}
+		}, () -> new TransferResult(TransferStatus.UNAVAILABLE, "Too many transfers in progress"));
+	}
+
+	public CompletableFuture<List<TransferResult>> transferAll(List<Transfer> transfers) {
+		return submit(() -> shardRouter != null ? shardRouter.transferAll(transfers)
+				: accountsService.transferAll(transfers), null);
+	}
+
+	/**
+	 * Completes with the account, or null if there is none. Reads of local accounts never wait.
+	 */
+	public CompletableFuture<AccountView> getAccount(String accountId) {
+		if (shardRouter != null) {
+			return submit(() -> shardRouter.getAccount(accountId), null);
+		}
+		return CompletableFuture.completedFuture(accountsService.getAccountView(accountId));
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * @param whenRejected result when the pool is saturated, or null to fail the future with the rejection
+	 */
+	private <T> CompletableFuture<T> submit(Supplier<T> task, Supplier<T> whenRejected) {
+		if (permits != null && !permits.tryAcquire()) {
+			return rejected(whenRejected, new RejectedExecutionException("Too many transfers in progress"));
+		}
+		try {
+			CompletableFuture<T> future = CompletableFuture.supplyAsync(task, executor);
+			return permits != null ? future.whenComplete((result, e) -> permits.release()) : future;
+		} catch (RejectedExecutionException e) {
+			if (permits != null) {
+				permits.release();
+			}
+			return rejected(whenRejected, e);
+		}
+	}
+
+	private static <T> CompletableFuture<T> rejected(Supplier<T> whenRejected, RejectedExecutionException e) {
+		log.warn("Async transfer pool saturated");
+		if (whenRejected != null) {
+			return CompletableFuture.completedFuture(whenRejected.get());
+		}
+		CompletableFuture<T> rejected = new CompletableFuture<>();
+		rejected.completeExceptionally(e);
+		return rejected;
+	}
+}
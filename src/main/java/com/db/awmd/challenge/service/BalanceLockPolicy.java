@@ -0,0 +1,124 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Acquires balance locks within a budget of {@code accounts.lock.timeout-millis}, so that a contended account, or one
+ * whose lock is never released, turns requests away instead of collecting every request thread.
+ * <p>
+ * Locks are taken in the order given. Only the first is waited for with the whole remaining budget. A later lock is
+ * waited for at most the current backoff while the earlier ones are held; if it is not free by then, the earlier ones
+ * are released and the attempt is repeated after a random pause of up to the backoff, which doubles from
+ * {@code accounts.lock.backoff-micros} on every attempt. A stuck account so never holds up the accounts it is
+ * transferred with.
+ */
+@Component
+public class BalanceLockPolicy {
+
+	private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private final long timeoutNanos;
+	private final long backoffNanos;
+
+	public BalanceLockPolicy(@Value("${accounts.lock.timeout-millis:1000}") long timeoutMillis,
+							 @Value("${accounts.lock.backoff-micros:100}") long backoffMicros) {
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		this.backoffNanos = Math.max(1, TimeUnit.MICROSECONDS.toNanos(backoffMicros));
+	}
+
+	/**
+	 * Locks both accounts, the first one first. The second may be null.
+	 *
+	 * @throws LockTimeoutException naming the account that could not be locked; no lock is held then
+	 */
+	public void lock(Account first, Account second) {
+		Account contended = tryLock(first, second);
+		if (contended != null) {
+			throw new LockTimeoutException(contended.getAccountId());
+		}
+	}
+
+	/**
+	 * Locks both accounts like {@link #lock}, but reports a timeout by returning the account that could not be locked
+	 * instead of throwing.
+	 *
+	 * @return null if both accounts are locked, else the account that stayed locked; no lock is held then
+	 */
+	public Account tryLock(Account first, Account second) {
+		long deadline = System.nanoTime() + timeoutNanos;
+		long backoff = backoffNanos;
+		while (true) {
+			Account contended = first;
+			if (first.tryLockBalance(deadline - System.nanoTime())) {
+				if (second == null) {
+					return null;
+				}
+				contended = second;
+				if (second.tryLockBalance(Math.min(backoff, deadline - System.nanoTime()))) {
+					return null;
+				}
+				first.unlockBalance();
+			}
+			if ((backoff = pause(deadline, backoff)) < 0) {
+				return contended;
+			}
+		}
+	}
+
+	/**
+	 * Locks the accounts whose {@code take} flag is set, in array order.
+	 *
+	 * @throws LockTimeoutException naming the account that could not be locked; no lock is held then
+	 */
+	public void lockAll(Account[] accounts, boolean[] take) {
+		long deadline = System.nanoTime() + timeoutNanos;
+		long backoff = backoffNanos;
+		while (true) {
+			int failed = -1;
+			boolean holding = false;
+			for (int i = 0; i < accounts.length && failed < 0; i++) {
+				if (!take[i]) {
+					continue;
+				}
+				long wait = deadline - System.nanoTime();
+				if (accounts[i].tryLockBalance(holding ? Math.min(backoff, wait) : wait)) {
+					holding = true;
+				} else {
+					failed = i;
+				}
+			}
+			if (failed < 0) {
+				return;
+			}
+			for (int i = failed - 1; i >= 0; i--) {
+				if (take[i]) {
+					accounts[i].unlockBalance();
+				}
+			}
+			if ((backoff = pause(deadline, backoff)) < 0) {
+				throw new LockTimeoutException(accounts[failed].getAccountId());
+			}
+		}
+	}
+
+	/**
+	 * Sleeps a random time of up to the backoff, unless the budget is spent.
+	 *
+	 * @return the next backoff, or -1 if the budget is spent
+	 */
+	private static long pause(long deadline, long backoff) {
+		long remaining = deadline - System.nanoTime();
+		if (remaining <= 0) {
+			return -1;
+		}
+		LockSupport.parkNanos(1 + ThreadLocalRandom.current().nextLong(Math.min(backoff, remaining)));
+		return Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+	}
+}
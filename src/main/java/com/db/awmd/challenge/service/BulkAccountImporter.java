@@ -0,0 +1,277 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.cluster.ShardRouter;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.ShardUnavailableException;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Creates accounts from a stream of JSON objects, either one JSON array or a sequence of root-level objects such as
+ * NDJSON. Records are parsed one at a time with the streaming parser and created in chunks of
+ * {@code accounts.import.chunk-size} on a worker pool; at most two chunks per worker are buffered, so memory use does
+ * not depend on the size of the input.
+ * <p>
+ * A record that is invalid or duplicates an existing account id is reported as a {@link Failure} and does not stop
+ * the import. Malformed JSON does, since the parser cannot resynchronize. Failures are passed to the caller's consumer
+ * on the calling thread, in the order chunks complete.
+ */
+@Slf4j
+@Component
+public class BulkAccountImporter {
+
+	private final AccountsService accountsService;
+	private final int chunkSize;
+	private final int maxPendingChunks;
+	private final ExecutorService executor;
+
+	private ShardRouter shardRouter;
+
+	@Autowired
+	public BulkAccountImporter(AccountsService accountsService,
+							   @Value("${accounts.import.chunk-size:1000}") int chunkSize,
+							   @Value("${accounts.import.workers:0}") int workers) {
+		if (workers <= 0) {
+			workers = Runtime.getRuntime().availableProcessors();
+		}
+		this.accountsService = accountsService;
+		this.chunkSize = chunkSize;
+		this.maxPendingChunks = 2 * workers;
+		this.executor = Executors.newFixedThreadPool(workers, new DaemonThreadFactory("account-import"));
+	}
+
+	/**
+	 * Creates each account on the node owning it. Only registered when {@code cluster.enabled} is true.
+	 */
+	@Autowired(required = false)
+	public void setShardRouter(ShardRouter shardRouter) {
+		this.shardRouter = shardRouter;
+	}
+
+	public Summary importAccounts(JsonParser parser, Consumer<Failure> failures) throws IOException {
+		Deque<Future<Chunk>> pending = new ArrayDeque<>();
+		long created = 0;
+		long failed = 0;
+
+		Chunk chunk = new Chunk(chunkSize);
+		long index = 0;
+		try {
+			JsonToken token = parser.nextToken();
+			boolean array = token == JsonToken.START_ARRAY;
+			if (array) {
+				token = parser.nextToken();
+			}
+			for (; token != null && !(array && token == JsonToken.END_ARRAY); token = parser.nextToken(), index++) {
+				int line = parser.getTokenLocation().getLineNr();
+				if (token != JsonToken.START_OBJECT) {
+					throw new JsonParseException(parser, "Expected an account object but found " + token);
+				}
+				Failure invalid = readRecord(parser, chunk, index, line);
+				if (invalid != null) {
+					failed++;
+					failures.accept(invalid);
+				}
+				if (chunk.size() == chunkSize) {
+					pending.add(executor.submit(chunk));
+					chunk = new Chunk(chunkSize);
+				}
+				while (!pending.isEmpty() && (pending.size() >= maxPendingChunks || pending.peek().isDone())) {
+					Chunk done = await(pending.poll());
+					created += done.created;
+					failed += report(done, failures);
+				}
+			}
+		} catch (JsonParseException e) {
+			failed++;
+			failures.accept(new Failure(index, e.getLocation().getLineNr(), null, "Malformed JSON: " +
+					e.getOriginalMessage()));
+		}
+
+		pending.add(executor.submit(chunk));
+		while (!pending.isEmpty()) {
+			Chunk done = await(pending.poll());
+			created += done.created;
+			failed += report(done, failures);
+		}
+		log.info("Imported {} accounts, {} failed", created, failed);
+		return new Summary(created, failed);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Reads the fields of one account object and adds it to the chunk, or returns why it cannot be created.
+	 */
+	private Failure readRecord(JsonParser parser, Chunk chunk, long index, int line) throws IOException {
+		String accountId = null;
+		BigDecimal balance = null;
+		String invalid = null;
+		for (JsonToken token = parser.nextToken(); token != JsonToken.END_OBJECT; token = parser.nextToken()) {
+			String field = parser.getCurrentName();
+			token = parser.nextToken();
+			if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+				// Skipped whole, so that the parser stays on this record.
+				parser.skipChildren();
+				if ("accountId".equals(field) || "balance".equals(field)) {
+					invalid = "Field " + field + " must not be " + (token == JsonToken.START_OBJECT ? "an object."
+							: "an array.");
+				}
+			} else if ("accountId".equals(field)) {
+				accountId = token == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+			} else if ("balance".equals(field)) {
+				if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+					balance = parser.getDecimalValue();
+				} else if (token == JsonToken.VALUE_STRING) {
+					try {
+						balance = new BigDecimal(parser.getText());
+					} catch (NumberFormatException e) {
+						invalid = "Balance " + parser.getText() + " is not a number";
+					}
+				}
+			}
+		}
+
+		if (invalid == null) {
+			invalid = validate(accountId, balance);
+		}
+		if (invalid != null) {
+			return new Failure(index, line, accountId, invalid);
+		}
+		try {
+			chunk.add(index, line, Account.ofMinor(accountId, Money.toMinor(balance)));
+			return null;
+		} catch (IllegalArgumentException e) {
+			return new Failure(index, line, accountId, e.getMessage());
+		}
+	}
+
+	private static String validate(String accountId, BigDecimal balance) {
+		if (accountId == null || accountId.isEmpty()) {
+			return "Account id is required.";
+		}
+		if (balance == null) {
+			return "Balance is required.";
+		}
+		if (balance.signum() < 0) {
+			return "Initial balance must be positive.";
+		}
+		return null;
+	}
+
+	private static long report(Chunk chunk, Consumer<Failure> failures) {
+		for (Failure failure : chunk.failures) {
+			failures.accept(failure);
+		}
+		return chunk.failures.size();
+	}
+
+	private static Chunk await(Future<Chunk> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while importing accounts", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Account import failed", e.getCause());
+		}
+	}
+
+	private final class Chunk implements Callable<Chunk> {
+		private final long[] indexes;
+		private final int[] lines;
+		private final Account[] accounts;
+		private int size;
+		private final List<Failure> failures = new ArrayList<>();
+		private long created;
+
+		private Chunk(int capacity) {
+			indexes = new long[capacity];
+			lines = new int[capacity];
+			accounts = new Account[capacity];
+		}
+
+		private int size() {
+			return size;
+		}
+
+		private void add(long index, int line, Account account) {
+			indexes[size] = index;
+			lines[size] = line;
+			accounts[size++] = account;
+		}
+
+		@Override
+		public Chunk call() {
+			for (int i = 0; i < size; i++) {
+				try {
+					if (shardRouter != null) {
+						shardRouter.createAccount(accounts[i]);
+					} else {
+						accountsService.createAccount(accounts[i]);
+					}
+					created++;
+				} catch (DuplicateAccountIdException | ShardUnavailableException | IllegalArgumentException
+						| IllegalStateException e) {
+					failures.add(new Failure(indexes[i], lines[i], accounts[i].getAccountId(), e.getMessage()));
+				}
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * A record that was not imported. {@code index} counts records from 0, {@code line} is the line it starts on.
+	 */
+	@Getter
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public static class Failure {
+		private final long index;
+		private final int line;
+		private final String accountId;
+		private final String error;
+
+		public Failure(long index, int line, String accountId, String error) {
+			this.index = index;
+			this.line = line;
+			this.accountId = accountId;
+			this.error = error;
+		}
+	}
+
+	@Getter
+	public static class Summary {
+		private final long created;
+		private final long failed;
+
+		public Summary(long created, long failed) {
+			this.created = created;
+			this.failed = failed;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides which accounts take striped credits, see {@link Account#promoteToHot()}. Accounts listed in
+ * {@code accounts.hot.ids} are promoted when created or at startup; any other account is promoted once its balance
+ * lock has been found taken {@code accounts.hot.auto-promote-contention} times while it was credited. Promotion is
+ * permanent for the lifetime of the account object.
+ */
+@Slf4j
+@Component
+public class HotAccountPolicy {
+
+	private final Set<String> accountIds;
+	private final int autoPromoteContention;
+
+	public HotAccountPolicy(@Value("${accounts.hot.ids:}") String[] accountIds,
+							@Value("${accounts.hot.auto-promote-contention:0}") int autoPromoteContention) {
+		this.accountIds = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(accountIds)));
+		this.autoPromoteContention = autoPromoteContention;
+	}
+
+	public Set<String> getAccountIds() {
+		return accountIds;
+	}
+
+	public void onCreated(Account account) {
+		if (accountIds.contains(account.getAccountId()) && account.promoteToHot()) {
+			log.info("Promoted configured account {} to striped credits", account.getAccountId());
+		}
+	}
+
+	public void onCredited(Account account) {
+		if (autoPromoteContention > 0 && account.getContendedLocks() >= autoPromoteContention && account.promoteToHot()) {
+			log.info("Promoted account {} to striped credits after {} contended lock acquisitions",
+					account.getAccountId(), account.getContendedLocks());
+		}
+	}
+}
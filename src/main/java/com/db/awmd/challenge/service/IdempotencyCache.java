@@ -0,0 +1,186 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the results of recent transfers by client-supplied idempotency key, so that a retried request gets the
+ * original result instead of moving the money again.
+ * <p>
+ * Keys are spread over segments, each an insertion-ordered map guarded by its own lock. A segment holds at most its
+ * share of {@code idempotency.max-entries}; inserting beyond that evicts the oldest entry, and entries older than
+ * {@code idempotency.ttl-seconds} are dropped from the head of the segment as it is used. With keys of up to
+ * {@value #MAX_KEY_LENGTH} characters an entry takes well under 1 KB, which bounds the memory of the cache.
+ * <p>
+ * The transfer runs outside the segment lock. A request arriving while the first one with the same key is still
+ * running waits for its result.
+ */
+@Slf4j
+@Component
+public class IdempotencyCache {
+
+	static final int MAX_KEY_LENGTH = 255;
+
+	private final Segment[] segments;
+	private final long ttlNanos;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+
+	public IdempotencyCache(@Value("${idempotency.max-entries:100000}") int maxEntries,
+							@Value("${idempotency.ttl-seconds:600}") long ttlSeconds,
+							@Value("${idempotency.segments:16}") int segmentCount) {
+		segments = new Segment[segmentCount];
+		int segmentCapacity = Math.max(1, maxEntries / segmentCount);
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment(segmentCapacity);
+		}
+		ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+	}
+
+	/**
+	 * Returns the result recorded for the key, or runs the transfer and records its result.
+	 *
+	 * @throws IllegalArgumentException if the key is too long or was used for a different transfer
+	 */
+	public TransferResult execute(String key, Transfer transfer, Supplier<TransferResult> action) {
+		if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+			throw new IllegalArgumentException("Idempotency key must have 1 to " + MAX_KEY_LENGTH + " characters");
+		}
+
+		Segment segment = segments[(key.hashCode() & Integer.MAX_VALUE) % segments.length];
+		Entry entry = new Entry(transfer, System.nanoTime());
+		Entry existing = segment.putIfAbsent(key, entry);
+		if (existing != null) {
+			if (!existing.matches(transfer)) {
+				throw new IllegalArgumentException("Idempotency key " + key + " was already used for another transfer");
+			}
+			hits.increment();
+			try {
+				return existing.result.join();
+			} catch (CompletionException e) {
+				// The first attempt failed without a result and was forgotten; try again.
+				return execute(key, transfer, action);
+			}
+		}
+
+		misses.increment();
+		try {
+			TransferResult result = action.get();
+			if (result.getStatus() == TransferStatus.BUSY || result.getStatus() == TransferStatus.RATE_LIMITED) {
+				// Nothing was applied, so a retry with the key must run the transfer again.
+				segment.remove(key, entry);
+			}
+			entry.result.complete(result);
+			return result;
+		} catch (RuntimeException e) {
+			segment.remove(key, entry);
+			entry.result.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getExpirations() {
+		return expirations.sum();
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	private static final class Entry {
+		private final String fromAccountId;
+		private final String toAccountId;
+		private final long amount;
+		private final long createdNanos;
+		private final CompletableFuture<TransferResult> result = new CompletableFuture<>();
+
+		private Entry(Transfer transfer, long createdNanos) {
+			this.fromAccountId = transfer.getFromAccountId();
+			this.toAccountId = transfer.getToAccountId();
+			this.amount = transfer.getAmountMinor();
+			this.createdNanos = createdNanos;
+		}
+
+		private boolean matches(Transfer transfer) {
+			return amount == transfer.getAmountMinor() && equal(fromAccountId, transfer.getFromAccountId())
+					&& equal(toAccountId, transfer.getToAccountId());
+		}
+
+		private static boolean equal(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+
+	private final class Segment {
+		private final int capacity;
+		private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+		private Segment(int capacity) {
+			this.capacity = capacity;
+		}
+
+		private synchronized Entry putIfAbsent(String key, Entry entry) {
+			expire(entry.createdNanos);
+			Entry existing = entries.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			entries.put(key, entry);
+			if (entries.size() > capacity) {
+				Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+				eldest.next();
+				eldest.remove();
+				evictions.increment();
+			}
+			return null;
+		}
+
+		private synchronized void remove(String key, Entry entry) {
+			entries.remove(key, entry);
+		}
+
+		private synchronized int size() {
+			return entries.size();
+		}
+
+		private void expire(long now) {
+			Iterator<Entry> iterator = entries.values().iterator();
+			while (iterator.hasNext() && now - iterator.next().createdNanos > ttlNanos) {
+				iterator.remove();
+				expirations.increment();
+			}
+		}
+	}
+}
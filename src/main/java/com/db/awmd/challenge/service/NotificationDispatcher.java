@@ -0,0 +1,263 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers notifications asynchronously on behalf of another {@link NotificationService}.
+ * <p>
+ * Callers only enqueue into a bounded queue. Worker threads drain it in batches of up to {@code maxBatchSize},
+ * group each batch by account and hand every group to {@link NotificationService#notifyAboutTransfers}. Transfer
+ * descriptions are formatted on the workers. When the queue is full the {@link OverflowPolicy} decides what happens.
+ * Notifications arriving after {@link #shutdown()} are dropped, since no worker may be left to deliver them. Every
+ * notification enqueued is eventually counted as delivered, dropped or failed.
+ */
+@Slf4j
+public class NotificationDispatcher implements NotificationService {
+
+	public enum OverflowPolicy {
+		/**
+		 * The caller waits for space in the queue.
+		 */
+		BLOCK,
+		/**
+		 * The oldest queued notification is discarded to make room.
+		 */
+		DROP_OLDEST,
+		/**
+		 * The notification goes to a spill queue of {@code spillCapacity}, drained once the main queue is empty. When
+		 * the spill queue is full too, the notification is dropped.
+		 */
+		SPILL
+	}
+
+	private static final long POLL_MILLIS = 100;
+
+	private final NotificationService delegate;
+	private final BlockingQueue<Notification> queue;
+	private final Queue<Notification> spill = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger spillDepth = new AtomicInteger();
+	private final int spillCapacity;
+	private final OverflowPolicy overflowPolicy;
+	private final int maxBatchSize;
+	private final Thread[] workers;
+	private volatile boolean running = true;
+	// Workers outlive running until every enqueue that saw it set has finished.
+	private volatile boolean draining = true;
+	private final AtomicInteger enqueuing = new AtomicInteger();
+
+	private final AtomicLong enqueued = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong spilled = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	public NotificationDispatcher(NotificationService delegate, int queueCapacity, int workerCount, int maxBatchSize,
+								  OverflowPolicy overflowPolicy, int spillCapacity) {
+		this.delegate = delegate;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.spillCapacity = spillCapacity;
+		this.overflowPolicy = overflowPolicy;
+		this.maxBatchSize = maxBatchSize;
+
+		DaemonThreadFactory threadFactory = new DaemonThreadFactory("notification-dispatcher");
+		this.workers = new Thread[workerCount];
+		for (int i = 0; i < workerCount; i++) {
+			workers[i] = threadFactory.newThread(this::drain);
+			workers[i].start();
+		}
+	}
+
+	@Override
+	public void notifyAboutTransfer(Account account, String transferDescription) {
+		enqueue(new Notification(account, null, transferDescription));
+	}
+
+	@Override
+	public void notifyAboutTransfer(Account account, Transfer transfer) {
+		enqueue(new Notification(account, transfer, null));
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public int getSpillDepth() {
+		return spillDepth.get();
+	}
+
+	public long getEnqueuedCount() {
+		return enqueued.get();
+	}
+
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	public long getSpilledCount() {
+		return spilled.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * Stops accepting notifications, then stops the workers once everything accepted has been delivered.
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		while (enqueuing.get() > 0) {
+			Thread.sleep(1);
+		}
+		draining = false;
+		for (Thread worker : workers) {
+			worker.join();
+		}
+	}
+
+	private void enqueue(Notification notification) {
+		enqueued.incrementAndGet();
+		// Registered before running is checked, so shutdown either waits for this notification or it is dropped here.
+		enqueuing.incrementAndGet();
+		try {
+			offer(notification);
+		} finally {
+			enqueuing.decrementAndGet();
+		}
+	}
+
+	private void offer(Notification notification) {
+		if (!running) {
+			dropped.incrementAndGet();
+			log.warn("Dropping notification for account {}, the dispatcher is shut down",
+					notification.account.getAccountId());
+			return;
+		}
+		switch (overflowPolicy) {
+			case BLOCK:
+				try {
+					// Waits in steps, so that a caller blocked on a full queue gives up once the workers stop.
+					while (!queue.offer(notification, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+						if (!running) {
+							dropped.incrementAndGet();
+							return;
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					dropped.incrementAndGet();
+				}
+				break;
+			case DROP_OLDEST:
+				while (!queue.offer(notification)) {
+					if (queue.poll() != null) {
+						dropped.incrementAndGet();
+					}
+				}
+				break;
+			case SPILL:
+				if (queue.offer(notification)) {
+					break;
+				}
+				if (spillDepth.incrementAndGet() > spillCapacity) {
+					spillDepth.decrementAndGet();
+					dropped.incrementAndGet();
+				} else {
+					spill.add(notification);
+					spilled.incrementAndGet();
+				}
+				break;
+		}
+	}
+
+	private void drain() {
+		List<Notification> batch = new ArrayList<>(maxBatchSize);
+		while (draining || !queue.isEmpty() || !spill.isEmpty()) {
+			Notification first;
+			try {
+				first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (first == null && (first = pollSpill()) == null) {
+				continue;
+			}
+
+			batch.add(first);
+			queue.drainTo(batch, maxBatchSize - 1);
+			Notification spilledNotification;
+			while (batch.size() < maxBatchSize && (spilledNotification = pollSpill()) != null) {
+				batch.add(spilledNotification);
+			}
+
+			deliver(batch);
+			batch.clear();
+		}
+	}
+
+	private Notification pollSpill() {
+		Notification notification = spill.poll();
+		if (notification != null) {
+			spillDepth.decrementAndGet();
+		}
+		return notification;
+	}
+
+	private void deliver(List<Notification> batch) {
+		Map<String, List<Notification>> byAccount = new LinkedHashMap<>();
+		for (Notification notification : batch) {
+			byAccount.computeIfAbsent(notification.account.getAccountId(), id -> new ArrayList<>()).add(notification);
+		}
+
+		for (List<Notification> notifications : byAccount.values()) {
+			List<String> descriptions = new ArrayList<>(notifications.size());
+			for (Notification notification : notifications) {
+				descriptions.add(notification.describe());
+			}
+
+			try {
+				delegate.notifyAboutTransfers(notifications.get(0).account, descriptions);
+				delivered.addAndGet(descriptions.size());
+			} catch (RuntimeException e) {
+				failed.addAndGet(descriptions.size());
+				log.error("Notification delivery failed for account " + notifications.get(0).account.getAccountId(), e);
+			}
+		}
+	}
+
+	private static class Notification {
+		private final Account account;
+		private final Transfer transfer;
+		private final String description;
+
+		Notification(Account account, Transfer transfer, String description) {
+			this.account = account;
+			this.transfer = transfer;
+			this.description = description;
+		}
+
+		String describe() {
+			return description != null ? description : transfer.toString();
+		}
+	}
+}
@@ -1,8 +1,28 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+
+import java.util.List;
 
 public interface NotificationService {
 
   void notifyAboutTransfer(Account account, String transferDescription);
+
+  /**
+   * Variant that leaves formatting the description to the implementation, so it can happen off the request thread.
+   */
+  default void notifyAboutTransfer(Account account, Transfer transfer) {
+    notifyAboutTransfer(account, transfer.toString());
+  }
+
+  /**
+   * Delivers several notifications for the same account. Implementations able to send them as one message should
+   * override this.
+   */
+  default void notifyAboutTransfers(Account account, List<String> transferDescriptions) {
+    for (String transferDescription : transferDescriptions) {
+      notifyAboutTransfer(account, transferDescription);
+    }
+  }
 }
@@ -0,0 +1,222 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transfer engine in which accounts are partitioned into shards by id hash and every shard is owned by exactly one
+ * thread. Only the owning thread mutates the balances of its accounts, so no balance lock is taken.
+ * <p>
+ * A transfer is first submitted to the shard owning the source account, which debits it. If the destination account
+ * lives on another shard, the credit is handed off to that shard's queue. Hand-offs are never rejected or dropped,
+ * and until the credit is applied the transfer is counted as in flight, so a debited amount is always either in
+ * an account or in flight. Only external submissions are bounded, by {@code accounts.transfer.queue-capacity} per
+ * shard; submitting threads block while a shard is full.
+ * <p>
+ * Shutdown drains in two phases: it stops accepting transfers and waits until every accepted transfer has completed
+ * and no credit is in flight, and only then stops the shard threads.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "accounts.transfer.mode", havingValue = "sharded")
+public class ShardedTransferEngine {
+
+	private static final long POLL_MILLIS = 100;
+
+	private final Shard[] shards;
+	private final AtomicLong inFlightCredits = new AtomicLong();
+	// Transfers accepted and not yet completed, registered before accepting is checked.
+	private final AtomicLong pendingTransfers = new AtomicLong();
+	private volatile boolean accepting = true;
+
+	public ShardedTransferEngine(@Value("${accounts.transfer.shards:0}") int shardCount,
+								 @Value("${accounts.transfer.queue-capacity:1024}") int queueCapacity) {
+		if (shardCount <= 0) {
+			shardCount = Runtime.getRuntime().availableProcessors();
+		}
+
+		shards = new Shard[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = new Shard(i, queueCapacity);
+		}
+		log.info("Started sharded transfer engine with {} shards", shardCount);
+	}
+
+	/**
+	 * Transfers the amount and waits until both the debit and the credit have been applied.
+	 *
+	 * @throws InsufficientFundsException if the source balance does not cover the amount
+	 */
+	public void transfer(Account from, Account to, long amount) {
+		if (!tryTransfer(from, to, amount)) {
+			throw new InsufficientFundsException(from);
+		}
+	}
+
+	/**
+	 * Transfers the amount like {@link #transfer}, but reports insufficient funds by returning false.
+	 */
+	public boolean tryTransfer(Account from, Account to, long amount) {
+		pendingTransfers.incrementAndGet();
+		try {
+			// Checked after registering, so shutdown either sees this transfer pending or it is refused here.
+			if (!accepting) {
+				throw new IllegalStateException("Transfer engine is shut down");
+			}
+
+			CompletableFuture<Boolean> result = new CompletableFuture<>();
+			shardOf(from).submit(() -> {
+				try {
+					debit(from, to, amount, result);
+				} catch (RuntimeException e) {
+					result.completeExceptionally(e);
+					throw e;
+				}
+			});
+			return result.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		} finally {
+			pendingTransfers.decrementAndGet();
+		}
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	public long getInFlightCredits() {
+		return inFlightCredits.get();
+	}
+
+	/**
+	 * Transfers and hand-offs waiting in the shard queues.
+	 */
+	public int getQueuedTasks() {
+		int queued = 0;
+		for (Shard shard : shards) {
+			queued += shard.queue.size();
+		}
+		return queued;
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		accepting = false;
+		while (pendingTransfers.get() > 0 || inFlightCredits.get() > 0) {
+			Thread.sleep(1);
+		}
+		for (Shard shard : shards) {
+			shard.running = false;
+		}
+		for (Shard shard : shards) {
+			shard.thread.join();
+		}
+		log.info("Stopped sharded transfer engine");
+	}
+
+	private Shard shardOf(Account account) {
+		return shards[(account.getAccountId().hashCode() & Integer.MAX_VALUE) % shards.length];
+	}
+
+	private void debit(Account from, Account to, long amount, CompletableFuture<Boolean> result) {
+		if (!from.withdraw(amount)) {
+			result.complete(false);
+			return;
+		}
+
+		Shard target = shardOf(to);
+		if (target == shardOf(from)) {
+			credit(to, amount, result);
+			return;
+		}
+
+		inFlightCredits.incrementAndGet();
+		target.handOff(() -> {
+			try {
+				credit(to, amount, result);
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+				throw e;
+			} finally {
+				inFlightCredits.decrementAndGet();
+			}
+		});
+	}
+
+	private void credit(Account to, long amount, CompletableFuture<Boolean> result) {
+		to.deposit(amount);
+		result.complete(true);
+	}
+
+	private class Shard implements Runnable {
+		private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+		private final Semaphore capacity;
+		private final Thread thread;
+		private volatile boolean running = true;
+
+		Shard(int index, int queueCapacity) {
+			this.capacity = new Semaphore(queueCapacity);
+			this.thread = new Thread(this, "transfer-shard-" + index);
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+
+		void submit(Runnable task) {
+			try {
+				capacity.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for shard capacity", e);
+			}
+			queue.add(() -> {
+				try {
+					task.run();
+				} finally {
+					capacity.release();
+				}
+			});
+		}
+
+		void handOff(Runnable task) {
+			queue.add(task);
+		}
+
+		@Override
+		public void run() {
+			// Stopped only once shutdown has seen every transfer complete, the queue is drained just in case.
+			while (running || !queue.isEmpty()) {
+				Runnable task;
+				try {
+					task = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					continue;
+				}
+
+				if (task != null) {
+					try {
+						task.run();
+					} catch (RuntimeException e) {
+						log.error("Shard task failed", e);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.LedgerEntry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * The last {@code accounts.ledger.retention} transfers of every account, newest first on read. Each account's ledger
+ * is a ring of parallel primitive arrays which starts small and doubles until it holds the retention, so appending
+ * allocates nothing once an account's ring is full grown. Entries are appended after the balance locks are released,
+ * so two transfers completing at the same time on one account may be listed in the opposite order to the one they
+ * were applied in.
+ * <p>
+ * Ledgers are kept in memory only and are not restored from the journal or a snapshot.
+ */
+@Component
+public class TransferLedger {
+
+	/**
+	 * Cursor reading from the newest entry.
+	 */
+	public static final long NEWEST = Long.MAX_VALUE;
+
+	/**
+	 * Cursor returned when no older entries are retained.
+	 */
+	public static final long END_OF_LEDGER = -1;
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	private final int retention;
+	private final ConcurrentHashMap<String, AccountLedger> ledgers = new ConcurrentHashMap<>();
+
+	public TransferLedger(@Value("${accounts.ledger.retention:64}") int retention) {
+		if (retention < 0) {
+			throw new IllegalArgumentException("Ledger retention must not be negative");
+		}
+		// Rounded up to a power of two, so that a ring slot is an index mask.
+		this.retention = retention <= 1 ? retention : Integer.highestOneBit(retention - 1) << 1;
+	}
+
+	public int getRetention() {
+		return retention;
+	}
+
+	/**
+	 * Records a transfer applied between two accounts, as a debit of the source and a credit of the destination.
+	 */
+	public void recordTransfer(String fromAccountId, String toAccountId, long amount) {
+		if (retention == 0) {
+			return;
+		}
+		long timestamp = System.currentTimeMillis();
+		ledger(fromAccountId).append(timestamp, toAccountId, -amount);
+		ledger(toAccountId).append(timestamp, fromAccountId, amount);
+	}
+
+	/**
+	 * Records one side of a transfer whose other account is owned by another node.
+	 *
+	 * @param amount negative for a debit, positive for a credit
+	 */
+	public void recordOneSide(String accountId, String counterpartyAccountId, long amount) {
+		if (retention != 0) {
+			ledger(accountId).append(System.currentTimeMillis(), counterpartyAccountId, amount);
+		}
+	}
+
+	/**
+	 * Passes up to {@code limit} entries of the account older than {@code cursor} to {@code action}, newest first, and
+	 * returns the cursor of the next page or {@link #END_OF_LEDGER}. Pass {@link #NEWEST} to start with the newest
+	 * entry.
+	 */
+	public long read(String accountId, long cursor, int limit, Consumer<LedgerEntry> action) {
+		AccountLedger ledger = ledgers.get(accountId);
+		return ledger != null ? ledger.read(cursor, limit, action) : END_OF_LEDGER;
+	}
+
+	public void clear() {
+		ledgers.clear();
+	}
+
+	private AccountLedger ledger(String accountId) {
+		// A plain get first: computeIfAbsent would allocate its capturing lambda on every call.
+		AccountLedger ledger = ledgers.get(accountId);
+		return ledger != null ? ledger : ledgers.computeIfAbsent(accountId, id -> new AccountLedger(retention));
+	}
+
+	/**
+	 * Ring of one account's entries. Entry {@code n} (counted from 1) is kept in slot {@code (n - 1) & mask} until it is
+	 * overwritten by entry {@code n + capacity}. The arrays only grow before the ring wraps, so growing never moves
+	 * an entry to another slot.
+	 */
+	static final class AccountLedger {
+		private final int retention;
+		private long[] timestamps;
+		private long[] amounts;
+		private String[] counterparties;
+		private long appended;
+
+		AccountLedger(int retention) {
+			this.retention = retention;
+			int capacity = Math.min(INITIAL_CAPACITY, retention);
+			this.timestamps = new long[capacity];
+			this.amounts = new long[capacity];
+			this.counterparties = new String[capacity];
+		}
+
+		synchronized void append(long timestamp, String counterpartyAccountId, long amount) {
+			if (appended == amounts.length && amounts.length < retention) {
+				int capacity = Math.min(amounts.length * 2, retention);
+				timestamps = Arrays.copyOf(timestamps, capacity);
+				amounts = Arrays.copyOf(amounts, capacity);
+				counterparties = Arrays.copyOf(counterparties, capacity);
+			}
+			int slot = (int) appended & (amounts.length - 1);
+			timestamps[slot] = timestamp;
+			amounts[slot] = amount;
+			counterparties[slot] = counterpartyAccountId;
+			appended++;
+		}
+
+		synchronized long read(long cursor, int limit, Consumer<LedgerEntry> action) {
+			long oldest = Math.max(appended - amounts.length + 1, 1);
+			long sequence = Math.min(cursor - 1, appended);
+			for (int read = 0; sequence >= oldest && read < limit; sequence--, read++) {
+				int slot = (int) (sequence - 1) & (amounts.length - 1);
+				action.accept(new LedgerEntry(sequence, timestamps[slot], counterparties[slot], amounts[slot]));
+			}
+			return sequence >= oldest ? sequence + 1 : END_OF_LEDGER;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.TransferCode;
+import com.db.awmd.challenge.exception.RateLimitExceededException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Admission control in front of transfers: token buckets per account, for the source and the destination, and one for
+ * the whole node, refilling at {@code accounts.rate-limit.per-account} and {@code accounts.rate-limit.global}
+ * transfers per second and holding up to {@code per-account-burst} and {@code global-burst} tokens. A rate of 0
+ * disables that limit.
+ * <p>
+ * A bucket is a single long, the time at which it will be full again (the generic cell rate algorithm), so taking a
+ * token is one compare-and-set and an idle bucket needs no refilling or eviction. Account buckets live in a fixed
+ * table of {@code accounts.rate-limit.slots} longs, rounded up to a power of two, indexed by account id hash;
+ * accounts sharing a slot share its rate, which a table well above the number of concurrently busy accounts keeps
+ * rare. Memory does not grow with the number of accounts.
+ */
+@Component
+public class TransferRateLimiter {
+
+	private final long accountInterval;
+	private final long accountTolerance;
+	private final long globalInterval;
+	private final long globalTolerance;
+
+	private final AtomicLongArray accountBuckets;
+	private final AtomicLongArray globalBucket = new AtomicLongArray(1);
+
+	/**
+	 * Times are taken relative to construction, so that an untouched bucket, holding 0, is full.
+	 */
+	private final long origin = System.nanoTime();
+
+	public TransferRateLimiter(@Value("${accounts.rate-limit.per-account:0}") double perAccountRate,
+							   @Value("${accounts.rate-limit.per-account-burst:100}") int perAccountBurst,
+							   @Value("${accounts.rate-limit.global:0}") double globalRate,
+							   @Value("${accounts.rate-limit.global-burst:10000}") int globalBurst,
+							   @Value("${accounts.rate-limit.slots:65536}") int slots) {
+		this.accountInterval = interval(perAccountRate);
+		this.accountTolerance = accountInterval * Math.max(1, perAccountBurst);
+		this.globalInterval = interval(globalRate);
+		this.globalTolerance = globalInterval * Math.max(1, globalBurst);
+		int slotCount = slots <= 1 ? 1 : Integer.highestOneBit(slots - 1) << 1;
+		this.accountBuckets = new AtomicLongArray(accountInterval > 0 ? slotCount : 0);
+	}
+
+	public boolean isEnabled() {
+		return accountInterval > 0 || globalInterval > 0;
+	}
+
+	/**
+	 * Takes a token from the buckets of both accounts and from the global bucket, or from none of them.
+	 *
+	 * @throws RateLimitExceededException naming the account whose bucket was empty, or none for the global bucket
+	 */
+	public void admit(String fromAccountId, String toAccountId) {
+		TransferCode code = tryAdmit(fromAccountId, toAccountId);
+		if (code != TransferCode.OK) {
+			throw new RateLimitExceededException(code == TransferCode.SOURCE_RATE_LIMITED ? fromAccountId
+					: code == TransferCode.DESTINATION_RATE_LIMITED ? toAccountId : null);
+		}
+	}
+
+	/**
+	 * Takes the tokens like {@link #admit}, but reports a rejection as its code instead of throwing.
+	 *
+	 * @return {@link TransferCode#OK} if the transfer is admitted, else the bucket that was empty
+	 */
+	public TransferCode tryAdmit(String fromAccountId, String toAccountId) {
+		if (!isEnabled()) {
+			return TransferCode.OK;
+		}
+		long now = System.nanoTime() - origin;
+		int fromSlot = -1;
+		int toSlot = -1;
+		if (accountInterval > 0) {
+			fromSlot = slot(fromAccountId);
+			if (!take(accountBuckets, fromSlot, now, accountInterval, accountTolerance)) {
+				return TransferCode.SOURCE_RATE_LIMITED;
+			}
+			toSlot = slot(toAccountId);
+			if (toSlot != fromSlot && !take(accountBuckets, toSlot, now, accountInterval, accountTolerance)) {
+				accountBuckets.addAndGet(fromSlot, -accountInterval);
+				return TransferCode.DESTINATION_RATE_LIMITED;
+			}
+		}
+		if (globalInterval > 0 && !take(globalBucket, 0, now, globalInterval, globalTolerance)) {
+			if (fromSlot >= 0) {
+				accountBuckets.addAndGet(fromSlot, -accountInterval);
+				if (toSlot != fromSlot) {
+					accountBuckets.addAndGet(toSlot, -accountInterval);
+				}
+			}
+			return TransferCode.NODE_RATE_LIMITED;
+		}
+		return TransferCode.OK;
+	}
+
+	private int slot(String accountId) {
+		int h = accountId.hashCode();
+		return (h ^ (h >>> 16)) & (accountBuckets.length() - 1);
+	}
+
+	/**
+	 * Moves the time the bucket is full again one interval further, unless that is more than the tolerance ahead.
+	 */
+	private static boolean take(AtomicLongArray buckets, int slot, long now, long interval, long tolerance) {
+		while (true) {
+			long full = buckets.get(slot);
+			long next = Math.max(full, now) + interval;
+			if (next - now > tolerance) {
+				return false;
+			}
+			if (buckets.compareAndSet(slot, full, next)) {
+				return true;
+			}
+		}
+	}
+
+	private static long interval(double rate) {
+		return rate > 0 ? Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate)) : 0;
+	}
+}
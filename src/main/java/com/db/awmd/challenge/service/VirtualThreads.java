@@ -0,0 +1,84 @@
+package com.db.awmd.challenge.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads when the JVM has them (Java 21 and later), looked up reflectively because the code base targets Java
+ * 8. On older JVMs the factories fall back to daemon platform threads.
+ * <p>
+ * A virtual thread blocked in a {@link java.util.concurrent.locks.Lock} unmounts from its carrier, while one blocked
+ * inside a {@code synchronized} block keeps the carrier pinned until Java 24. Code that may block while holding a lock,
+ * such as {@link com.db.awmd.challenge.domain.Account#lockBalance()} or waiting for a journal commit, therefore uses
+ * {@code ReentrantLock} and conditions rather than monitors.
+ */
+@Slf4j
+public final class VirtualThreads {
+
+	private static final Method OF_VIRTUAL = method(Thread.class, "ofVirtual");
+	private static final Method NAME = OF_VIRTUAL != null ? method(builderClass(), "name", String.class, long.class) : null;
+	private static final Method FACTORY = OF_VIRTUAL != null ? method(builderClass(), "factory") : null;
+	private static final Method THREAD_PER_TASK = method(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+
+	private VirtualThreads() {
+	}
+
+	public static boolean isAvailable() {
+		return OF_VIRTUAL != null && NAME != null && FACTORY != null && THREAD_PER_TASK != null;
+	}
+
+	/**
+	 * Factory for virtual threads named {@code prefix-1}, {@code prefix-2}, and so on, or for daemon platform threads
+	 * if virtual threads are not available.
+	 */
+	public static ThreadFactory factory(String prefix) {
+		if (!isAvailable()) {
+			return new DaemonThreadFactory(prefix);
+		}
+		try {
+			Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix + "-", 1L);
+			return (ThreadFactory) FACTORY.invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Cannot create virtual thread factory", e);
+		}
+	}
+
+	/**
+	 * Executor starting a new virtual thread per task, or a cached pool of daemon platform threads if virtual threads
+	 * are not available.
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+		if (!isAvailable()) {
+			log.warn("Virtual threads need Java 21 or later, {} runs on platform threads", prefix);
+			return Executors.newCachedThreadPool(new DaemonThreadFactory(prefix));
+		}
+		try {
+			return (ExecutorService) THREAD_PER_TASK.invoke(null, factory(prefix));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Cannot create virtual thread executor", e);
+		}
+	}
+
+	private static Class<?> builderClass() {
+		try {
+			return Class.forName("java.lang.Thread$Builder");
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	private static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+		if (type == null) {
+			return null;
+		}
+		try {
+			return type.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.db.awmd.challenge.tcp;
+
+import com.db.awmd.challenge.domain.TransferStatus;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format of the binary TCP ingress, see {@link TcpTransferServer}. All integers are big-endian; strings are an
+ * unsigned {@code short} byte count followed by that many UTF-8 bytes. Amounts and balances are in minor units, see
+ * {@link com.db.awmd.challenge.domain.Money}.
+ * <p>
+ * Every message is a frame: an {@code int} length counting the bytes after it, then the body. A client may pipeline
+ * any number of requests on one connection; responses come back in request order and echo the request id.
+ *
+ * <pre>
+ * Request body:
+ *   byte   type            1 = TRANSFER, 2 = BALANCE
+ *   long   requestId       chosen by the client, echoed in the response
+ *   TRANSFER:
+ *     string fromAccountId
+ *     string toAccountId
+ *     long   amount        minor units
+ *   BALANCE:
+ *     string accountId
+ *
+ * Response body:
+ *   byte   type            as in the request
+ *   long   requestId       as in the request
+ *   byte   status          see below
+ *   long   balance         BALANCE with status OK: the balance in minor units, else 0
+ *   long   version         BALANCE with status OK: the account version (the REST ETag), else 0
+ *   string message         empty for OK, else the message the REST API sends as response body
+ * </pre>
+ *
+ * Status codes and their REST equivalents: {@code 0} OK (200), {@code 1} ACCOUNT_NOT_FOUND (400), {@code 2}
+ * INSUFFICIENT_FUNDS (400), {@code 3} REJECTED (400, invalid amount or same account), {@code 4} UNAVAILABLE (503),
+ * {@code 5} MALFORMED (400, the request could not be decoded), {@code 6} BUSY (429, an account stayed locked past the
+ * lock budget; retry later), {@code 7} RATE_LIMITED (429, an account or the node exceeded its transfer rate; retry
+ * later). A frame longer than {@value #MAX_FRAME} bytes is
+ * answered MALFORMED and the connection is closed, since the stream cannot be resynchronized.
+ */
+public final class BinaryProtocol {
+
+	public static final byte TRANSFER = 1;
+	public static final byte BALANCE = 2;
+
+	public static final byte STATUS_OK = 0;
+	public static final byte STATUS_ACCOUNT_NOT_FOUND = 1;
+	public static final byte STATUS_INSUFFICIENT_FUNDS = 2;
+	public static final byte STATUS_REJECTED = 3;
+	public static final byte STATUS_UNAVAILABLE = 4;
+	public static final byte STATUS_MALFORMED = 5;
+	public static final byte STATUS_BUSY = 6;
+	public static final byte STATUS_RATE_LIMITED = 7;
+
+	/**
+	 * Largest request body accepted; leaves room for account ids of up to 500 bytes each.
+	 */
+	public static final int MAX_FRAME = 1024;
+
+	/**
+	 * Longest message sent in a response; longer ones are cut.
+	 */
+	static final int MAX_MESSAGE = 512;
+
+	/**
+	 * Upper bound of an encoded response, frame length included.
+	 */
+	static final int MAX_RESPONSE = 4 + 1 + 8 + 1 + 8 + 8 + 2 + MAX_MESSAGE * 3;
+
+	private BinaryProtocol() {
+	}
+
+	public static byte toStatus(TransferStatus status) {
+		switch (status) {
+			case COMPLETED:
+				return STATUS_OK;
+			case ACCOUNT_NOT_FOUND:
+				return STATUS_ACCOUNT_NOT_FOUND;
+			case INSUFFICIENT_FUNDS:
+				return STATUS_INSUFFICIENT_FUNDS;
+			case UNAVAILABLE:
+				return STATUS_UNAVAILABLE;
+			case BUSY:
+				return STATUS_BUSY;
+			case RATE_LIMITED:
+				return STATUS_RATE_LIMITED;
+			default:
+				return STATUS_REJECTED;
+		}
+	}
+
+	/**
+	 * Appends a string at the buffer's position.
+	 */
+	public static void putString(ByteBuffer buffer, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		buffer.putShort((short) bytes.length).put(bytes);
+	}
+
+	/**
+	 * Reads a string at the buffer's position.
+	 */
+	public static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xffff];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,402 @@
+package com.db.awmd.challenge.tcp;
+
+import com.db.awmd.challenge.cluster.ShardRouter;
+import com.db.awmd.challenge.domain.AccountView;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.ShardUnavailableException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.DaemonThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.db.awmd.challenge.tcp.BinaryProtocol.BALANCE;
+import static com.db.awmd.challenge.tcp.BinaryProtocol.MAX_FRAME;
+import static com.db.awmd.challenge.tcp.BinaryProtocol.MAX_MESSAGE;
+import static com.db.awmd.challenge.tcp.BinaryProtocol.MAX_RESPONSE;
+import static com.db.awmd.challenge.tcp.BinaryProtocol.STATUS_ACCOUNT_NOT_FOUND;
+import static com.db.awmd.challenge.tcp.BinaryProtocol.STATUS_MALFORMED;
+import static com.db.awmd.challenge.tcp.BinaryProtocol.STATUS_OK;
+import static com.db.awmd.challenge.tcp.BinaryProtocol.STATUS_UNAVAILABLE;
+import static com.db.awmd.challenge.tcp.BinaryProtocol.TRANSFER;
+
+/**
+ * Transfers and balance queries over plain TCP in the fixed binary layout of {@link BinaryProtocol}, next to the HTTP
+ * API and without its per-request parsing and object mapping. Only registered when {@code tcp.enabled} is true.
+ * <p>
+ * One acceptor thread hands connections round-robin to {@code tcp.io-threads} selector loops. A loop reads into a
+ * direct buffer per connection, decodes requests in place and calls {@link AccountsService} on its own thread, so a
+ * transfer is acknowledged without a thread hand-off; responses are collected in a second direct buffer and written
+ * once per read. A client that does not read its responses stops being read from until it does. Since a loop runs
+ * transfers inline, a transfer waiting for a balance lock or a journal commit delays the other connections of the
+ * same loop; clients sharing hot accounts should be spread over several connections.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "tcp.enabled", havingValue = "true")
+public class TcpTransferServer implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	static final String MALFORMED_MESSAGE = "Malformed request";
+	static final String UNAVAILABLE_MESSAGE = "Unavailable";
+
+	private final AccountsService accountsService;
+	private final InetSocketAddress address;
+	private final IoLoop[] loops;
+
+	private ShardRouter shardRouter;
+	private ServerSocketChannel serverChannel;
+	private Thread acceptor;
+	private volatile boolean running;
+
+	@Autowired
+	public TcpTransferServer(AccountsService accountsService,
+							 @Value("${tcp.host:0.0.0.0}") String host,
+							 @Value("${tcp.port:18090}") int port,
+							 @Value("${tcp.io-threads:0}") int ioThreads) {
+		this.accountsService = accountsService;
+		this.address = new InetSocketAddress(host, port);
+		this.loops = new IoLoop[ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors()];
+	}
+
+	/**
+	 * Sends transfers and reads to the node owning the accounts. Only registered when {@code cluster.enabled} is true.
+	 */
+	@Autowired(required = false)
+	public void setShardRouter(ShardRouter shardRouter) {
+		this.shardRouter = shardRouter;
+	}
+
+	@PostConstruct
+	public void start() throws IOException {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(address, 1024);
+		running = true;
+		DaemonThreadFactory threads = new DaemonThreadFactory("tcp-io");
+		for (int i = 0; i < loops.length; i++) {
+			loops[i] = new IoLoop(Selector.open());
+			loops[i].thread = threads.newThread(loops[i]);
+			loops[i].thread.start();
+		}
+		acceptor = new DaemonThreadFactory("tcp-accept").newThread(this::accept);
+		acceptor.start();
+		log.info("Accepting binary transfer requests on port {} with {} I/O threads", getPort(), loops.length);
+	}
+
+	/**
+	 * The port listened on, which differs from {@code tcp.port} when that is 0.
+	 */
+	public int getPort() throws IOException {
+		return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+	}
+
+	@PreDestroy
+	@Override
+	public void close() throws IOException {
+		running = false;
+		serverChannel.close();
+		for (IoLoop loop : loops) {
+			loop.selector.wakeup();
+		}
+		try {
+			acceptor.join();
+			for (IoLoop loop : loops) {
+				loop.thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void accept() {
+		int next = 0;
+		while (running) {
+			try {
+				SocketChannel channel = serverChannel.accept();
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				loops[next++ % loops.length].register(channel);
+			} catch (ClosedChannelException e) {
+				break;
+			} catch (IOException e) {
+				log.warn("Cannot accept connection: {}", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Decodes one request frame, whose body spans {@code [start, end)} of the buffer, and appends its response.
+	 */
+	private void handle(Connection connection, ByteBuffer in, int start, int end) {
+		ByteBuffer out = connection.out;
+		if (end - start < 9) {
+			respond(out, (byte) 0, 0, STATUS_MALFORMED, 0, 0, "Request too short");
+			return;
+		}
+		byte type = in.get(start);
+		long requestId = in.getLong(start + 1);
+		int position = start + 9;
+
+		if (type == TRANSFER) {
+			String from = connection.readString(in, position, end);
+			position = connection.position;
+			String to = from != null ? connection.readString(in, position, end) : null;
+			position = connection.position;
+			if (to == null || end - position != 8) {
+				respond(out, type, requestId, STATUS_MALFORMED, 0, 0, "Malformed transfer request");
+				return;
+			}
+			TransferResult result = transfer(Transfer.ofMinor(from, to, in.getLong(position)));
+			respond(out, type, requestId, BinaryProtocol.toStatus(result.getStatus()), 0, 0, result.getMessage());
+		} else if (type == BALANCE) {
+			String accountId = connection.readString(in, position, end);
+			if (accountId == null || connection.position != end) {
+				respond(out, type, requestId, STATUS_MALFORMED, 0, 0, "Malformed balance request");
+				return;
+			}
+			AccountView view;
+			try {
+				view = shardRouter != null ? shardRouter.getAccount(accountId) : accountsService.getAccountView(accountId);
+			} catch (ShardUnavailableException e) {
+				respond(out, type, requestId, STATUS_UNAVAILABLE, 0, 0, e.getMessage());
+				return;
+			}
+			if (view == null) {
+				respond(out, type, requestId, STATUS_ACCOUNT_NOT_FOUND, 0, 0,
+						new AccountNotFoundException(Collections.singletonList(accountId)).getMessage());
+			} else {
+				respond(out, type, requestId, STATUS_OK, view.getBalanceMinor(), view.getVersion(), null);
+			}
+		} else {
+			respond(out, type, requestId, STATUS_MALFORMED, 0, 0, "Unknown request type " + type);
+		}
+	}
+
+	private TransferResult transfer(Transfer transfer) {
+		if (shardRouter != null) {
+			return shardRouter.transfer(transfer, null);
+		}
+		return accountsService.resultOf(accountsService.tryTransfer(transfer), transfer);
+	}
+
+	private static void respond(ByteBuffer out, byte type, long requestId, byte status, long balance, long version,
+								String message) {
+		int start = out.position();
+		out.putInt(0).put(type).putLong(requestId).put(status).putLong(balance).putLong(version);
+		if (message == null) {
+			out.putShort((short) 0);
+		} else {
+			BinaryProtocol.putString(out, message.length() > MAX_MESSAGE ? message.substring(0, MAX_MESSAGE) : message);
+		}
+		out.putInt(start, out.position() - start - 4);
+	}
+
+	/**
+	 * A selector thread serving a share of the connections.
+	 */
+	private final class IoLoop implements Runnable {
+		private final Selector selector;
+		private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+		private Thread thread;
+
+		private IoLoop(Selector selector) {
+			this.selector = selector;
+		}
+
+		private void register(SocketChannel channel) {
+			accepted.add(channel);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				try {
+					selector.select();
+				} catch (IOException e) {
+					log.error("Selector failed", e);
+					break;
+				}
+				for (SocketChannel channel; (channel = accepted.poll()) != null; ) {
+					try {
+						channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+					} catch (ClosedChannelException e) {
+						// Closed by the peer before it was registered.
+					}
+				}
+				for (Iterator<SelectionKey> keys = selector.selectedKeys().iterator(); keys.hasNext(); ) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					Connection connection = (Connection) key.attachment();
+					try {
+						if (key.isReadable()) {
+							connection.read(key);
+						} else if (key.isWritable()) {
+							connection.write(key);
+						}
+					} catch (IOException e) {
+						log.debug("Closing connection: {}", e.getMessage());
+						connection.close(key);
+					} catch (RuntimeException e) {
+						// Requests are answered one by one, see Connection#handleSafely; this keeps the loop alive
+						// for the other connections if the connection itself breaks.
+						log.error("Closing connection after unexpected failure", e);
+						connection.close(key);
+					}
+				}
+			}
+			for (SelectionKey key : selector.keys()) {
+				((Connection) key.attachment()).close(key);
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				log.warn("Cannot close selector: {}", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Buffers of one connection. The input buffer is kept in write mode between reads and holds at most one partial
+	 * frame plus frames that did not fit into the output buffer yet.
+	 */
+	private final class Connection {
+		private final SocketChannel channel;
+		private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private final byte[] scratch = new byte[MAX_FRAME];
+		private boolean closing;
+		// Position after the string last decoded by readString.
+		private int position;
+
+		private Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		private void read(SelectionKey key) throws IOException {
+			if (channel.read(in) < 0) {
+				close(key);
+				return;
+			}
+			process();
+			flush(key);
+		}
+
+		private void write(SelectionKey key) throws IOException {
+			flush(key);
+			if (out.position() == 0 && !closing) {
+				// Frames held back while the output buffer was full.
+				process();
+				flush(key);
+			}
+		}
+
+		/**
+		 * Handles every complete frame in the input buffer for which the output buffer has room.
+		 */
+		private void process() {
+			in.flip();
+			while (in.remaining() >= 4 && out.remaining() >= MAX_RESPONSE && !closing) {
+				int start = in.position();
+				int length = in.getInt(start);
+				if (length < 0 || length > MAX_FRAME) {
+					respond(out, (byte) 0, 0, STATUS_MALFORMED, 0, 0, "Frame length " + length + " exceeds " + MAX_FRAME);
+					closing = true;
+					in.position(in.limit());
+					break;
+				}
+				if (in.remaining() < 4 + length) {
+					break;
+				}
+				handleSafely(in, start + 4, start + 4 + length);
+				in.position(start + 4 + length);
+			}
+			in.compact();
+		}
+
+		/**
+		 * Handles one frame, answering a request that fails unexpectedly instead of letting the failure end the loop.
+		 * Malformed content is reported as such, anything else as unavailable. The client only gets a fixed message;
+		 * the exception is logged.
+		 */
+		private void handleSafely(ByteBuffer in, int start, int end) {
+			int responseStart = out.position();
+			try {
+				handle(this, in, start, end);
+			} catch (RuntimeException e) {
+				log.error("Request failed", e);
+				out.position(responseStart);
+				boolean malformed = e instanceof IllegalArgumentException || e instanceof IndexOutOfBoundsException
+						|| e instanceof BufferUnderflowException;
+				respond(out, end - start >= 9 ? in.get(start) : 0, end - start >= 9 ? in.getLong(start + 1) : 0,
+						malformed ? STATUS_MALFORMED : STATUS_UNAVAILABLE, 0, 0,
+						malformed ? MALFORMED_MESSAGE : UNAVAILABLE_MESSAGE);
+			}
+		}
+
+		private void flush(SelectionKey key) throws IOException {
+			out.flip();
+			channel.write(out);
+			out.compact();
+			if (out.position() > 0) {
+				key.interestOps(SelectionKey.OP_WRITE);
+			} else if (closing) {
+				close(key);
+			} else {
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+
+		/**
+		 * Decodes the string at {@code offset}, or returns null if it does not end before {@code end}. Sets
+		 * {@link #position} to the offset after it.
+		 */
+		private String readString(ByteBuffer buffer, int offset, int end) {
+			if (end - offset < 2) {
+				return null;
+			}
+			int length = buffer.getShort(offset) & 0xffff;
+			if (end - offset - 2 < length) {
+				return null;
+			}
+			for (int i = 0; i < length; i++) {
+				scratch[i] = buffer.get(offset + 2 + i);
+			}
+			position = offset + 2 + length;
+			return new String(scratch, 0, length, StandardCharsets.UTF_8);
+		}
+
+		private void close(SelectionKey key) {
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.debug("Cannot close connection: {}", e.getMessage());
+			}
+		}
+	}
+}
@@ -1,61 +1,212 @@
 package com.db.awmd.challenge.web;
 
+import com.db.awmd.challenge.cluster.ShardRouter;
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountView;
+import com.db.awmd.challenge.domain.LedgerEntry;
+import com.db.awmd.challenge.domain.Posting;
+import com.db.awmd.challenge.domain.Transaction;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferCode;
+import com.db.awmd.challenge.domain.TransferHistory;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.exception.ShardUnavailableException;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransferLedger;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 @RestController
 @RequestMapping("/v1/accounts")
 @Slf4j
 public class AccountsController {
 
+	/**
+	 * Sent as {@code Retry-After} with 429 and 503 responses; lock waits are bounded well below it.
+	 */
+	static final String RETRY_AFTER_SECONDS = "1";
+
+	/**
+	 * Shared by every successful transfer; its headers are read-only.
+	 */
+	private static final ResponseEntity<?> TRANSFERRED = new ResponseEntity<>(HttpStatus.OK);
+
 	private final AccountsService accountsService;
 
+	private ShardRouter shardRouter;
+
 	@Autowired
 	public AccountsController(AccountsService accountsService) {
 		this.accountsService = accountsService;
 	}
 
+	/**
+	 * Sends every request to the node owning its accounts. Only registered when {@code cluster.enabled} is true.
+	 */
+	@Autowired(required = false)
+	public void setShardRouter(ShardRouter shardRouter) {
+		this.shardRouter = shardRouter;
+	}
+
 	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
 	public ResponseEntity<Object> createAccount(@RequestBody @Valid Account account) {
 		log.info("Creating account {}", account);
 
 		try {
-			this.accountsService.createAccount(account);
-		} catch (DuplicateAccountIdException daie) {
-			return new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST);
+			if (shardRouter != null) {
+				shardRouter.createAccount(account);
+			} else {
+				this.accountsService.createAccount(account);
+			}
+		} catch (DuplicateAccountIdException | IllegalArgumentException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (ShardUnavailableException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
 		}
 
 		return new ResponseEntity<>(HttpStatus.CREATED);
 	}
 
+	/**
+	 * Returns an immutable view of the account, never the live entity. The account version is sent as ETag, so a
+	 * request with a matching {@code If-None-Match} gets 304 Not Modified.
+	 */
 	@GetMapping(path = "/{accountId}")
-	public Account getAccount(@PathVariable String accountId) {
+	public ResponseEntity<AccountView> getAccount(@PathVariable String accountId) {
 		log.info("Retrieving account for id {}", accountId);
-		return this.accountsService.getAccount(accountId);
+		AccountView view;
+		try {
+			view = shardRouter != null ? shardRouter.getAccount(accountId) : this.accountsService.getAccountView(accountId);
+		} catch (ShardUnavailableException e) {
+			return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		if (view == null) {
+			return ResponseEntity.ok(null);
+		}
+		return ResponseEntity.ok().eTag(Long.toString(view.getVersion())).body(view);
+	}
+
+	/**
+	 * Returns up to {@code limit} retained transfers of the account, newest first, continuing before {@code cursor}
+	 * when one is given. Only this node's ledger is read.
+	 */
+	@GetMapping(path = "/{accountId}/transfers")
+	public ResponseEntity<?> getTransfers(@PathVariable String accountId,
+										  @RequestParam(required = false) Long cursor,
+										  @RequestParam(defaultValue = "100") int limit) {
+		if ((cursor != null && cursor <= 0) || limit <= 0) {
+			return new ResponseEntity<>("Cursor and limit must be positive.", HttpStatus.BAD_REQUEST);
+		}
+		if (accountsService.getAccount(accountId) == null) {
+			return new ResponseEntity<>(new AccountNotFoundException(Collections.singletonList(accountId)).getMessage(),
+					HttpStatus.NOT_FOUND);
+		}
+		List<LedgerEntry> transfers = new ArrayList<>(Math.min(limit, accountsService.getLedger().getRetention()));
+		long next = accountsService.getLedger().read(accountId, cursor != null ? cursor : TransferLedger.NEWEST, limit,
+				transfers::add);
+		return ResponseEntity.ok(new TransferHistory(transfers,
+				next != TransferLedger.END_OF_LEDGER ? Long.toString(next) : null));
 	}
 
+	/**
+	 * With an {@code Idempotency-Key} header, a retried request returns the outcome of the first one instead of
+	 * transferring again.
+	 */
 	@PutMapping(path = "/transfer")
-	public ResponseEntity<?> transfer(@RequestBody Transfer transfer) {
-		log.info("Transferring amount " + transfer);
+	public ResponseEntity<?> transfer(@RequestBody Transfer transfer,
+									  @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+		log.info("Transferring amount {}", transfer);
+
+		if (shardRouter != null) {
+			return toResponse(shardRouter.transfer(transfer, idempotencyKey));
+		}
+
+		if (idempotencyKey != null) {
+			TransferResult result;
+			try {
+				result = accountsService.transfer(transfer, idempotencyKey);
+			} catch (IllegalArgumentException e) {
+				return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+			}
+			return toResponse(result);
+		}
+
+		// The outcome is a code; a message is only built for a failure, and no exception at all.
+		TransferCode code = accountsService.tryTransfer(transfer);
+		if (code != TransferCode.OK) {
+			return toResponse(accountsService.resultOf(code, transfer));
+		}
+
+		return TRANSFERRED;
+	}
+
+	@PutMapping(path = "/transfers")
+	public ResponseEntity<List<TransferResult>> transferAll(@RequestBody List<Transfer> transfers) {
+		log.info("Transferring batch of {} amounts", transfers.size());
+		List<TransferResult> results = shardRouter != null ? shardRouter.transferAll(transfers)
+				: accountsService.transferAll(transfers);
+		return new ResponseEntity<>(results, HttpStatus.OK);
+	}
+
+	/**
+	 * Applies all postings of the transaction or none, see {@link AccountsService#transact(Transaction)}. With
+	 * sharding, every account must be owned by the node receiving the request.
+	 */
+	@PostMapping(path = "/transactions", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<?> transact(@RequestBody Transaction transaction) {
+		log.info("Applying transaction {}", transaction);
+
+		if (shardRouter != null && transaction.getPostings() != null) {
+			for (Posting posting : transaction.getPostings()) {
+				if (posting != null && posting.getAccountId() != null && !shardRouter.isLocal(posting.getAccountId())) {
+					return new ResponseEntity<>("Account " + posting.getAccountId()
+							+ " is owned by another node; transactions cannot span nodes", HttpStatus.BAD_REQUEST);
+				}
+			}
+		}
 
 		try {
-			accountsService.transfer(transfer);
+			accountsService.transact(transaction);
 		} catch (IllegalArgumentException | AccountNotFoundException | InsufficientFundsException e) {
 			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (LockTimeoutException e) {
+			return retryLater(e.getMessage(), HttpStatus.TOO_MANY_REQUESTS);
 		}
 
 		return new ResponseEntity<>(HttpStatus.OK);
 	}
+
+	static ResponseEntity<?> toResponse(TransferResult result) {
+		if (result.getStatus() == TransferStatus.COMPLETED) {
+			return new ResponseEntity<>(HttpStatus.OK);
+		}
+		switch (result.getStatus()) {
+			case BUSY:
+			case RATE_LIMITED:
+				return retryLater(result.getMessage(), HttpStatus.TOO_MANY_REQUESTS);
+			case UNAVAILABLE:
+				return retryLater(result.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+			default:
+				return new ResponseEntity<>(result.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	static ResponseEntity<?> retryLater(String message, HttpStatus status) {
+		return ResponseEntity.status(status).header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS).body(message);
+	}
 }
@@ -0,0 +1,127 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BulkAccountImporter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Endpoints that read or write many accounts as a stream of JSON lines rather than one document held in memory.
+ */
+@RestController
+@RequestMapping("/v1/accounts")
+@Slf4j
+public class AccountsStreamController {
+
+	public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+	/**
+	 * Accounts read from the repository, and written to the response, between flushes.
+	 */
+	private static final int EXPORT_BATCH = 1024;
+
+	private final AccountsService accountsService;
+	private final BulkAccountImporter bulkAccountImporter;
+	private final ObjectMapper objectMapper;
+
+	@Autowired
+	public AccountsStreamController(AccountsService accountsService, BulkAccountImporter bulkAccountImporter,
+									ObjectMapper objectMapper) {
+		this.accountsService = accountsService;
+		this.bulkAccountImporter = bulkAccountImporter;
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Exports accounts as NDJSON, one {@code {"accountId", "balance"}} line per account, flushed every
+	 * {@value #EXPORT_BATCH} accounts. The response has no content length and is sent chunked. Without a
+	 * {@code limit} every account from {@code cursor} on is exported; with one, and when accounts remain, the last line
+	 * is {@code {"nextCursor": n}} to pass as {@code cursor} for the next page. Each balance is consistent on its own,
+	 * but transfers continue during the export, so the dump is not a snapshot of one instant.
+	 */
+	@GetMapping(produces = APPLICATION_NDJSON_VALUE)
+	public void exportAccounts(@RequestParam(defaultValue = "0") long cursor,
+							   @RequestParam(defaultValue = "0") long limit,
+							   HttpServletResponse response) throws IOException {
+		if (cursor < 0 || limit < 0) {
+			response.sendError(HttpStatus.BAD_REQUEST.value(), "Cursor and limit must not be negative.");
+			return;
+		}
+		log.info("Exporting accounts from cursor {}", cursor);
+		response.setContentType(APPLICATION_NDJSON_VALUE);
+		response.setCharacterEncoding("UTF-8");
+
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+			generator.setCodec(objectMapper);
+			generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+
+			long remaining = limit == 0 ? Long.MAX_VALUE : limit;
+			while (cursor != AccountsRepository.END_OF_SCAN && remaining > 0) {
+				int batch = (int) Math.min(EXPORT_BATCH, remaining);
+				cursor = accountsService.scanAccounts(cursor, batch, view -> {
+					try {
+						generator.writeObject(view);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+				remaining -= batch;
+				generator.flush();
+			}
+			if (cursor != AccountsRepository.END_OF_SCAN) {
+				generator.writeStartObject();
+				generator.writeStringField("nextCursor", Long.toString(cursor));
+				generator.writeEndObject();
+			}
+			// Terminates the last line; the pretty printer only separates lines.
+			if (generator.getOutputContext().getEntryCount() > 0) {
+				generator.writeRaw('\n');
+			}
+		}
+	}
+
+	/**
+	 * Imports accounts from an NDJSON stream or a JSON array of {@code {"accountId", "balance"}} objects. Responds with
+	 * NDJSON: one line per record that was not imported, written as the import proceeds, then a summary line with the
+	 * created and failed counts. Records are not rejected as a whole, so the status is 200 even when some fail.
+	 */
+	@PostMapping(path = "/bulk", consumes = {APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+	public void importAccounts(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		log.info("Importing accounts");
+		response.setContentType(APPLICATION_NDJSON_VALUE);
+		response.setCharacterEncoding("UTF-8");
+
+		try (JsonParser parser = objectMapper.getFactory().createParser(request.getInputStream());
+			 JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+			generator.setCodec(objectMapper);
+			generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+
+			BulkAccountImporter.Summary summary = bulkAccountImporter.importAccounts(parser, failure -> {
+				try {
+					generator.writeObject(failure);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			generator.writeObject(summary);
+			generator.writeRaw('\n');
+		}
+	}
+}
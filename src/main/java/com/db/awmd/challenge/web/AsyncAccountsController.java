@@ -0,0 +1,67 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.AccountView;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.service.AsyncTransferService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous variant of the read and transfer endpoints of {@link AccountsController}, with the same requests and
+ * responses. The servlet thread is released while a transfer waits for balance locks, the journal or notification
+ * dispatch, see {@link AsyncTransferService}; the response is written when the returned future completes.
+ */
+@RestController
+@RequestMapping("/v1/async/accounts")
+@Slf4j
+public class AsyncAccountsController {
+
+	private final AsyncTransferService asyncTransferService;
+
+	@Autowired
+	public AsyncAccountsController(AsyncTransferService asyncTransferService) {
+		this.asyncTransferService = asyncTransferService;
+	}
+
+	@GetMapping(path = "/{accountId}")
+	public CompletableFuture<ResponseEntity<AccountView>> getAccount(@PathVariable String accountId) {
+		log.info("Retrieving account for id {}", accountId);
+		return asyncTransferService.getAccount(accountId).handle((view, e) -> {
+			if (e != null) {
+				log.warn("Account {} could not be read: {}", accountId, e.getMessage());
+				return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+			}
+			if (view == null) {
+				return ResponseEntity.ok(null);
+			}
+			return ResponseEntity.ok().eTag(Long.toString(view.getVersion())).body(view);
+		});
+	}
+
+	@PutMapping(path = "/transfer")
+	public CompletableFuture<ResponseEntity<?>> transfer(@RequestBody Transfer transfer,
+			@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+		log.info("Transferring amount {}", transfer);
+		return asyncTransferService.transfer(transfer, idempotencyKey).thenApply(AccountsController::toResponse);
+	}
+
+	@PutMapping(path = "/transfers")
+	public CompletableFuture<ResponseEntity<List<TransferResult>>> transferAll(@RequestBody List<Transfer> transfers) {
+		log.info("Transferring batch of {} amounts", transfers.size());
+		return asyncTransferService.transferAll(transfers).handle((results, e) -> e != null
+				? new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE) : new ResponseEntity<>(results, HttpStatus.OK));
+	}
+}
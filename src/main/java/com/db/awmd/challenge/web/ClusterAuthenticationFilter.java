@@ -0,0 +1,38 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.cluster.ClusterCredentials;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Lets through only requests carrying the cluster secret. Registered for the {@link ShardController} endpoints, which
+ * move money between nodes and must not be reachable by clients.
+ */
+@Slf4j
+public class ClusterAuthenticationFilter extends OncePerRequestFilter {
+
+	private final ClusterCredentials credentials;
+
+	public ClusterAuthenticationFilter(ClusterCredentials credentials) {
+		this.credentials = credentials;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		if (!credentials.authenticates(request.getHeader(ClusterCredentials.HEADER))) {
+			log.warn("Rejected unauthenticated {} {} from {}", request.getMethod(), request.getRequestURI(),
+					request.getRemoteAddr());
+			response.sendError(HttpStatus.FORBIDDEN.value(), "Cluster secret missing or invalid");
+			return;
+		}
+		chain.doFilter(request, response);
+	}
+}
@@ -0,0 +1,171 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.persistence.AccountSnapshotter;
+import com.db.awmd.challenge.persistence.TransferJournal;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import com.db.awmd.challenge.service.NotificationDispatcher;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Transfer, idempotency and, where the components are registered, notification, snapshot, journal and transfer
+ * engine metrics, as JSON or in the Prometheus text format.
+ */
+@RestController
+@RequestMapping("/v1/metrics")
+public class MetricsController {
+
+	static final String PROMETHEUS_TEXT = "text/plain;version=0.0.4;charset=utf-8";
+
+	private final TransferMetrics transferMetrics;
+
+	private final IdempotencyCache idempotencyCache;
+
+	private NotificationDispatcher notificationDispatcher;
+	private AccountSnapshotter accountSnapshotter;
+	private TransferJournal transferJournal;
+	private ShardedTransferEngine transferEngine;
+
+	@Autowired
+	public MetricsController(TransferMetrics transferMetrics, IdempotencyCache idempotencyCache) {
+		this.transferMetrics = transferMetrics;
+		this.idempotencyCache = idempotencyCache;
+	}
+
+	@Autowired(required = false)
+	public void setNotificationDispatcher(NotificationDispatcher notificationDispatcher) {
+		this.notificationDispatcher = notificationDispatcher;
+	}
+
+	@Autowired(required = false)
+	public void setAccountSnapshotter(AccountSnapshotter accountSnapshotter) {
+		this.accountSnapshotter = accountSnapshotter;
+	}
+
+	@Autowired(required = false)
+	public void setTransferJournal(TransferJournal transferJournal) {
+		this.transferJournal = transferJournal;
+	}
+
+	@Autowired(required = false)
+	public void setTransferEngine(ShardedTransferEngine transferEngine) {
+		this.transferEngine = transferEngine;
+	}
+
+	@GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+	public Map<String, Object> getMetrics() {
+		Map<String, Object> metrics = transferMetrics.toMap();
+
+		Map<String, Object> idempotency = new LinkedHashMap<>();
+		idempotency.put("size", idempotencyCache.size());
+		idempotency.put("hits", idempotencyCache.getHits());
+		idempotency.put("misses", idempotencyCache.getMisses());
+		idempotency.put("evictions", idempotencyCache.getEvictions());
+		idempotency.put("expirations", idempotencyCache.getExpirations());
+		metrics.put("idempotency", idempotency);
+
+		if (notificationDispatcher != null) {
+			Map<String, Object> notifications = new LinkedHashMap<>();
+			notifications.put("queueDepth", notificationDispatcher.getQueueDepth());
+			notifications.put("spillDepth", notificationDispatcher.getSpillDepth());
+			notifications.put("enqueued", notificationDispatcher.getEnqueuedCount());
+			notifications.put("delivered", notificationDispatcher.getDeliveredCount());
+			notifications.put("dropped", notificationDispatcher.getDroppedCount());
+			notifications.put("spilled", notificationDispatcher.getSpilledCount());
+			notifications.put("failed", notificationDispatcher.getFailedCount());
+			metrics.put("notifications", notifications);
+		}
+		if (accountSnapshotter != null) {
+			Map<String, Object> snapshot = new LinkedHashMap<>();
+			snapshot.put("loadMillis", accountSnapshotter.getLoadMillis());
+			snapshot.put("loadedAccounts", accountSnapshotter.getLoadedAccounts());
+			snapshot.put("snapshots", accountSnapshotter.getSnapshots());
+			snapshot.put("lastSnapshotMillis", accountSnapshotter.getLastSnapshotMillis());
+			snapshot.put("lastSnapshotAccounts", accountSnapshotter.getLastSnapshotAccounts());
+			metrics.put("snapshot", snapshot);
+		}
+		if (transferJournal != null) {
+			Map<String, Object> journal = new LinkedHashMap<>();
+			journal.put("replayedRecords", transferJournal.getReplayedRecords());
+			journal.put("replayRecordsPerSecond", transferJournal.getReplayRecordsPerSecond());
+			journal.put("appendedRecords", transferJournal.getAppendedRecords());
+			journal.put("commits", transferJournal.getCommits());
+			journal.put("commitLagBytes", transferJournal.getCommitLagBytes());
+			journal.put("rolledSegments", transferJournal.getRolledSegments());
+			metrics.put("journal", journal);
+		}
+		if (transferEngine != null) {
+			Map<String, Object> engine = new LinkedHashMap<>();
+			engine.put("shards", transferEngine.getShardCount());
+			engine.put("inFlightCredits", transferEngine.getInFlightCredits());
+			engine.put("queuedTasks", transferEngine.getQueuedTasks());
+			metrics.put("transferEngine", engine);
+		}
+		return metrics;
+	}
+
+	/**
+	 * Selected by Prometheus scrapes, which accept {@code text/plain}.
+	 */
+	@GetMapping(produces = PROMETHEUS_TEXT)
+	public String getPrometheusMetrics() {
+		StringBuilder out = new StringBuilder(transferMetrics.toPrometheus());
+		TransferMetrics.counter(out, "idempotency_hits_total", "Transfers answered from the idempotency cache.",
+				idempotencyCache.getHits());
+		TransferMetrics.counter(out, "idempotency_misses_total", "Transfers executed under a new idempotency key.",
+				idempotencyCache.getMisses());
+		TransferMetrics.counter(out, "idempotency_evictions_total", "Idempotency keys evicted to stay within capacity.",
+				idempotencyCache.getEvictions());
+		TransferMetrics.counter(out, "idempotency_expirations_total", "Idempotency keys dropped after their TTL.",
+				idempotencyCache.getExpirations());
+
+		if (notificationDispatcher != null) {
+			TransferMetrics.gauge(out, "notification_queue_depth", "Notifications waiting in the dispatch queue.",
+					notificationDispatcher.getQueueDepth());
+			TransferMetrics.gauge(out, "notification_spill_depth", "Notifications waiting in the spill queue.",
+					notificationDispatcher.getSpillDepth());
+			TransferMetrics.counter(out, "notification_delivered_total", "Notifications delivered.",
+					notificationDispatcher.getDeliveredCount());
+			TransferMetrics.counter(out, "notification_dropped_total", "Notifications dropped by the overflow policy.",
+					notificationDispatcher.getDroppedCount());
+			TransferMetrics.counter(out, "notification_spilled_total", "Notifications spilled past a full queue.",
+					notificationDispatcher.getSpilledCount());
+			TransferMetrics.counter(out, "notification_failed_total", "Notifications whose delivery failed.",
+					notificationDispatcher.getFailedCount());
+		}
+		if (accountSnapshotter != null) {
+			TransferMetrics.gauge(out, "snapshot_load_seconds", "Time taken to load the snapshot at startup.",
+					accountSnapshotter.getLoadMillis() / 1e3);
+			TransferMetrics.gauge(out, "snapshot_last_duration_seconds", "Time taken to write the last snapshot.",
+					accountSnapshotter.getLastSnapshotMillis() / 1e3);
+			TransferMetrics.counter(out, "snapshots_total", "Snapshots written since startup.",
+					accountSnapshotter.getSnapshots());
+		}
+		if (transferJournal != null) {
+			TransferMetrics.gauge(out, "journal_replay_records_per_second", "Rate of the journal replay at startup.",
+					transferJournal.getReplayRecordsPerSecond());
+			TransferMetrics.gauge(out, "journal_commit_lag_bytes", "Journal bytes appended but not yet forced to disk.",
+					transferJournal.getCommitLagBytes());
+			TransferMetrics.counter(out, "journal_appended_records_total", "Records appended to the journal.",
+					transferJournal.getAppendedRecords());
+			TransferMetrics.counter(out, "journal_commits_total", "Forces of the journal to disk.",
+					transferJournal.getCommits());
+		}
+		if (transferEngine != null) {
+			TransferMetrics.gauge(out, "transfer_engine_in_flight_credits",
+					"Credits debited on one shard and not yet applied on another.",
+					transferEngine.getInFlightCredits());
+			TransferMetrics.gauge(out, "transfer_engine_queued_tasks",
+					"Transfers and hand-offs waiting in shard queues.", transferEngine.getQueuedTasks());
+		}
+		return out.toString();
+	}
+}
@@ -0,0 +1,112 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.cluster.LocalShardClient;
+import com.db.awmd.challenge.cluster.Reservation;
+import com.db.awmd.challenge.cluster.ShardParticipant;
+import com.db.awmd.challenge.cluster.ShardRouter;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountView;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Node-to-node endpoints of a sharded cluster, called by {@link com.db.awmd.challenge.cluster.HttpShardClient}. They
+ * act on this node's accounts only and never forward, and only answer requests carrying the cluster secret, see
+ * {@link ClusterAuthenticationFilter}.
+ */
+@RestController
+@RequestMapping("/internal/shard")
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+public class ShardController {
+
+	private final LocalShardClient localShardClient;
+	private final ShardParticipant shardParticipant;
+	private final ShardRouter shardRouter;
+
+	@Autowired
+	public ShardController(LocalShardClient localShardClient, ShardParticipant shardParticipant,
+						   ShardRouter shardRouter) {
+		this.localShardClient = localShardClient;
+		this.shardParticipant = shardParticipant;
+		this.shardRouter = shardRouter;
+	}
+
+	@PostMapping(path = "/accounts")
+	public ResponseEntity<Object> createAccount(@RequestBody Account account) {
+		try {
+			localShardClient.createAccount(account);
+		} catch (DuplicateAccountIdException | IllegalArgumentException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+		return new ResponseEntity<>(HttpStatus.CREATED);
+	}
+
+	@GetMapping(path = "/accounts/{accountId}")
+	public ResponseEntity<AccountView> getAccount(@PathVariable String accountId) {
+		AccountView view = localShardClient.getAccount(accountId);
+		if (view == null) {
+			return ResponseEntity.ok(null);
+		}
+		return ResponseEntity.ok().eTag(Long.toString(view.getVersion())).body(view);
+	}
+
+	@PutMapping(path = "/transfer")
+	public TransferResult transfer(@RequestBody Transfer transfer,
+								   @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+		return localShardClient.transfer(transfer, idempotencyKey);
+	}
+
+	@PutMapping(path = "/transfers/{transferId}/reserve")
+	public Reservation reserve(@PathVariable String transferId, @RequestBody Transfer transfer) {
+		return shardParticipant.reserve(transferId, transfer);
+	}
+
+	@PutMapping(path = "/transfers/{transferId}/prepare-credit")
+	public TransferResult prepareCredit(@PathVariable String transferId, @RequestBody Transfer transfer,
+										@RequestParam(required = false) String reservation) {
+		return shardParticipant.prepareCredit(transferId, transfer, reservation);
+	}
+
+	@PutMapping(path = "/transfers/{transferId}/commit")
+	public TransferResult commit(@PathVariable String transferId) {
+		return shardParticipant.commit(transferId);
+	}
+
+	@PutMapping(path = "/transfers/{transferId}/abort")
+	public void abort(@PathVariable String transferId) {
+		shardParticipant.abort(transferId);
+	}
+
+	@PutMapping(path = "/transfers/{transferId}/settle-credit")
+	public TransferResult settleCredit(@PathVariable String transferId) {
+		return shardParticipant.settleCredit(transferId);
+	}
+
+	@GetMapping(path = "/status")
+	public Map<String, Object> getStatus() {
+		Map<String, Object> status = new LinkedHashMap<>();
+		status.put("nodeId", localShardClient.getNodeId());
+		status.put("holds", shardParticipant.getHolds());
+		status.put("reserved", Money.toDecimal(shardParticipant.getReservedMinor()));
+		status.put("unresolved", shardRouter.getUnresolved());
+		return status;
+	}
+}
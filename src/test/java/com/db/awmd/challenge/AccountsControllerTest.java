@@ -2,6 +2,7 @@ package com.db.awmd.challenge;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BalanceLockPolicy;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -11,13 +12,20 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -40,6 +48,7 @@ public class AccountsControllerTest {
 
 		// Reset the existing accounts before each test.
 		accountsService.getAccountsRepository().clearAccounts();
+		accountsService.getLedger().clear();
 	}
 
 	@Test
@@ -91,6 +100,13 @@ public class AccountsControllerTest {
 				.content("{\"accountId\":\"\",\"balance\":1000}")).andExpect(status().isBadRequest());
 	}
 
+	@Test
+	public void createAccountTooLongAccountId() throws Exception {
+		String accountId = new String(new char[Account.MAX_ID_LENGTH + 1]).replace('\0', 'x');
+		this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountId\":\"" + accountId + "\",\"balance\":1000}")).andExpect(status().isBadRequest());
+	}
+
 	@Test
 	public void getAccount() throws Exception {
 		String uniqueAccountId = "Id-" + System.currentTimeMillis();
@@ -102,6 +118,110 @@ public class AccountsControllerTest {
 						content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45}"));
 	}
 
+	@Test
+	public void getAccountNotModified() throws Exception {
+		Account account = Account.ofMinor("Id-etag", 100);
+		accountsService.createAccount(account);
+		account.deposit(50);
+
+		this.mockMvc.perform(get("/v1/accounts/Id-etag"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"1\""));
+		this.mockMvc.perform(get("/v1/accounts/Id-etag").header("If-None-Match", "\"1\""))
+				.andExpect(status().isNotModified());
+
+		account.deposit(50);
+		this.mockMvc.perform(get("/v1/accounts/Id-etag").header("If-None-Match", "\"1\""))
+				.andExpect(status().isOk())
+				.andExpect(content().string("{\"accountId\":\"Id-etag\",\"balance\":2.00}"));
+	}
+
+	@Test
+	public void importAccountsBulk() throws Exception {
+		accountsService.createAccount(new Account("Id-2", 1.0));
+
+		this.mockMvc.perform(post("/v1/accounts/bulk").contentType("application/x-ndjson")
+				.content("{\"accountId\":\"Id-1\",\"balance\":10}\n{\"accountId\":\"Id-2\",\"balance\":20}\n"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("{\"index\":1,\"line\":2,\"accountId\":\"Id-2\","
+						+ "\"error\":\"Account id Id-2 already exists!\"}\n{\"created\":1,\"failed\":1}\n"));
+
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("10");
+	}
+
+	@Test
+	public void exportAccounts() throws Exception {
+		accountsService.createAccount(new Account("Id-1", 10.0));
+		accountsService.createAccount(new Account("Id-2", 20.5));
+
+		this.mockMvc.perform(get("/v1/accounts").accept("application/x-ndjson"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("{\"accountId\":\"Id-1\",\"balance\":10.00}\n"
+						+ "{\"accountId\":\"Id-2\",\"balance\":20.50}\n"));
+	}
+
+	@Test
+	public void exportAccountsInPages() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			accountsService.createAccount(new Account("Id-" + i, i));
+		}
+
+		this.mockMvc.perform(get("/v1/accounts?limit=2"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("{\"accountId\":\"Id-0\",\"balance\":0.00}\n"
+						+ "{\"accountId\":\"Id-1\",\"balance\":1.00}\n{\"nextCursor\":\"2\"}\n"));
+		this.mockMvc.perform(get("/v1/accounts?cursor=2&limit=2"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("{\"accountId\":\"Id-2\",\"balance\":2.00}\n"));
+		this.mockMvc.perform(get("/v1/accounts?cursor=-1")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void getTransfers() throws Exception {
+		accountsService.createAccount(new Account("from", 100.0));
+		accountsService.createAccount(new Account("to", 0.0));
+		for (int i = 1; i <= 3; i++) {
+			mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+					.content("{\"fromAccountId\": \"from\", \"toAccountId\": \"to\", \"amount\": " + i + "}"))
+					.andExpect(status().isOk());
+		}
+
+		this.mockMvc.perform(get("/v1/accounts/from/transfers?limit=2"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.transfers[0].sequence").value(3))
+				.andExpect(jsonPath("$.transfers[0].counterpartyAccountId").value("to"))
+				.andExpect(jsonPath("$.transfers[0].amount").value(-3.0))
+				.andExpect(jsonPath("$.transfers[1].sequence").value(2))
+				.andExpect(jsonPath("$.nextCursor").value("2"));
+		this.mockMvc.perform(get("/v1/accounts/to/transfers?cursor=2"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.transfers.length()").value(1))
+				.andExpect(jsonPath("$.transfers[0].amount").value(1.0))
+				.andExpect(jsonPath("$.nextCursor").doesNotExist());
+		this.mockMvc.perform(get("/v1/accounts/missing/transfers")).andExpect(status().isNotFound());
+		this.mockMvc.perform(get("/v1/accounts/from/transfers?limit=0")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void transact() throws Exception {
+		accountsService.createAccount(new Account("a", 100.0));
+		accountsService.createAccount(new Account("b", 0.0));
+		accountsService.createAccount(new Account("c", 0.0));
+
+		this.mockMvc.perform(post("/v1/accounts/transactions").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"postings\":[{\"accountId\":\"a\",\"amount\":-30},{\"accountId\":\"b\",\"amount\":20},"
+						+ "{\"accountId\":\"c\",\"amount\":10}]}"))
+				.andExpect(status().isOk());
+		this.mockMvc.perform(post("/v1/accounts/transactions").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"postings\":[{\"accountId\":\"b\",\"amount\":-30},{\"accountId\":\"c\",\"amount\":30}]}"))
+				.andExpect(status().isBadRequest())
+				.andExpect(content().string("Available balance in account with id b is 20.00"));
+
+		assertThat(accountsService.getAccount("a").readBalanceMinor()).isEqualTo(7000);
+		assertThat(accountsService.getAccount("b").readBalanceMinor()).isEqualTo(2000);
+		assertThat(accountsService.getAccount("c").readBalanceMinor()).isEqualTo(1000);
+	}
+
 	@Test
 	public void testTransferSuccess() throws Exception {
 		Account from = new Account("from", 100.0);
@@ -159,4 +279,144 @@ public class AccountsControllerTest {
 				.content("{\"fromAccountId\": \"from\", \"toAccountId\": \"to\", \"amount\": \"0.0\"}"))
 				.andExpect(status().isBadRequest());
 	}
+
+	@Test
+	public void testTransferAmountTooManyDecimals() throws Exception {
+		accountsService.createAccount(new Account("from", 100.0));
+		accountsService.createAccount(new Account("to", 100.0));
+
+		mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"fromAccountId\": \"from\", \"toAccountId\": \"to\", \"amount\": \"0.001\"}"))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testAsyncTransfer() throws Exception {
+		accountsService.createAccount(new Account("from", 100.0));
+		accountsService.createAccount(new Account("to", 100.0));
+
+		asyncPut("/v1/async/accounts/transfer", "{\"fromAccountId\": \"from\", \"toAccountId\": \"to\", \"amount\": \"60.0\"}")
+				.andExpect(status().isOk());
+		asyncPut("/v1/async/accounts/transfer", "{\"fromAccountId\": \"from\", \"toAccountId\": \"to\", \"amount\": \"60.0\"}")
+				.andExpect(status().isBadRequest())
+				.andExpect(content().string("Available balance in account with id from is 40.00"));
+		asyncPut("/v1/async/accounts/transfer", "{\"fromAccountId\": \"from\", \"toAccountId\": \"x\", \"amount\": \"1.0\"}")
+				.andExpect(status().isBadRequest())
+				.andExpect(content().string("Account(s) with id(s) [x] could not be found"));
+		asyncPut("/v1/async/accounts/transfer", "{\"fromAccountId\": \"from\", \"toAccountId\": \"to\", \"amount\": \"-1.0\"}")
+				.andExpect(status().isBadRequest())
+				.andExpect(content().string("Invalid amount -1.00"));
+
+		MvcResult get = mockMvc.perform(get("/v1/async/accounts/to")).andReturn();
+		mockMvc.perform(asyncDispatch(get))
+				.andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"1\""))
+				.andExpect(content().string("{\"accountId\":\"to\",\"balance\":160.00}"));
+	}
+
+	private ResultActions asyncPut(String path, String content) throws Exception {
+		MvcResult result = mockMvc.perform(put(path).contentType(MediaType.APPLICATION_JSON).content(content))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		return mockMvc.perform(asyncDispatch(result));
+	}
+
+	@Test
+	public void testTransferIdempotencyKey() throws Exception {
+		accountsService.createAccount(new Account("from", 100.0));
+		accountsService.createAccount(new Account("to", 100.0));
+		String key = "key-" + System.nanoTime();
+
+		for (int i = 0; i < 2; i++) {
+			mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+					.header("Idempotency-Key", key)
+					.content("{\"fromAccountId\": \"from\", \"toAccountId\": \"to\", \"amount\": \"60.0\"}"))
+					.andExpect(status().isOk());
+		}
+		assertThat(accountsService.getAccount("from").readBalance()).isEqualTo(40.0);
+
+		mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+				.header("Idempotency-Key", key)
+				.content("{\"fromAccountId\": \"from\", \"toAccountId\": \"to\", \"amount\": \"10.0\"}"))
+				.andExpect(status().isBadRequest());
+
+		String failingKey = "key-" + System.nanoTime();
+		for (int i = 0; i < 2; i++) {
+			mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+					.header("Idempotency-Key", failingKey)
+					.content("{\"fromAccountId\": \"from\", \"toAccountId\": \"to\", \"amount\": \"60.0\"}"))
+					.andExpect(status().isBadRequest());
+		}
+	}
+
+	@Test
+	public void testTransferBusy() throws Exception {
+		accountsService.createAccount(new Account("from", 100.0));
+		accountsService.createAccount(new Account("to", 100.0));
+		String key = "key-" + System.nanoTime();
+		String body = "{\"fromAccountId\": \"from\", \"toAccountId\": \"to\", \"amount\": \"60.0\"}";
+
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread(() -> {
+			Account to = accountsService.getAccount("to").lockBalance();
+			locked.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				to.unlockBalance();
+			}
+		});
+		accountsService.setBalanceLockPolicy(new BalanceLockPolicy(50, 100));
+		try {
+			holder.start();
+			locked.await();
+			mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON).content(body))
+					.andExpect(status().isTooManyRequests())
+					.andExpect(header().string("Retry-After", "1"))
+					.andExpect(content().string("Account to is busy, retry later"));
+			mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+					.header("Idempotency-Key", key).content(body))
+					.andExpect(status().isTooManyRequests())
+					.andExpect(header().string("Retry-After", "1"));
+		} finally {
+			release.countDown();
+			holder.join();
+			accountsService.setBalanceLockPolicy(new BalanceLockPolicy(1000, 100));
+		}
+		assertThat(accountsService.getAccount("from").readBalance()).isEqualTo(100.0);
+
+		// A busy answer is not kept for the key, so the retry transfers
+		mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+				.header("Idempotency-Key", key).content(body))
+				.andExpect(status().isOk());
+		assertThat(accountsService.getAccount("from").readBalance()).isEqualTo(40.0);
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		accountsService.createAccount(new Account("from", 100.0));
+		accountsService.createAccount(new Account("to", 100.0));
+		mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"fromAccountId\": \"from\", \"toAccountId\": \"to\", \"amount\": \"50.0\"}"))
+				.andExpect(status().isOk());
+
+		mockMvc.perform(get("/v1/metrics").accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+				.andExpect(content().string(containsString("\"transferLatencyMicros\":{\"count\":")))
+				.andExpect(content().string(containsString("\"notifications\":{\"queueDepth\":")));
+
+		mockMvc.perform(get("/v1/metrics").accept(MediaType.TEXT_PLAIN))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("# TYPE transfer_latency_seconds summary")))
+				.andExpect(content().string(containsString("transfer_lock_wait_seconds{quantile=\"0.99\"}")))
+				.andExpect(content().string(containsString("# TYPE notification_queue_depth gauge")));
+
+		mockMvc.perform(get("/v1/metrics"))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+	}
 }
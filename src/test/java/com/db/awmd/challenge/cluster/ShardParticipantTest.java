@@ -0,0 +1,139 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.persistence.AccountSnapshotter;
+import com.db.awmd.challenge.persistence.TransferJournal;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.NotificationService;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Participants on one set of accounts, restarted from a journal and snapshot or left by a failed coordinator.
+ */
+public class ShardParticipantTest {
+
+	private static final ClusterCredentials CREDENTIALS = new ClusterCredentials("0123456789abcdef");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private AccountsService service;
+	private ShardParticipant participant;
+	private TransferJournal journal;
+	private AccountSnapshotter snapshotter;
+
+	@After
+	public void tearDown() throws IOException {
+		stop();
+	}
+
+	@Test
+	public void testHoldsSurviveRestart() throws IOException {
+		start();
+		service.createAccount(Account.ofMinor("a", 100));
+		service.createAccount(Account.ofMinor("b", 0));
+		prepare("t-1", Transfer.ofMinor("a", "b", 40));
+		prepare("t-2", Transfer.ofMinor("a", "b", 10));
+		// Folds the open holds into the snapshot and deletes the segments that recorded them.
+		snapshotter.snapshot();
+		assertEquals(TransferStatus.COMPLETED, participant.commit("t-2").getStatus());
+		restart();
+
+		assertBalances(50, 10);
+		assertEquals(40, participant.getReservedMinor());
+		assertEquals(TransferStatus.COMPLETED, participant.commit("t-2").getStatus());
+		assertBalances(50, 10);
+
+		participant.abort("t-1");
+		assertBalances(90, 10);
+		assertEquals(0, participant.getReservedMinor());
+		restart();
+
+		assertBalances(90, 10);
+		assertEquals(0, participant.getReservedMinor());
+		assertEquals(TransferStatus.REJECTED, participant.commit("t-1").getStatus());
+		assertBalances(90, 10);
+	}
+
+	@Test
+	public void testExpiredReservationIsSettled() {
+		AccountsService accounts = new AccountsService(new AccountsRepositoryInMemory(),
+				Mockito.mock(NotificationService.class));
+		accounts.createAccount(Account.ofMinor("a", 100));
+		accounts.createAccount(Account.ofMinor("b", 0));
+		ShardParticipant source = new ShardParticipant(accounts, CREDENTIALS, 60000, 0);
+		ShardParticipant destination = new ShardParticipant(accounts, CREDENTIALS, 60000, 0);
+		// One coordinator failed before committing, the other after committing the credit only.
+		Transfer open = Transfer.ofMinor("a", "b", 40);
+		Transfer credited = Transfer.ofMinor("a", "b", 10);
+		destination.prepareCredit("t-open", open, source.reserve("t-open", open).getToken());
+		destination.prepareCredit("t-credited", credited, source.reserve("t-credited", credited).getToken());
+		assertEquals(TransferStatus.COMPLETED, destination.commit("t-credited").getStatus());
+		assertEquals(50, source.getReservedMinor());
+
+		source.settleExpired(accountId -> new LocalShardClient("node-2", accounts, destination));
+
+		assertEquals(90, accounts.getAccount("a").readBalanceMinor());
+		assertEquals(10, accounts.getAccount("b").readBalanceMinor());
+		assertEquals(0, source.getReservedMinor());
+		assertEquals(TransferStatus.REJECTED, destination.commit("t-open").getStatus());
+		assertEquals(TransferStatus.COMPLETED, source.commit("t-credited").getStatus());
+		assertEquals(10, accounts.getAccount("b").readBalanceMinor());
+	}
+
+	private void prepare(String transferId, Transfer transfer) {
+		Reservation reservation = participant.reserve(transferId, transfer);
+		assertEquals(TransferStatus.COMPLETED, reservation.getResult().getStatus());
+		assertEquals(TransferStatus.COMPLETED,
+				participant.prepareCredit(transferId, transfer, reservation.getToken()).getStatus());
+	}
+
+	private void assertBalances(long a, long b) {
+		assertEquals(a, service.getAccount("a").readBalanceMinor());
+		assertEquals(b, service.getAccount("b").readBalanceMinor());
+	}
+
+	/**
+	 * Wires a node the way the persistence and cluster configurations do, with a hold timeout of zero.
+	 */
+	private void start() throws IOException {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		snapshotter = new AccountSnapshotter(folder.getRoot().toPath().resolve("snapshot"), 0, repository);
+		snapshotter.load();
+		journal = new TransferJournal(folder.getRoot().toPath().resolve("journal"), 4096, 0, repository);
+		journal.setFirstSegment(snapshotter.getCheckpointSegment());
+		journal.restoreHolds(snapshotter.getLoadedHolds());
+		snapshotter.setJournal(journal);
+		journal.open();
+
+		service = new AccountsService(repository, Mockito.mock(NotificationService.class));
+		service.setJournal(journal);
+		participant = new ShardParticipant(service, CREDENTIALS, 60000, 0);
+		participant.setJournal(journal);
+	}
+
+	private void restart() throws IOException {
+		stop();
+		start();
+	}
+
+	private void stop() throws IOException {
+		if (journal != null) {
+			journal.close();
+			snapshotter.close();
+			service.shutdown();
+			journal = null;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.db.awmd.challenge.cluster;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardRingTest {
+
+	private static final int ACCOUNTS = 30000;
+
+	@Test
+	public void testSpreadsAccountsEvenly() {
+		ShardRing ring = new ShardRing(Arrays.asList("node-1", "node-2", "node-3"), 128);
+		Map<String, Integer> owned = new HashMap<>();
+		for (int i = 0; i < ACCOUNTS; i++) {
+			owned.merge(ring.ownerOf("Id-" + i), 1, Integer::sum);
+		}
+
+		assertEquals(3, owned.size());
+		for (int count : owned.values()) {
+			assertTrue("Unbalanced ring: " + owned, count > ACCOUNTS / 4 && count < ACCOUNTS * 5 / 12);
+		}
+	}
+
+	@Test
+	public void testAddingNodeOnlyMovesAccountsToIt() {
+		ShardRing three = new ShardRing(Arrays.asList("node-1", "node-2", "node-3"), 128);
+		ShardRing four = new ShardRing(Arrays.asList("node-4", "node-3", "node-2", "node-1"), 128);
+		int moved = 0;
+		for (int i = 0; i < ACCOUNTS; i++) {
+			String before = three.ownerOf("Id-" + i);
+			String after = four.ownerOf("Id-" + i);
+			if (!before.equals(after)) {
+				assertEquals("node-4", after);
+				moved++;
+			}
+		}
+
+		assertTrue("Moved " + moved, moved > ACCOUNTS / 6 && moved < ACCOUNTS / 3);
+	}
+}
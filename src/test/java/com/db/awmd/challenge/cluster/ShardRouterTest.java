@@ -0,0 +1,335 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountView;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.ShardUnavailableException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.NotificationService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Three in-process nodes, each with its own repository, coordinated by routers on node-1 and node-2.
+ */
+public class ShardRouterTest {
+
+	private static final String[] NODES = {"node-1", "node-2", "node-3"};
+	private static final ClusterCredentials CREDENTIALS = new ClusterCredentials("0123456789abcdef");
+
+	private final Map<String, AccountsService> services = new LinkedHashMap<>();
+	private final Map<String, ShardParticipant> participants = new LinkedHashMap<>();
+	private final Map<String, ShardClient> clients = new LinkedHashMap<>();
+	private ShardRing ring;
+	private ShardRouter router;
+	private ShardRouter otherRouter;
+
+	@Before
+	public void setup() {
+		for (String nodeId : NODES) {
+			AccountsService service = new AccountsService(new AccountsRepositoryInMemory(),
+					Mockito.mock(NotificationService.class));
+			ShardParticipant participant = new ShardParticipant(service, CREDENTIALS, 60000, 60000);
+			services.put(nodeId, service);
+			participants.put(nodeId, participant);
+			clients.put(nodeId, new FlakyShardClient(new LocalShardClient(nodeId, service, participant)));
+		}
+		ring = new ShardRing(clients.keySet(), 64);
+		router = new ShardRouter("node-1", ring, clients, participants.get("node-1"), 10);
+		otherRouter = new ShardRouter("node-2", ring, clients, participants.get("node-2"), 10);
+		for (int i = 0; i < 30; i++) {
+			router.createAccount(new Account("Id-" + i, 100.0));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		router.close();
+		otherRouter.close();
+	}
+
+	@Test
+	public void testAccountsLiveOnTheirOwner() {
+		for (int i = 0; i < 30; i++) {
+			String accountId = "Id-" + i;
+			for (String nodeId : NODES) {
+				Account account = services.get(nodeId).getAccount(accountId);
+				if (nodeId.equals(ring.ownerOf(accountId))) {
+					assertNotNull(account);
+				} else {
+					assertNull(account);
+				}
+			}
+			assertEquals(Money.toMinor(100.0), otherRouter.getAccount(accountId).getBalanceMinor());
+		}
+	}
+
+	@Test
+	public void testTransferWithinAndAcrossShards() {
+		String[] pair = crossShardPair();
+		String[] local = sameShardPair();
+
+		assertEquals(TransferStatus.COMPLETED, router.transfer(new Transfer(pair[0], pair[1], 40), null).getStatus());
+		assertEquals(TransferStatus.COMPLETED, router.transfer(new Transfer(local[0], local[1], 10), null).getStatus());
+
+		assertBalance(pair[0], 60.0);
+		assertBalance(pair[1], 140.0);
+		assertBalance(local[0], 90.0);
+		assertBalance(local[1], 110.0);
+		assertNothingHeld();
+	}
+
+	@Test
+	public void testCrossShardFailuresLeaveBalances() {
+		String[] pair = crossShardPair();
+
+		TransferResult insufficient = router.transfer(new Transfer(pair[0], pair[1], 500), null);
+		TransferResult missing = router.transfer(new Transfer(pair[0], "missing-" + pair[1], 10), null);
+
+		assertEquals(TransferStatus.INSUFFICIENT_FUNDS, insufficient.getStatus());
+		assertEquals(TransferStatus.ACCOUNT_NOT_FOUND, missing.getStatus());
+		assertBalance(pair[0], 100.0);
+		assertBalance(pair[1], 100.0);
+		assertNothingHeld();
+	}
+
+	@Test
+	public void testUnreachableDestinationRefundsReservation() throws InterruptedException {
+		String[] pair = crossShardPair();
+		FlakyShardClient destination = (FlakyShardClient) router.ownerOf(pair[1]);
+		destination.down = true;
+
+		TransferResult result = router.transfer(new Transfer(pair[0], pair[1], 40), null);
+
+		assertEquals(TransferStatus.UNAVAILABLE, result.getStatus());
+		assertBalance(pair[0], 100.0);
+
+		destination.down = false;
+		awaitResolved();
+		assertBalance(pair[1], 100.0);
+		assertNothingHeld();
+	}
+
+	@Test
+	public void testCommitIsRetriedUntilDelivered() throws InterruptedException {
+		String[] pair = crossShardPair();
+		FlakyShardClient destination = (FlakyShardClient) router.ownerOf(pair[1]);
+		destination.failCommits = true;
+
+		// Not confirmed by the destination yet, so not reported completed.
+		assertEquals(TransferStatus.UNAVAILABLE, router.transfer(new Transfer(pair[0], pair[1], 40), null).getStatus());
+		assertBalance(pair[0], 60.0);
+		assertBalance(pair[1], 100.0);
+
+		destination.failCommits = false;
+		awaitResolved();
+		assertBalance(pair[1], 140.0);
+		assertNothingHeld();
+	}
+
+	@Test
+	public void testRetryWithIdempotencyKeyOnAnotherCoordinator() {
+		String[] pair = crossShardPair();
+		Transfer transfer = new Transfer(pair[0], pair[1], 40);
+
+		assertEquals(TransferStatus.COMPLETED, router.transfer(transfer, "key-1").getStatus());
+		assertEquals(TransferStatus.COMPLETED, otherRouter.transfer(transfer, "key-1").getStatus());
+		assertEquals(TransferStatus.REJECTED,
+				otherRouter.transfer(new Transfer(pair[0], pair[1], 41), "key-1").getStatus());
+
+		assertBalance(pair[0], 60.0);
+		assertBalance(pair[1], 140.0);
+	}
+
+	@Test
+	public void testRetryAfterAbortedAttempt() throws InterruptedException {
+		String[] pair = crossShardPair();
+		Transfer transfer = new Transfer(pair[0], pair[1], 40);
+		FlakyShardClient destination = (FlakyShardClient) router.ownerOf(pair[1]);
+		destination.down = true;
+
+		assertEquals(TransferStatus.UNAVAILABLE, router.transfer(transfer, "key-1").getStatus());
+		destination.down = false;
+		awaitResolved();
+
+		assertEquals(TransferStatus.COMPLETED, otherRouter.transfer(transfer, "key-1").getStatus());
+		assertEquals(TransferStatus.COMPLETED, router.transfer(transfer, "key-1").getStatus());
+		assertBalance(pair[0], 60.0);
+		assertBalance(pair[1], 140.0);
+		assertNothingHeld();
+	}
+
+	@Test
+	public void testCreditWithoutReservationIsRefused() {
+		String[] pair = crossShardPair();
+		Transfer transfer = new Transfer(pair[0], pair[1], 40);
+		ShardClient destination = router.ownerOf(pair[1]);
+		String forged = new ClusterCredentials("not-the-cluster-secret").signReservation("t-1", transfer);
+
+		assertEquals(TransferStatus.REJECTED, destination.prepareCredit("t-1", transfer, null).getStatus());
+		assertEquals(TransferStatus.REJECTED, destination.prepareCredit("t-1", transfer, forged).getStatus());
+		assertEquals(TransferStatus.REJECTED, destination.prepareCredit("t-1", new Transfer(pair[0], pair[1], 400),
+				CREDENTIALS.signReservation("t-1", transfer)).getStatus());
+		destination.commit("t-1");
+
+		assertBalance(pair[1], 100.0);
+		assertEquals(0, participants.get(destination.getNodeId()).getHolds());
+	}
+
+	@Test
+	public void testParallelTransfersConserveMoney() throws InterruptedException {
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			ShardRouter coordinator = t % 2 == 0 ? router : otherRouter;
+			Thread thread = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < 500; i++) {
+					int from = random.nextInt(30);
+					int to = (from + 1 + random.nextInt(29)) % 30;
+					coordinator.transfer(new Transfer("Id-" + from, "Id-" + to, random.nextInt(1, 20)), null);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		long total = 0;
+		for (int i = 0; i < 30; i++) {
+			total += router.getAccount("Id-" + i).getBalanceMinor();
+		}
+		assertEquals(Money.toMinor(3000.0), total);
+		assertNothingHeld();
+	}
+
+	/**
+	 * Two accounts on different nodes, disjoint from {@link #sameShardPair()}.
+	 */
+	private String[] crossShardPair() {
+		for (int i = 2; i < 30; i++) {
+			if (!ring.ownerOf("Id-0").equals(ring.ownerOf("Id-" + i))) {
+				return new String[]{"Id-0", "Id-" + i};
+			}
+		}
+		throw new AssertionError("All accounts on one node");
+	}
+
+	private String[] sameShardPair() {
+		for (int i = 2; i < 30; i++) {
+			if (ring.ownerOf("Id-1").equals(ring.ownerOf("Id-" + i))) {
+				return new String[]{"Id-1", "Id-" + i};
+			}
+		}
+		throw new AssertionError("No two accounts on one node");
+	}
+
+	private void assertBalance(String accountId, double balance) {
+		AccountView view = router.getAccount(accountId);
+		assertEquals(Money.toMinor(balance), view.getBalanceMinor());
+	}
+
+	private void assertNothingHeld() {
+		for (ShardParticipant participant : participants.values()) {
+			assertEquals(0, participant.getReservedMinor());
+		}
+		assertEquals(0, router.getUnresolved());
+		assertEquals(0, otherRouter.getUnresolved());
+	}
+
+	private void awaitResolved() throws InterruptedException {
+		for (int i = 0; i < 500 && router.getUnresolved() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, router.getUnresolved());
+	}
+
+	/**
+	 * Stands in for a node that is down, or whose commit answers are lost.
+	 */
+	private static class FlakyShardClient implements ShardClient {
+		private final ShardClient delegate;
+		private volatile boolean down;
+		private volatile boolean failCommits;
+
+		private FlakyShardClient(ShardClient delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public String getNodeId() {
+			return delegate.getNodeId();
+		}
+
+		@Override
+		public void createAccount(Account account) {
+			check(false);
+			delegate.createAccount(account);
+		}
+
+		@Override
+		public AccountView getAccount(String accountId) {
+			return delegate.getAccount(accountId);
+		}
+
+		@Override
+		public TransferResult transfer(Transfer transfer, String idempotencyKey) {
+			check(false);
+			return delegate.transfer(transfer, idempotencyKey);
+		}
+
+		@Override
+		public Reservation reserve(String transferId, Transfer transfer) {
+			check(false);
+			return delegate.reserve(transferId, transfer);
+		}
+
+		@Override
+		public TransferResult prepareCredit(String transferId, Transfer transfer, String reservation) {
+			check(false);
+			return delegate.prepareCredit(transferId, transfer, reservation);
+		}
+
+		@Override
+		public TransferResult commit(String transferId) {
+			check(failCommits);
+			return delegate.commit(transferId);
+		}
+
+		@Override
+		public void abort(String transferId) {
+			check(false);
+			delegate.abort(transferId);
+		}
+
+		@Override
+		public TransferResult settleCredit(String transferId) {
+			check(false);
+			return delegate.settleCredit(transferId);
+		}
+
+		private void check(boolean fail) {
+			if (down || fail) {
+				throw new ShardUnavailableException(getNodeId(), new IOException("Connection refused"));
+			}
+		}
+	}
+}
@@ -2,7 +2,11 @@ package com.db.awmd.challenge.domain;
 
 import org.junit.Test;
 
+import java.math.BigDecimal;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class AccountTest {
 
@@ -136,7 +140,121 @@ public class AccountTest {
 		t1.start();
 		Thread.sleep(100);
 
+		// The read does not wait for the lock holder; it sees the last completed update.
 		double balance = account.readBalanceSynchronized();
-		assertEquals(200.0, balance, 0.0);
+		assertEquals(100.0, balance, 0.0);
+
+		t1.join();
+		assertEquals(200.0, account.readBalanceSynchronized(), 0.0);
+	}
+
+	@Test
+	public void testCreditDebitMinorUnits() {
+		Account account = new Account("1", new BigDecimal("100.25"));
+		account.lockBalance();
+		account.credit(75).debit(100);
+		account.unlockBalance();
+
+		assertEquals(10000, account.readBalanceMinor());
+		assertEquals(new BigDecimal("100.00"), account.getBalance());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBalanceWithTooManyDecimals() {
+		new Account("1", new BigDecimal("1.001"));
+	}
+
+	@Test
+	public void testWithdrawInsufficient() {
+		Account account = new Account("1", 10.0);
+		assertFalse(account.withdraw(1001));
+		assertTrue(account.withdraw(1000));
+		assertEquals(0, account.readBalanceMinor());
+	}
+
+	@Test
+	public void testParallelDepositWithdraw() throws InterruptedException {
+		Account account = new Account("1", 100.0);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					account.deposit(3);
+					account.withdraw(2);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(10000 + 4 * 10000, account.readBalanceMinor());
+	}
+
+	@Test
+	public void testHotAccount() {
+		Account account = Account.ofMinor("1", 1000);
+		assertTrue(account.promoteToHot());
+		assertFalse(account.promoteToHot());
+
+		// Credits need no lock once hot, debits see credits and the base balance together.
+		account.credit(500);
+		assertEquals(1500, account.readBalanceMinor());
+		assertFalse(account.withdraw(1501));
+		assertTrue(account.withdraw(1200));
+		assertEquals(300, account.readBalanceMinor());
+		assertEquals(2, account.getVersion());
+	}
+
+	@Test
+	public void testParallelHotCreditsAndDebits() throws InterruptedException {
+		Account account = Account.ofMinor("1", 0);
+		account.promoteToHot();
+		long[] withdrawn = new long[4];
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			int index = t / 2;
+			boolean crediting = t % 2 == 0;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					if (crediting) {
+						account.credit(3);
+					} else if (account.withdraw(2)) {
+						withdrawn[index] += 2;
+					}
+					assertTrue(account.readBalanceMinor() >= 0);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		long totalWithdrawn = withdrawn[0] + withdrawn[1] + withdrawn[2] + withdrawn[3];
+		assertEquals(4 * 30000 - totalWithdrawn, account.readBalanceMinor());
+	}
+
+	@Test
+	public void testViewMatchesVersion() throws InterruptedException {
+		Account account = Account.ofMinor("1", 1000);
+		Thread writer = new Thread(() -> {
+			for (int i = 0; i < 200000; i++) {
+				account.deposit(1);
+				account.withdraw(1);
+			}
+		});
+		writer.start();
+
+		// Odd versions follow a deposit, even versions a withdrawal.
+		while (writer.isAlive()) {
+			AccountView view = account.view();
+			assertEquals(view.toString(), 1000 + view.getVersion() % 2, view.getBalanceMinor());
+		}
+		writer.join();
+
+		assertEquals(400000, account.view().getVersion());
+		assertEquals(new BigDecimal("10.00"), account.view().getBalance());
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.domain;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+
+public class MoneyTest {
+
+	@Test
+	public void testToMinor() {
+		assertEquals(12345, Money.toMinor(new BigDecimal("123.45")));
+		assertEquals(100000, Money.toMinor(new BigDecimal("1000")));
+		assertEquals(10020, Money.toMinor(100.2));
+	}
+
+	@Test
+	public void testToDecimal() {
+		assertEquals(new BigDecimal("123.45"), Money.toDecimal(12345));
+		assertEquals(200.5, Money.toDouble(20050), 0.0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testToMinorTooManyDecimals() {
+		Money.toMinor(new BigDecimal("0.001"));
+	}
+}
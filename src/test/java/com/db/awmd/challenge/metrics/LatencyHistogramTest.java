@@ -0,0 +1,48 @@
+package com.db.awmd.challenge.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBucketsBoundRelativeError() {
+		for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+			long upper = LatencyHistogram.upperBound(LatencyHistogram.index(value));
+			assertTrue(value + " -> " + upper, upper >= value);
+			assertTrue(value + " -> " + upper, upper - value <= value / 64);
+		}
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.index(Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void testQuantiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000);
+		}
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1_000_000, histogram.getMax());
+		assertEquals(500_500, histogram.getMean(), 0.001);
+
+		long[] quantiles = histogram.quantiles(0.5, 0.99, 1.0);
+		assertEquals(500_000, quantiles[0], 500_000 / 64);
+		assertEquals(990_000, quantiles[1], 990_000 / 64);
+		assertEquals(1_000_000, quantiles[2]);
+	}
+
+	@Test
+	public void testEmptyAndReset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertArrayEquals(new long[2], histogram.quantiles(0.5, 0.99));
+
+		histogram.record(42);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertArrayEquals(new long[1], histogram.quantiles(0.5));
+	}
+}
@@ -0,0 +1,77 @@
+package com.db.awmd.challenge.persistence;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+
+public class AccountSnapshotterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSnapshotAndLoad() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		for (int i = 0; i < 1000; i++) {
+			repository.createAccount(Account.ofMinor("Id-" + i, i));
+		}
+		repository.getAccount("Id-7").deposit(100);
+
+		AccountSnapshotter snapshotter = new AccountSnapshotter(directory, 0, repository);
+		snapshotter.load();
+		assertEquals(1000, snapshotter.snapshot());
+		snapshotter.close();
+
+		AccountsRepositoryInMemory restored = new AccountsRepositoryInMemory();
+		AccountSnapshotter loader = new AccountSnapshotter(directory, 0, restored);
+		loader.load();
+		assertEquals(1000, loader.getLoadedAccounts());
+		assertEquals(107, restored.getAccount("Id-7").readBalanceMinor());
+		assertEquals(1, restored.getAccount("Id-7").getVersion());
+		assertEquals(999, restored.getAccount("Id-999").readBalanceMinor());
+		loader.close();
+	}
+
+	@Test
+	public void testSnapshotFromJournal() throws IOException {
+		Path snapshots = folder.newFolder("snapshot").toPath();
+		Path journals = folder.newFolder("journal").toPath();
+
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		AccountSnapshotter snapshotter = new AccountSnapshotter(snapshots, 0, repository);
+		snapshotter.load();
+		TransferJournal journal = new TransferJournal(journals, 4096, 0, repository);
+		journal.setFirstSegment(snapshotter.getCheckpointSegment());
+		snapshotter.setJournal(journal);
+		journal.open();
+
+		journal.appendAccountCreated("a", 1000);
+		journal.appendAccountCreated("b", 0);
+		journal.appendTransfer("a", "b", 300);
+		assertEquals(2, snapshotter.snapshot());
+		journal.awaitCommit(journal.appendTransfer("b", "a", 100));
+		journal.close();
+		snapshotter.close();
+
+		AccountsRepositoryInMemory restored = new AccountsRepositoryInMemory();
+		AccountSnapshotter loader = new AccountSnapshotter(snapshots, 0, restored);
+		loader.load();
+		TransferJournal replayed = new TransferJournal(journals, 4096, 0, restored);
+		replayed.setFirstSegment(loader.getCheckpointSegment());
+		replayed.open();
+
+		assertEquals(1, replayed.getReplayedRecords());
+		assertEquals(800, restored.getAccount("a").readBalanceMinor());
+		assertEquals(200, restored.getAccount("b").readBalanceMinor());
+		replayed.close();
+		loader.close();
+	}
+}
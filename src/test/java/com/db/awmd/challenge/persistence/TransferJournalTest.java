@@ -0,0 +1,126 @@
+package com.db.awmd.challenge.persistence;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Posting;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.NotificationService;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransferJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TransferJournal serviceJournal;
+
+	@Test
+	public void testReplay() throws IOException {
+		Path directory = folder.getRoot().toPath();
+
+		AccountsService service = newService(directory, 4096);
+		service.createAccount(new Account("from", 100.0));
+		service.createAccount(new Account("to", 50.0));
+		service.transfer(service.getAccount("from"), service.getAccount("to"), 30);
+		service.deposit("to", 1000);
+		service.withdraw("from", 500);
+		service.transact(new Transaction(Posting.ofMinor("to", -100), Posting.ofMinor("from", 100)));
+		serviceJournal.close();
+
+		AccountsService restarted = newService(directory, 4096);
+		assertEquals(6600, restarted.getAccount("from").readBalanceMinor());
+		assertEquals(8900, restarted.getAccount("to").readBalanceMinor());
+		serviceJournal.close();
+	}
+
+	@Test
+	public void testSegmentRolling() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		AccountsRepository repository = new AccountsRepositoryInMemory();
+		TransferJournal journal = new TransferJournal(directory, 256, 0, repository);
+		journal.open();
+
+		journal.appendAccountCreated("a", 1_000_000);
+		journal.appendAccountCreated("b", 0);
+		long position = 0;
+		for (int i = 0; i < 100; i++) {
+			position = journal.appendTransfer("a", "b", 1);
+		}
+		journal.awaitCommit(position);
+		assertTrue(journal.getRolledSegments() > 0);
+		journal.close();
+
+		AccountsRepository restored = new AccountsRepositoryInMemory();
+		TransferJournal replayed = new TransferJournal(directory, 256, 0, restored);
+		replayed.open();
+		assertEquals(102, replayed.getReplayedRecords());
+		assertEquals(999_900, restored.getAccount("a").readBalanceMinor());
+		assertEquals(100, restored.getAccount("b").readBalanceMinor());
+		replayed.close();
+	}
+
+	@Test
+	public void testLongIdReplayed() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		String id = new String(new char[40000]).replace('\0', 'x');
+		TransferJournal journal = new TransferJournal(directory, 1 << 17, 0, new AccountsRepositoryInMemory());
+		journal.open();
+		journal.awaitCommit(journal.appendAccountCreated(id, 100));
+		journal.close();
+
+		AccountsRepository restored = new AccountsRepositoryInMemory();
+		TransferJournal replayed = new TransferJournal(directory, 1 << 17, 0, restored);
+		replayed.open();
+		assertEquals(100, restored.getAccount(id).readBalanceMinor());
+		replayed.close();
+	}
+
+	@Test
+	public void testTornRecordIgnored() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		AccountsRepository repository = new AccountsRepositoryInMemory();
+		TransferJournal journal = new TransferJournal(directory, 4096, 0, repository);
+		journal.open();
+		journal.appendAccountCreated("a", 100);
+		journal.awaitCommit(journal.appendAccountCreated("b", 200));
+		journal.close();
+
+		// Corrupt the body of the second record, as a crash in the middle of a write would.
+		try (RandomAccessFile file = new RandomAccessFile(directory.resolve("journal-0000000000.log").toFile(), "rw")) {
+			int firstRecord = 8 + file.readInt();
+			file.seek(firstRecord + 8 + 3);
+			file.write('x');
+		}
+
+		AccountsRepository restored = new AccountsRepositoryInMemory();
+		TransferJournal replayed = new TransferJournal(directory, 4096, 0, restored);
+		replayed.open();
+		assertEquals(100, restored.getAccount("a").readBalanceMinor());
+		assertNull(restored.getAccount("b"));
+		replayed.close();
+	}
+
+	private AccountsService newService(Path directory, int segmentSize) throws IOException {
+		AccountsRepository repository = new AccountsRepositoryInMemory();
+		TransferJournal journal = new TransferJournal(directory, segmentSize, 100, repository);
+		journal.open();
+
+		AccountsService service = new AccountsService(repository, Mockito.mock(NotificationService.class));
+		service.setJournal(journal);
+		serviceJournal = journal;
+		return service;
+	}
+}
@@ -0,0 +1,128 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.NotificationService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AccountsRepositoryOffHeapTest {
+
+	private AccountsRepositoryOffHeap repository;
+
+	@Before
+	public void setup() {
+		repository = new AccountsRepositoryOffHeap(1024);
+	}
+
+	@Test
+	public void testCreateAndGet() {
+		repository.createAccount(new Account("Id-1", 123.45));
+
+		Account account = repository.getAccount("Id-1");
+		assertEquals("Id-1", account.getAccountId());
+		assertEquals(12345, account.readBalanceMinor());
+		assertEquals(account, repository.getAccount("Id-1"));
+		assertNull(repository.getAccount("Id-2"));
+	}
+
+	@Test(expected = DuplicateAccountIdException.class)
+	public void testDuplicate() {
+		repository.createAccount(new Account("Id-1"));
+		repository.createAccount(new Account("Id-1"));
+	}
+
+	@Test
+	public void testClear() {
+		repository.createAccount(new Account("Id-1"));
+		repository.clearAccounts();
+		assertNull(repository.getAccount("Id-1"));
+		assertEquals(0, repository.size());
+	}
+
+	@Test
+	public void testScanVisitsEveryAccountOnce() {
+		for (int i = 0; i < 100; i++) {
+			repository.createAccount(new Account("Id-" + i, i));
+		}
+
+		Set<String> visited = new HashSet<>();
+		long cursor = 0;
+		do {
+			cursor = repository.scan(cursor, 7, account -> assertTrue(visited.add(account.getAccountId())));
+		} while (cursor != AccountsRepository.END_OF_SCAN);
+		assertEquals(100, visited.size());
+		assertEquals(1200, repository.getAccount("Id-12").readBalanceMinor());
+	}
+
+	@Test
+	public void testLongIdRejectedAndNeverFound() {
+		String accountId = new String(new char[AccountsRepositoryOffHeap.MAX_ID_BYTES + 1]).replace('\0', 'x');
+		AccountsService service = new AccountsService(repository, Mockito.mock(NotificationService.class));
+
+		try {
+			service.createAccount(new Account(accountId));
+			fail("Expected the id to be rejected");
+		} catch (IllegalArgumentException expected) {
+			// Rejected before it reaches the store
+		}
+		assertNull(repository.getAccount(accountId));
+		assertEquals(0, repository.size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFull() {
+		for (int i = 0; i <= 768; i++) {
+			repository.createAccount(new Account("Id-" + i));
+		}
+	}
+
+	@Test
+	public void testParallelTransfersConserveMoney() throws InterruptedException {
+		AccountsService service = new AccountsService(repository, Mockito.mock(NotificationService.class));
+		for (int i = 0; i < 20; i++) {
+			service.createAccount(new Account("Id-" + i, 100.0));
+		}
+
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < 1000; i++) {
+					int from = random.nextInt(20);
+					int to = random.nextInt(20);
+					if (from != to) {
+						try {
+							service.transfer(service.getAccount("Id-" + from), service.getAccount("Id-" + to),
+									random.nextInt(1, 30));
+						} catch (InsufficientFundsException e) {
+							// Expected for drained accounts.
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		long total = 0;
+		for (int i = 0; i < 20; i++) {
+			total += repository.getAccount("Id-" + i).readBalanceMinor();
+		}
+		assertEquals(200000, total);
+	}
+}
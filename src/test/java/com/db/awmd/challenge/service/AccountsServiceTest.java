@@ -1,19 +1,34 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.LedgerEntry;
+import com.db.awmd.challenge.domain.Posting;
+import com.db.awmd.challenge.domain.Transaction;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferCode;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
 import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.persistence.TransferJournal;
 import com.db.awmd.challenge.repository.AccountsRepository;
 import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @Slf4j
 public class AccountsServiceTest {
@@ -25,6 +40,8 @@ public class AccountsServiceTest {
 	public void setup() {
 		mockNotificationService = Mockito.mock(NotificationService.class);
 		service = new AccountsService(new MockAccountRepository(), mockNotificationService);
+		// MockAccount holds every lock for 500ms, longer than the default budget allows a transfer to wait
+		service.setBalanceLockPolicy(new BalanceLockPolicy(5000, 100));
 		service.createAccount(new MockAccount("from", 100.0));
 		service.createAccount(new MockAccount("to", 100.0));
 	}
@@ -40,7 +57,9 @@ public class AccountsServiceTest {
 		assertEquals(150.0, to.readBalance(), 0.0);
 
 		Transfer transfer = new Transfer(from.getAccountId(), to.getAccountId(), 50);
-		Mockito.verify(mockNotificationService, Mockito.times(1)).notifyAboutTransfer(from, transfer.toString());
+		ArgumentCaptor<Transfer> notified = ArgumentCaptor.forClass(Transfer.class);
+		Mockito.verify(mockNotificationService, Mockito.times(1)).notifyAboutTransfer(Mockito.eq(from), notified.capture());
+		assertEquals(transfer.toString(), notified.getValue().toString());
 	}
 
 	@Test(expected = AccountNotFoundException.class)
@@ -138,6 +157,296 @@ public class AccountsServiceTest {
 		assertEquals(35.0, third.readBalance(), 0.0);
 	}
 
+	@Test
+	public void testTryTransferCodes() {
+		assertEquals(TransferCode.OK, service.tryTransfer(new Transfer("from", "to", 10)));
+		assertEquals(TransferCode.INSUFFICIENT_FUNDS, service.tryTransfer(new Transfer("from", "to", 1000)));
+		assertEquals(TransferCode.SOURCE_NOT_FOUND, service.tryTransfer(new Transfer("invalid", "to", 10)));
+		assertEquals(TransferCode.DESTINATION_NOT_FOUND, service.tryTransfer(new Transfer("from", null, 10)));
+		assertEquals(TransferCode.ACCOUNTS_NOT_FOUND, service.tryTransfer(new Transfer("a", "b", 10)));
+		assertEquals(TransferCode.INVALID_AMOUNT, service.tryTransfer(new Transfer("from", "to", 0)));
+		assertEquals(TransferCode.SAME_ACCOUNT, service.tryTransfer(new Transfer("from", "from", 10)));
+
+		assertEquals(90.0, service.getAccount("from").readBalance(), 0.0);
+		assertEquals(110.0, service.getAccount("to").readBalance(), 0.0);
+	}
+
+	@Test
+	public void testResultOf() {
+		Transfer overdraft = new Transfer("from", "to", 1000);
+		TransferResult result = service.resultOf(service.tryTransfer(overdraft), overdraft);
+		assertEquals(TransferStatus.INSUFFICIENT_FUNDS, result.getStatus());
+		assertEquals("Available balance in account with id from is 100.00", result.getMessage());
+
+		Transfer missing = new Transfer("from", "invalid", 10);
+		result = service.resultOf(service.tryTransfer(missing), missing);
+		assertEquals(TransferStatus.ACCOUNT_NOT_FOUND, result.getStatus());
+		assertEquals("Account(s) with id(s) [invalid] could not be found", result.getMessage());
+
+		Transfer transfer = new Transfer("from", "to", 10);
+		assertEquals(TransferResult.completed(), service.resultOf(service.tryTransfer(transfer), transfer));
+	}
+
+	@Test
+	public void testTransferThatCannotBeJournaledIsUndone() {
+		TransferJournal journal = Mockito.mock(TransferJournal.class);
+		Mockito.when(journal.appendTransfer("from", "to", 5000))
+				.thenThrow(new UncheckedIOException(new IOException("No space left on device")));
+		service.setJournal(journal);
+
+		try {
+			service.transfer(new Transfer("from", "to", 50));
+			fail("Expected the journal failure");
+		} catch (UncheckedIOException expected) {
+			// Reported, not acknowledged
+		}
+
+		assertEquals(100.0, service.getAccount("from").readBalance(), 0.0);
+		assertEquals(100.0, service.getAccount("to").readBalance(), 0.0);
+		Mockito.verify(mockNotificationService, Mockito.never())
+				.notifyAboutTransfer(Mockito.any(), Mockito.any(Transfer.class));
+	}
+
+	@Test
+	public void testShardedTransferThatCannotBeJournaledIsUndone() throws InterruptedException {
+		TransferJournal journal = Mockito.mock(TransferJournal.class);
+		Mockito.when(journal.appendTransfer("from", "to", 5000))
+				.thenThrow(new UncheckedIOException(new IOException("No space left on device")));
+		service.setJournal(journal);
+		ShardedTransferEngine engine = new ShardedTransferEngine(2, 16);
+		service.setTransferEngine(engine);
+
+		try {
+			service.transfer(new Transfer("from", "to", 50));
+			fail("Expected the journal failure");
+		} catch (UncheckedIOException expected) {
+			// Reported, not acknowledged
+		} finally {
+			engine.shutdown();
+		}
+
+		assertEquals(100.0, service.getAccount("from").readBalance(), 0.0);
+		assertEquals(100.0, service.getAccount("to").readBalance(), 0.0);
+		Mockito.verify(mockNotificationService, Mockito.never())
+				.notifyAboutTransfer(Mockito.any(), Mockito.any(Transfer.class));
+	}
+
+	@Test
+	public void testTransferRateLimited() {
+		service.setRateLimiter(new TransferRateLimiter(0.01, 1, 0, 0, 1024));
+
+		List<TransferResult> results = service.transferAll(Arrays.asList(
+				new Transfer("from", "to", 10),
+				new Transfer("to", "from", 10)));
+
+		assertEquals(TransferStatus.COMPLETED, results.get(0).getStatus());
+		assertEquals(TransferStatus.RATE_LIMITED, results.get(1).getStatus());
+		assertEquals(90.0, service.getAccount("from").readBalance(), 0.0);
+		assertEquals(110.0, service.getAccount("to").readBalance(), 0.0);
+	}
+
+	@Test
+	public void testTransferAll() {
+		service.createAccount(new Account("third", 10.0));
+		service.createAccount(new Account("fourth", 10.0));
+
+		List<TransferResult> results = service.transferAll(Arrays.asList(
+				new Transfer("from", "to", 50),
+				new Transfer("third", "fourth", 5),
+				new Transfer("to", "from", 200),
+				new Transfer("from", "invalid", 10),
+				new Transfer("fourth", "third", 0)));
+
+		assertEquals(5, results.size());
+		assertEquals(TransferStatus.COMPLETED, results.get(0).getStatus());
+		assertEquals(TransferStatus.COMPLETED, results.get(1).getStatus());
+		assertEquals(TransferStatus.INSUFFICIENT_FUNDS, results.get(2).getStatus());
+		assertEquals(TransferStatus.ACCOUNT_NOT_FOUND, results.get(3).getStatus());
+		assertEquals(TransferStatus.REJECTED, results.get(4).getStatus());
+
+		assertEquals(50.0, service.getAccount("from").readBalance(), 0.0);
+		assertEquals(150.0, service.getAccount("to").readBalance(), 0.0);
+		assertEquals(5.0, service.getAccount("third").readBalance(), 0.0);
+		assertEquals(15.0, service.getAccount("fourth").readBalance(), 0.0);
+	}
+
+	@Test
+	public void testTransaction() {
+		service.createAccount(new Account("fee", 0.0));
+		service.transact(new Transaction(new Posting("from", -30), new Posting("to", 20), new Posting("fee", 10)));
+
+		assertEquals(70.0, service.getAccount("from").readBalance(), 0.0);
+		assertEquals(120.0, service.getAccount("to").readBalance(), 0.0);
+		assertEquals(10.0, service.getAccount("fee").readBalance(), 0.0);
+		Mockito.verify(mockNotificationService, Mockito.times(2))
+				.notifyAboutTransfer(Mockito.eq(service.getAccount("from")), Mockito.any(Transfer.class));
+
+		List<LedgerEntry> entries = new ArrayList<>();
+		service.getLedger().read("from", TransferLedger.NEWEST, 10, entries::add);
+		assertEquals(2, entries.size());
+		assertEquals(-3000, entries.get(0).getAmountMinor() + entries.get(1).getAmountMinor());
+	}
+
+	@Test
+	public void testTransactionInsufficientFundsChangesNothing() {
+		service.createAccount(new Account("poor", 5.0));
+		try {
+			service.transact(new Transaction(new Posting("from", -50), new Posting("poor", -10), new Posting("to", 60)));
+			fail("Expected InsufficientFundsException");
+		} catch (InsufficientFundsException e) {
+			assertTrue(e.getMessage().contains("poor"));
+		}
+
+		assertEquals(100.0, service.getAccount("from").readBalance(), 0.0);
+		assertEquals(5.0, service.getAccount("poor").readBalance(), 0.0);
+		assertEquals(100.0, service.getAccount("to").readBalance(), 0.0);
+	}
+
+	@Test
+	public void testTransactionThatCannotBeJournaledIsUndone() {
+		service.createAccount(new Account("fee", 0.0));
+		TransferJournal journal = Mockito.mock(TransferJournal.class);
+		Mockito.when(journal.appendTransaction(Mockito.any(), Mockito.any()))
+				.thenThrow(new UncheckedIOException(new IOException("No space left on device")));
+		service.setJournal(journal);
+
+		try {
+			service.transact(new Transaction(new Posting("from", -30), new Posting("to", 20), new Posting("fee", 10)));
+			fail("Expected the journal failure");
+		} catch (UncheckedIOException expected) {
+			// Reported, not acknowledged
+		}
+
+		assertEquals(100.0, service.getAccount("from").readBalance(), 0.0);
+		assertEquals(100.0, service.getAccount("to").readBalance(), 0.0);
+		assertEquals(0.0, service.getAccount("fee").readBalance(), 0.0);
+		Mockito.verify(mockNotificationService, Mockito.never())
+				.notifyAboutTransfer(Mockito.any(), Mockito.any(Transfer.class));
+	}
+
+	@Test
+	public void testTransactionNetsPostingsPerAccount() {
+		// "from" nets to a debit of 10 and can cover it, although one of its postings alone could not be.
+		service.transact(new Transaction(new Posting("from", -110), new Posting("from", 100), new Posting("to", 10)));
+
+		assertEquals(90.0, service.getAccount("from").readBalance(), 0.0);
+		assertEquals(110.0, service.getAccount("to").readBalance(), 0.0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTransactionMustSumToZero() {
+		service.transact(new Transaction(new Posting("from", -10), new Posting("to", 5)));
+	}
+
+	@Test(expected = AccountNotFoundException.class)
+	public void testTransactionMissingAccount() {
+		service.transact(new Transaction(new Posting("from", -10), new Posting("invalid", 10)));
+	}
+
+	@Test
+	public void testDepositWithdraw() {
+		assertEquals(15000, service.deposit("from", 5000));
+		assertEquals(2500, service.withdraw("from", 12500));
+	}
+
+	@Test
+	public void testDepositThatCannotBeJournaledIsUndone() {
+		TransferJournal journal = Mockito.mock(TransferJournal.class);
+		Mockito.when(journal.appendBalanceAdjusted("from", 5000))
+				.thenThrow(new UncheckedIOException(new IOException("No space left on device")));
+		service.setJournal(journal);
+
+		try {
+			service.deposit("from", 5000);
+			fail("Expected the journal failure");
+		} catch (UncheckedIOException expected) {
+			// Reported, not acknowledged
+		}
+
+		assertEquals(100.0, service.getAccount("from").readBalance(), 0.0);
+	}
+
+	@Test
+	public void testWithdrawalThatCannotBeJournaledIsUndone() {
+		TransferJournal journal = Mockito.mock(TransferJournal.class);
+		Mockito.when(journal.appendBalanceAdjusted("from", -5000))
+				.thenThrow(new UncheckedIOException(new IOException("No space left on device")));
+		service.setJournal(journal);
+
+		try {
+			service.withdraw("from", 5000);
+			fail("Expected the journal failure");
+		} catch (UncheckedIOException expected) {
+			// Reported, not acknowledged
+		}
+
+		assertEquals(100.0, service.getAccount("from").readBalance(), 0.0);
+	}
+
+	@Test(expected = InsufficientFundsException.class)
+	public void testWithdrawInsufficientFunds() {
+		service.withdraw("from", 10001);
+	}
+
+	@Test(expected = AccountNotFoundException.class)
+	public void testDepositMissingAccount() {
+		service.deposit("invalid", 100);
+	}
+
+	@Test
+	public void testTransferToHotAccountSkipsItsLock() throws InterruptedException {
+		service.setHotAccountPolicy(new HotAccountPolicy(new String[]{"merchant"}, 0));
+		Account merchant = new Account("merchant", 0.0);
+		service.createAccount(merchant);
+		assertTrue(merchant.isHot());
+
+		Thread holder = new Thread(() -> {
+			merchant.lockBalance();
+			try {
+				Thread.sleep(5000);
+			} catch (InterruptedException e) {
+				// Released early by the test.
+			} finally {
+				merchant.unlockBalance();
+			}
+		});
+		holder.start();
+		Thread.sleep(100);
+
+		// Would wait for the holder if the credit needed the merchant lock.
+		long start = System.nanoTime();
+		service.transfer(new Transfer("from", "merchant", 40));
+		assertTrue(System.nanoTime() - start < 2_000_000_000L);
+		holder.interrupt();
+		holder.join();
+
+		assertEquals(4000, merchant.readBalanceMinor());
+		assertEquals(6000, service.getAccount("from").readBalanceMinor());
+	}
+
+	@Test
+	public void testAutoPromoteContendedAccount() throws InterruptedException {
+		service.setHotAccountPolicy(new HotAccountPolicy(new String[0], 1));
+		Account to = service.getAccount("to");
+
+		Thread holder = new Thread(() -> {
+			to.lockBalance();
+			try {
+				Thread.sleep(300);
+			} catch (InterruptedException e) {
+			} finally {
+				to.unlockBalance();
+			}
+		});
+		holder.start();
+		Thread.sleep(100);
+		service.transfer(new Transfer("from", "to", 10));
+		holder.join();
+
+		assertTrue(to.isHot());
+		assertEquals(11000, to.readBalanceMinor());
+	}
+
 	private static class MockAccountRepository extends AccountsRepositoryInMemory {
 
 	}
@@ -189,6 +498,22 @@ public class AccountsServiceTest {
 			return this;
 		}
 
+		@Override
+		public boolean tryLockBalance(long timeoutNanos) {
+			if (!super.tryLockBalance(timeoutNanos)) {
+				return false;
+			}
+
+			log.info("Thread " + Thread.currentThread().getName() + " locked " + getAccountId());
+			try {
+				Thread.sleep(500);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+
+			return true;
+		}
+
 		@Override
 		public Account unlockBalance() {
 			super.unlockBalance();
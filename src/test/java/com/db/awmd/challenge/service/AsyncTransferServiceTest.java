@@ -0,0 +1,70 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class AsyncTransferServiceTest {
+
+	private AccountsService accountsService;
+	private AsyncTransferService asyncTransferService;
+
+	@Before
+	public void setup() {
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), Mockito.mock(NotificationService.class));
+		asyncTransferService = new AsyncTransferService(accountsService, 1, 1);
+		accountsService.createAccount(new Account("from", 100.0));
+		accountsService.createAccount(new Account("to", 0.0));
+	}
+
+	@After
+	public void tearDown() {
+		asyncTransferService.shutdown();
+	}
+
+	@Test
+	public void testReturnsWhileBalanceIsLocked() throws Exception {
+		Account from = accountsService.getAccount("from");
+		from.lockBalance();
+		CompletableFuture<TransferResult> result;
+		try {
+			result = asyncTransferService.transfer(new Transfer("from", "to", 10), null);
+			Thread.sleep(50);
+			assertFalse(result.isDone());
+		} finally {
+			from.unlockBalance();
+		}
+
+		assertEquals(TransferStatus.COMPLETED, result.get(5, TimeUnit.SECONDS).getStatus());
+		assertEquals(90.0, from.readBalance(), 0.0);
+	}
+
+	@Test
+	public void testSaturatedPoolAnswersUnavailable() throws Exception {
+		Account from = accountsService.getAccount("from");
+		from.lockBalance();
+		try {
+			// One transfer runs and waits for the lock, one is queued, the third is turned away.
+			asyncTransferService.transfer(new Transfer("from", "to", 10), null);
+			Thread.sleep(50);
+			asyncTransferService.transfer(new Transfer("from", "to", 10), null);
+			TransferResult rejected = asyncTransferService.transfer(new Transfer("from", "to", 10), null).getNow(null);
+
+			assertEquals(TransferStatus.UNAVAILABLE, rejected.getStatus());
+		} finally {
+			from.unlockBalance();
+		}
+	}
+}
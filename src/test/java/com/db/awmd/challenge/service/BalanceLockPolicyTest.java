@@ -0,0 +1,119 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BalanceLockPolicyTest {
+
+	private final BalanceLockPolicy policy = new BalanceLockPolicy(50, 100);
+
+	@Test
+	public void testLocksBoth() throws InterruptedException {
+		Account first = new Account("first");
+		Account second = new Account("second");
+
+		policy.lock(first, second);
+
+		assertFalse(isFree(first));
+		assertFalse(isFree(second));
+	}
+
+	@Test
+	public void testTimesOutOnHeldFirstLock() throws InterruptedException {
+		Account first = new Account("first");
+		Thread holder = hold(first);
+		try {
+			policy.lock(first, null);
+			fail("Lock should have timed out");
+		} catch (LockTimeoutException e) {
+			assertEquals("Account first is busy, retry later", e.getMessage());
+		} finally {
+			holder.interrupt();
+			holder.join();
+		}
+	}
+
+	@Test
+	public void testReleasesFirstLockWhenSecondStaysHeld() throws InterruptedException {
+		Account first = new Account("first");
+		Account second = new Account("second");
+		Thread holder = hold(second);
+		try {
+			policy.lock(first, second);
+			fail("Lock should have timed out");
+		} catch (LockTimeoutException e) {
+			assertEquals("Account second is busy, retry later", e.getMessage());
+			assertTrue(isFree(first));
+		} finally {
+			holder.interrupt();
+			holder.join();
+		}
+	}
+
+	@Test
+	public void testLockAllReleasesTakenLocks() throws InterruptedException {
+		Account[] accounts = {new Account("c"), new Account("b"), new Account("a")};
+		Thread holder = hold(accounts[2]);
+		try {
+			policy.lockAll(accounts, new boolean[]{true, false, true});
+			fail("Lock should have timed out");
+		} catch (LockTimeoutException e) {
+			assertTrue(isFree(accounts[0]));
+		} finally {
+			holder.interrupt();
+			holder.join();
+		}
+
+		policy.lockAll(accounts, new boolean[]{true, false, true});
+		assertFalse(isFree(accounts[0]));
+		assertTrue(isFree(accounts[1]));
+		assertFalse(isFree(accounts[2]));
+	}
+
+	/**
+	 * Whether another thread can lock the account right away.
+	 */
+	private static boolean isFree(Account account) throws InterruptedException {
+		AtomicBoolean free = new AtomicBoolean();
+		Thread probe = new Thread(() -> {
+			if (account.tryLockBalance(0)) {
+				free.set(true);
+				account.unlockBalance();
+			}
+		}, "probe");
+		probe.start();
+		probe.join();
+		return free.get();
+	}
+
+	/**
+	 * Locks the account from another thread until that thread is interrupted.
+	 */
+	private static Thread hold(Account account) throws InterruptedException {
+		CountDownLatch locked = new CountDownLatch(1);
+		Thread holder = new Thread(() -> {
+			account.lockBalance();
+			locked.countDown();
+			try {
+				Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+			} catch (InterruptedException e) {
+				// done holding
+			} finally {
+				account.unlockBalance();
+			}
+		}, "holder");
+		holder.start();
+		locked.await();
+		return holder;
+	}
+}
@@ -0,0 +1,126 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BulkAccountImporterTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private AccountsRepositoryInMemory repository;
+	private BulkAccountImporter importer;
+
+	@Before
+	public void setup() {
+		repository = new AccountsRepositoryInMemory();
+		AccountsService service = new AccountsService(repository, Mockito.mock(NotificationService.class));
+		importer = new BulkAccountImporter(service, 3, 2);
+		service.createAccount(new Account("existing", 1.0));
+	}
+
+	@After
+	public void tearDown() {
+		importer.shutdown();
+	}
+
+	@Test
+	public void testNdjsonReportsFailuresPerLine() throws IOException {
+		String input = "{\"accountId\":\"a\",\"balance\":10.5}\n"
+				+ "{\"accountId\":\"existing\",\"balance\":1}\n"
+				+ "{\"accountId\":\"b\",\"balance\":-1}\n"
+				+ "{\"accountId\":\"c\",\"balance\":\"0.001\"}\n"
+				+ "{\"balance\":1}\n"
+				+ "{\"accountId\":\"a\",\"balance\":2}\n"
+				+ "{\"accountId\":\"d\",\"balance\":\"7\",\"currency\":{\"code\":\"EUR\"}}\n";
+		List<BulkAccountImporter.Failure> failures = new ArrayList<>();
+
+		BulkAccountImporter.Summary summary = importer.importAccounts(objectMapper.getFactory().createParser(input),
+				failures::add);
+
+		assertEquals(2, summary.getCreated());
+		assertEquals(5, summary.getFailed());
+		failures.sort((x, y) -> Long.compare(x.getIndex(), y.getIndex()));
+		assertEquals(2, failures.get(0).getLine());
+		assertEquals("existing", failures.get(0).getAccountId());
+		assertEquals("Initial balance must be positive.", failures.get(1).getError());
+		assertEquals(4, failures.get(2).getLine());
+		assertEquals("Account id is required.", failures.get(3).getError());
+		assertEquals(5, failures.get(4).getIndex());
+		assertEquals(1050, repository.getAccount("a").readBalanceMinor());
+		assertEquals(700, repository.getAccount("d").readBalanceMinor());
+	}
+
+	@Test
+	public void testStructuredFieldsReportedPerLine() throws IOException {
+		String input = "{\"accountId\":{\"id\":\"a\"},\"balance\":1}\n"
+				+ "{\"accountId\":\"b\",\"balance\":[1,{\"x\":2}]}\n"
+				+ "{\"accountId\":\"c\",\"balance\":3}\n";
+		List<BulkAccountImporter.Failure> failures = new ArrayList<>();
+
+		BulkAccountImporter.Summary summary = importer.importAccounts(objectMapper.getFactory().createParser(input),
+				failures::add);
+
+		assertEquals(1, summary.getCreated());
+		assertEquals(2, summary.getFailed());
+		assertEquals("Field accountId must not be an object.", failures.get(0).getError());
+		assertEquals(2, failures.get(1).getLine());
+		assertEquals("Field balance must not be an array.", failures.get(1).getError());
+		assertEquals(300, repository.getAccount("c").readBalanceMinor());
+	}
+
+	@Test
+	public void testRejectedAccountReportedPerLine() throws IOException {
+		String longId = new String(new char[Account.MAX_ID_LENGTH + 1]).replace('\0', 'x');
+		String input = "{\"accountId\":\"" + longId + "\",\"balance\":1}\n{\"accountId\":\"a\",\"balance\":1}\n";
+		List<BulkAccountImporter.Failure> failures = new ArrayList<>();
+
+		BulkAccountImporter.Summary summary = importer.importAccounts(objectMapper.getFactory().createParser(input),
+				failures::add);
+
+		assertEquals(1, summary.getCreated());
+		assertEquals(1, summary.getFailed());
+		assertEquals(1, failures.get(0).getLine());
+		assertEquals(longId, failures.get(0).getAccountId());
+	}
+
+	@Test
+	public void testJsonArray() throws IOException {
+		StringBuilder input = new StringBuilder("[");
+		for (int i = 0; i < 100; i++) {
+			input.append(i > 0 ? "," : "").append("{\"accountId\":\"Id-").append(i).append("\",\"balance\":").append(i)
+					.append('}');
+		}
+		input.append(']');
+
+		BulkAccountImporter.Summary summary = importer.importAccounts(
+				objectMapper.getFactory().createParser(input.toString()), failure -> { });
+
+		assertEquals(100, summary.getCreated());
+		assertEquals(0, summary.getFailed());
+		assertEquals(101, repository.size());
+		assertEquals(9900, repository.getAccount("Id-99").readBalanceMinor());
+	}
+
+	@Test
+	public void testMalformedJsonStopsImport() throws IOException {
+		String input = "{\"accountId\":\"a\",\"balance\":1}\n{\"accountId\":\"b\",\"bal\n{\"accountId\":\"c\",\"balance\":1}";
+		List<BulkAccountImporter.Failure> failures = new ArrayList<>();
+
+		BulkAccountImporter.Summary summary = importer.importAccounts(objectMapper.getFactory().createParser(input),
+				failures::add);
+
+		assertEquals(1, summary.getCreated());
+		assertEquals(1, summary.getFailed());
+		assertEquals(1, failures.get(0).getIndex());
+	}
+}
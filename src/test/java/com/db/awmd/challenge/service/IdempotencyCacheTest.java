@@ -0,0 +1,120 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class IdempotencyCacheTest {
+
+	private final Transfer transfer = new Transfer("from", "to", 10);
+
+	@Test
+	public void testRetryReturnsFirstResult() {
+		IdempotencyCache cache = new IdempotencyCache(100, 600, 4);
+		AtomicInteger executions = new AtomicInteger();
+		TransferResult failed = new TransferResult(TransferStatus.INSUFFICIENT_FUNDS, "Insufficient funds");
+
+		assertSame(failed, cache.execute("key", transfer, () -> {
+			executions.incrementAndGet();
+			return failed;
+		}));
+		assertSame(failed, cache.execute("key", new Transfer("from", "to", 10), () -> {
+			executions.incrementAndGet();
+			return TransferResult.completed();
+		}));
+
+		assertEquals(1, executions.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testKeyReusedForOtherTransfer() {
+		IdempotencyCache cache = new IdempotencyCache(100, 600, 4);
+		cache.execute("key", transfer, TransferResult::completed);
+		cache.execute("key", new Transfer("from", "to", 11), TransferResult::completed);
+	}
+
+	@Test
+	public void testEvictsOldestBeyondCapacity() {
+		IdempotencyCache cache = new IdempotencyCache(4, 600, 1);
+		for (int i = 0; i < 10; i++) {
+			cache.execute("key-" + i, transfer, TransferResult::completed);
+		}
+
+		assertEquals(4, cache.size());
+		assertEquals(6, cache.getEvictions());
+	}
+
+	@Test
+	public void testExpiresAfterTtl() throws InterruptedException {
+		IdempotencyCache cache = new IdempotencyCache(100, 0, 1);
+		AtomicInteger executions = new AtomicInteger();
+		cache.execute("key", transfer, () -> {
+			executions.incrementAndGet();
+			return TransferResult.completed();
+		});
+		Thread.sleep(1);
+		cache.execute("key", transfer, () -> {
+			executions.incrementAndGet();
+			return TransferResult.completed();
+		});
+
+		assertEquals(2, executions.get());
+		assertEquals(1, cache.getExpirations());
+	}
+
+	@Test
+	public void testConcurrentRetryWaitsForFirst() throws InterruptedException {
+		IdempotencyCache cache = new IdempotencyCache(100, 600, 4);
+		AtomicInteger executions = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Thread first = new Thread(() -> cache.execute("key", transfer, () -> {
+			executions.incrementAndGet();
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return TransferResult.completed();
+		}));
+		first.start();
+		started.await();
+
+		Thread retry = new Thread(() -> cache.execute("key", transfer, () -> {
+			executions.incrementAndGet();
+			return TransferResult.completed();
+		}));
+		retry.start();
+		Thread.sleep(100);
+		release.countDown();
+		first.join();
+		retry.join();
+
+		assertEquals(1, executions.get());
+	}
+
+	@Test
+	public void testFailedExecutionIsForgotten() {
+		IdempotencyCache cache = new IdempotencyCache(100, 600, 4);
+		try {
+			cache.execute("key", transfer, () -> {
+				throw new IllegalStateException("Transfer engine is shut down");
+			});
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+
+		assertEquals(TransferStatus.COMPLETED, cache.execute("key", transfer, TransferResult::completed).getStatus());
+	}
+}
@@ -0,0 +1,158 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationDispatcherTest {
+
+	@Test
+	public void testDeliversAllNotifications() throws InterruptedException {
+		CountingNotificationService delegate = new CountingNotificationService(null);
+		NotificationDispatcher dispatcher = new NotificationDispatcher(delegate, 100, 2, 10,
+				NotificationDispatcher.OverflowPolicy.BLOCK, 0);
+
+		Account from = new Account("from");
+		for (int i = 0; i < 500; i++) {
+			dispatcher.notifyAboutTransfer(from, new Transfer("from", "to", i + 1));
+		}
+		dispatcher.shutdown();
+
+		assertEquals(500, delegate.notifications.get());
+		assertEquals(500, dispatcher.getDeliveredCount());
+		assertEquals(0, dispatcher.getQueueDepth());
+	}
+
+	@Test
+	public void testDropOldest() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		CountingNotificationService delegate = new CountingNotificationService(release);
+		NotificationDispatcher dispatcher = new NotificationDispatcher(delegate, 5, 1, 1,
+				NotificationDispatcher.OverflowPolicy.DROP_OLDEST, 0);
+
+		Account account = new Account("from");
+		for (int i = 0; i < 20; i++) {
+			dispatcher.notifyAboutTransfer(account, "transfer " + i);
+		}
+		assertTrue(dispatcher.getDroppedCount() > 0);
+		assertTrue(dispatcher.getQueueDepth() <= 5);
+
+		release.countDown();
+		dispatcher.shutdown();
+		assertEquals(20, delegate.notifications.get() + dispatcher.getDroppedCount());
+	}
+
+	@Test
+	public void testSpill() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		CountingNotificationService delegate = new CountingNotificationService(release);
+		NotificationDispatcher dispatcher = new NotificationDispatcher(delegate, 5, 1, 4,
+				NotificationDispatcher.OverflowPolicy.SPILL, 100);
+
+		Account account = new Account("from");
+		for (int i = 0; i < 20; i++) {
+			dispatcher.notifyAboutTransfer(account, "transfer " + i);
+		}
+		assertTrue(dispatcher.getSpilledCount() > 0);
+
+		release.countDown();
+		dispatcher.shutdown();
+		assertEquals(20, delegate.notifications.get());
+		assertEquals(0, dispatcher.getDroppedCount());
+	}
+
+	@Test
+	public void testSpillIsBounded() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		CountingNotificationService delegate = new CountingNotificationService(release);
+		NotificationDispatcher dispatcher = new NotificationDispatcher(delegate, 5, 1, 4,
+				NotificationDispatcher.OverflowPolicy.SPILL, 3);
+
+		Account account = new Account("from");
+		for (int i = 0; i < 20; i++) {
+			dispatcher.notifyAboutTransfer(account, "transfer " + i);
+		}
+		assertTrue(dispatcher.getSpillDepth() <= 3);
+		assertTrue(dispatcher.getDroppedCount() > 0);
+
+		release.countDown();
+		dispatcher.shutdown();
+		assertEquals(20, delegate.notifications.get() + dispatcher.getDroppedCount());
+		assertEquals(0, dispatcher.getSpillDepth());
+	}
+
+	@Test(timeout = 10000)
+	public void testEnqueueAfterShutdownDoesNotBlock() throws InterruptedException {
+		CountingNotificationService delegate = new CountingNotificationService(null);
+		NotificationDispatcher dispatcher = new NotificationDispatcher(delegate, 1, 1, 1,
+				NotificationDispatcher.OverflowPolicy.BLOCK, 0);
+		dispatcher.shutdown();
+
+		Account account = new Account("from");
+		for (int i = 0; i < 5; i++) {
+			dispatcher.notifyAboutTransfer(account, "transfer " + i);
+		}
+		assertEquals(5, dispatcher.getDroppedCount());
+		assertEquals(0, delegate.notifications.get());
+	}
+
+	@Test(timeout = 10000)
+	public void testNotificationsRacingShutdownAreAccountedFor() throws InterruptedException {
+		CountingNotificationService delegate = new CountingNotificationService(null);
+		NotificationDispatcher dispatcher = new NotificationDispatcher(delegate, 4, 2, 2,
+				NotificationDispatcher.OverflowPolicy.SPILL, 100);
+
+		Account account = new Account("from");
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 20000; i++) {
+					dispatcher.notifyAboutTransfer(account, "transfer " + i);
+				}
+			});
+			threads[t].start();
+		}
+		Thread.sleep(20);
+		dispatcher.shutdown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(dispatcher.getEnqueuedCount(), delegate.notifications.get() + dispatcher.getDroppedCount());
+		assertEquals(0, dispatcher.getQueueDepth());
+		assertEquals(0, dispatcher.getSpillDepth());
+	}
+
+	private static class CountingNotificationService implements NotificationService {
+		private final CountDownLatch release;
+		private final AtomicInteger notifications = new AtomicInteger();
+
+		CountingNotificationService(CountDownLatch release) {
+			this.release = release;
+		}
+
+		@Override
+		public void notifyAboutTransfer(Account account, String transferDescription) {
+			notifications.incrementAndGet();
+		}
+
+		@Override
+		public void notifyAboutTransfers(Account account, List<String> transferDescriptions) {
+			if (release != null) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			notifications.addAndGet(transferDescriptions.size());
+		}
+	}
+}
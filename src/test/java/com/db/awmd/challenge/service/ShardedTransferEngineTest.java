@@ -0,0 +1,127 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+
+public class ShardedTransferEngineTest {
+
+	private ShardedTransferEngine engine;
+	private AccountsService service;
+
+	@Before
+	public void setup() {
+		engine = new ShardedTransferEngine(4, 16);
+		service = new AccountsService(new AccountsRepositoryInMemory(), Mockito.mock(NotificationService.class));
+		service.setTransferEngine(engine);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		engine.shutdown();
+	}
+
+	@Test
+	public void testTransfer() {
+		Account from = new Account("from", 100.0);
+		Account to = new Account("to", 100.0);
+
+		service.transfer(from, to, 40);
+
+		assertEquals(60.0, from.readBalance(), 0.0);
+		assertEquals(140.0, to.readBalance(), 0.0);
+	}
+
+	@Test(expected = InsufficientFundsException.class)
+	public void testInsufficientFunds() {
+		service.transfer(new Account("from", 10.0), new Account("to", 0.0), 20);
+	}
+
+	@Test
+	public void testParallelTransfersConserveMoney() throws InterruptedException {
+		List<Account> accounts = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			accounts.add(new Account("Id-" + i, 1000.0));
+		}
+
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			Thread thread = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < 500; i++) {
+					Account from = accounts.get(random.nextInt(accounts.size()));
+					Account to = accounts.get(random.nextInt(accounts.size()));
+					if (from != to) {
+						try {
+							service.transfer(from, to, random.nextInt(1, 50));
+						} catch (InsufficientFundsException e) {
+							// Expected for drained accounts.
+						}
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		double total = 0;
+		for (Account account : accounts) {
+			total += account.readBalance();
+		}
+		assertEquals(16000.0, total, 0.0);
+		assertEquals(0, engine.getInFlightCredits());
+	}
+
+	@Test(timeout = 10_000)
+	public void testShutdownDuringTransfersLosesNothing() throws InterruptedException {
+		List<Account> accounts = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			accounts.add(new Account("Id-" + i, 1000.0));
+		}
+
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			Thread thread = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (true) {
+					Account from = accounts.get(random.nextInt(accounts.size()));
+					Account to = accounts.get(random.nextInt(accounts.size()));
+					if (from != to) {
+						try {
+							engine.tryTransfer(from, to, random.nextInt(1, 50));
+						} catch (IllegalStateException e) {
+							return;
+						}
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		Thread.sleep(50);
+		engine.shutdown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		long total = 0;
+		for (Account account : accounts) {
+			total += account.readBalanceMinor();
+		}
+		assertEquals(16 * 100_000L, total);
+		assertEquals(0, engine.getInFlightCredits());
+	}
+}
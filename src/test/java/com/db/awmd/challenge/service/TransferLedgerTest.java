@@ -0,0 +1,72 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.LedgerEntry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TransferLedgerTest {
+
+	@Test
+	public void testRecordsBothSides() {
+		TransferLedger ledger = new TransferLedger(16);
+		ledger.recordTransfer("a", "b", 500);
+
+		List<LedgerEntry> entries = read(ledger, "a", TransferLedger.NEWEST, 10);
+		assertEquals(1, entries.size());
+		assertEquals("b", entries.get(0).getCounterpartyAccountId());
+		assertEquals(-500, entries.get(0).getAmountMinor());
+		assertEquals(500, read(ledger, "b", TransferLedger.NEWEST, 10).get(0).getAmountMinor());
+	}
+
+	@Test
+	public void testKeepsNewestEntriesAcrossGrowthAndWrap() {
+		TransferLedger ledger = new TransferLedger(20);
+		assertEquals(32, ledger.getRetention());
+		for (int i = 1; i <= 100; i++) {
+			ledger.recordOneSide("a", "b", i);
+		}
+
+		List<LedgerEntry> entries = new ArrayList<>();
+		long cursor = TransferLedger.NEWEST;
+		do {
+			cursor = ledger.read("a", cursor, 10, entries::add);
+		} while (cursor != TransferLedger.END_OF_LEDGER);
+
+		assertEquals(32, entries.size());
+		for (int i = 0; i < entries.size(); i++) {
+			assertEquals(100 - i, entries.get(i).getSequence());
+			assertEquals(100 - i, entries.get(i).getAmountMinor());
+		}
+	}
+
+	@Test
+	public void testCursorPagesBeforeSequence() {
+		TransferLedger ledger = new TransferLedger(64);
+		for (int i = 1; i <= 5; i++) {
+			ledger.recordOneSide("a", "b", i);
+		}
+
+		List<LedgerEntry> entries = new ArrayList<>();
+		assertEquals(4, ledger.read("a", TransferLedger.NEWEST, 2, entries::add));
+		assertEquals(TransferLedger.END_OF_LEDGER, ledger.read("a", 4, 5, entries::add));
+		assertEquals(5, entries.size());
+		assertEquals(1, entries.get(4).getSequence());
+	}
+
+	@Test
+	public void testDisabled() {
+		TransferLedger ledger = new TransferLedger(0);
+		ledger.recordTransfer("a", "b", 500);
+		assertEquals(0, read(ledger, "a", TransferLedger.NEWEST, 10).size());
+	}
+
+	private static List<LedgerEntry> read(TransferLedger ledger, String accountId, long cursor, int limit) {
+		List<LedgerEntry> entries = new ArrayList<>();
+		ledger.read(accountId, cursor, limit, entries::add);
+		return entries;
+	}
+}
@@ -0,0 +1,67 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.exception.RateLimitExceededException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class TransferRateLimiterTest {
+
+	@Test
+	public void testAdmitsBurstPerAccount() {
+		TransferRateLimiter limiter = new TransferRateLimiter(0.01, 2, 0, 0, 1024);
+		limiter.admit("a", "b");
+		limiter.admit("a", "c");
+		assertRejected(limiter, "a", "d", "Transfer rate limit of account a exceeded, retry later");
+
+		// Other accounts still have their own tokens
+		limiter.admit("d", "e");
+	}
+
+	@Test
+	public void testRejectedDestinationReturnsSourceToken() {
+		TransferRateLimiter limiter = new TransferRateLimiter(0.01, 1, 0, 0, 1024);
+		limiter.admit("x", "b");
+		assertRejected(limiter, "a", "b", "Transfer rate limit of account b exceeded, retry later");
+
+		// a's token was given back when b turned the transfer away
+		limiter.admit("a", "c");
+	}
+
+	@Test
+	public void testGlobalLimit() {
+		TransferRateLimiter limiter = new TransferRateLimiter(0.01, 1, 0.01, 1, 1024);
+		limiter.admit("a", "b");
+		assertRejected(limiter, "c", "d", "Transfer rate limit exceeded, retry later");
+		assertRejected(limiter, "c", "d", "Transfer rate limit exceeded, retry later");
+	}
+
+	@Test
+	public void testRefills() throws InterruptedException {
+		TransferRateLimiter limiter = new TransferRateLimiter(100, 1, 0, 0, 1024);
+		limiter.admit("a", "b");
+		assertRejected(limiter, "a", "b", "Transfer rate limit of account a exceeded, retry later");
+		Thread.sleep(20);
+		limiter.admit("a", "b");
+	}
+
+	@Test
+	public void testDisabled() {
+		TransferRateLimiter limiter = new TransferRateLimiter(0, 1, 0, 1, 1024);
+		assertFalse(limiter.isEnabled());
+		for (int i = 0; i < 1000; i++) {
+			limiter.admit("a", "b");
+		}
+	}
+
+	private static void assertRejected(TransferRateLimiter limiter, String from, String to, String message) {
+		try {
+			limiter.admit(from, to);
+			fail("Transfer should have been rate limited");
+		} catch (RateLimitExceededException e) {
+			assertEquals(message, e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferCode;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Mixed transfers from several threads over a few accounts, checking afterwards that no money was created or lost and
+ * no balance lock was left held. Half of the threads transfer along fixed pairs in opposite directions, the others
+ * between random accounts including a hot one, and amounts are large enough that many transfers fail for insufficient
+ * funds. Runs for {@code soak.seconds}, 2 by default; the benchmark LoadGenerator drives longer and larger runs.
+ */
+public class TransferSoakTest {
+
+	private static final int ACCOUNTS = 16;
+	private static final int THREADS = 8;
+	private static final long INITIAL_BALANCE = 10_000;
+
+	@Test
+	public void testMoneyConservedAndLocksReleased() throws InterruptedException {
+		AccountsService service = new AccountsService(new AccountsRepositoryInMemory(), (account, transfer) -> { });
+		Account[] accounts = new Account[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accounts[i] = Account.ofMinor("Id-" + i, INITIAL_BALANCE);
+			service.createAccount(accounts[i]);
+		}
+		accounts[0].promoteToHot();
+
+		AtomicBoolean running = new AtomicBoolean(true);
+		CountDownLatch done = new CountDownLatch(THREADS);
+		long[][] outcomes = new long[THREADS][TransferCode.values().length];
+		for (int t = 0; t < THREADS; t++) {
+			int thread = t;
+			new Thread(() -> {
+				SplittableRandom random = new SplittableRandom(thread);
+				try {
+					while (running.get()) {
+						int from;
+						int to;
+						if (thread % 2 == 0) {
+							// Threads 0 and 2 transfer between accounts 2 and 3 in opposite directions, threads 4 and 6
+							// between accounts 4 and 5.
+							int pair = 2 + 2 * (thread / 4);
+							from = (thread / 2) % 2 == 0 ? pair : pair + 1;
+							to = (thread / 2) % 2 == 0 ? pair + 1 : pair;
+						} else {
+							from = random.nextInt(ACCOUNTS);
+							to = random.nextInt(ACCOUNTS);
+						}
+						TransferCode code = service.tryTransferMinor(accounts[from], accounts[to],
+								1 + random.nextLong(INITIAL_BALANCE));
+						outcomes[thread][code.ordinal()]++;
+					}
+				} finally {
+					done.countDown();
+				}
+			}, "soak-" + t).start();
+		}
+
+		Thread.sleep(TimeUnit.SECONDS.toMillis(Long.getLong("soak.seconds", 2)));
+		running.set(false);
+		assertTrue("Transfers did not finish", done.await(10, TimeUnit.SECONDS));
+		service.shutdown();
+
+		long total = 0;
+		for (Account account : accounts) {
+			total += account.readBalanceMinor();
+			assertTrue("Lock of " + account.getAccountId() + " left held", account.tryLockBalance(0));
+			account.unlockBalance();
+		}
+		assertEquals(INITIAL_BALANCE * ACCOUNTS, total);
+		assertTrue(count(outcomes, TransferCode.OK) > 0);
+		assertTrue(count(outcomes, TransferCode.INSUFFICIENT_FUNDS) > 0);
+	}
+
+	private static long count(long[][] outcomes, TransferCode code) {
+		long count = 0;
+		for (long[] counts : outcomes) {
+			count += counts[code.ordinal()];
+		}
+		return count;
+	}
+}
@@ -0,0 +1,31 @@
+package com.db.awmd.challenge.service;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualThreadsTest {
+
+	@Test
+	public void testAvailableFromJava21() {
+		String version = System.getProperty("java.specification.version");
+		int feature = version.startsWith("1.") ? 8 : Integer.parseInt(version);
+
+		assertEquals(feature >= 21, VirtualThreads.isAvailable());
+	}
+
+	@Test
+	public void testExecutorRunsTasksOnNamedThreads() throws Exception {
+		ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("test");
+		try {
+			String name = executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+			assertTrue(name, name.startsWith("test-"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
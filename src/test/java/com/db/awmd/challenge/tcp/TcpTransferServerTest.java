@@ -0,0 +1,224 @@
+package com.db.awmd.challenge.tcp;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.NotificationService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TcpTransferServerTest {
+
+	private AccountsService accountsService;
+	private TcpTransferServer server;
+	private SocketChannel client;
+
+	@Before
+	public void setup() throws IOException {
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), Mockito.mock(NotificationService.class));
+		accountsService.createAccount(new Account("from", 100.0));
+		accountsService.createAccount(new Account("to", 0.0));
+		server = new TcpTransferServer(accountsService, "localhost", 0, 1);
+		server.start();
+		client = SocketChannel.open(new InetSocketAddress("localhost", server.getPort()));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void testTransferAndBalance() throws IOException {
+		send(transfer(1, "from", "to", 4000));
+		send(balance(2, "to"));
+
+		ByteBuffer response = receive();
+		assertEquals(BinaryProtocol.TRANSFER, response.get());
+		assertEquals(1, response.getLong());
+		assertEquals(BinaryProtocol.STATUS_OK, response.get());
+
+		response = receive();
+		assertEquals(BinaryProtocol.BALANCE, response.get());
+		assertEquals(2, response.getLong());
+		assertEquals(BinaryProtocol.STATUS_OK, response.get());
+		assertEquals(4000, response.getLong());
+		assertEquals(accountsService.getAccountView("to").getVersion(), response.getLong());
+		assertEquals("", BinaryProtocol.getString(response));
+	}
+
+	@Test
+	public void testFailuresCarryRestMessages() throws IOException {
+		ByteBuffer requests = ByteBuffer.allocate(1024);
+		requests.put(transfer(1, "from", "to", 100_01));
+		requests.put(transfer(2, "from", "missing", 1));
+		requests.put(transfer(3, "from", "from", 1));
+		requests.put(transfer(4, "from", "to", -100));
+		requests.put(balance(5, "missing"));
+		requests.flip();
+		send(requests);
+
+		assertFailure(receive(), 1, BinaryProtocol.STATUS_INSUFFICIENT_FUNDS,
+				"Available balance in account with id from is 100.00");
+		assertFailure(receive(), 2, BinaryProtocol.STATUS_ACCOUNT_NOT_FOUND,
+				"Account(s) with id(s) [missing] could not be found");
+		assertFailure(receive(), 3, BinaryProtocol.STATUS_REJECTED, "Cannot transfer amount to the same account");
+		assertFailure(receive(), 4, BinaryProtocol.STATUS_REJECTED, "Invalid amount -1.00");
+		assertFailure(receive(), 5, BinaryProtocol.STATUS_ACCOUNT_NOT_FOUND,
+				"Account(s) with id(s) [missing] could not be found");
+		assertEquals(100_00, accountsService.getAccountView("from").getBalanceMinor());
+	}
+
+	@Test
+	public void testMalformedRequest() throws IOException {
+		ByteBuffer request = ByteBuffer.allocate(32);
+		request.putInt(13).put(BinaryProtocol.TRANSFER).putLong(7).putInt(0);
+		request.flip();
+		send(request);
+
+		ByteBuffer response = receive();
+		assertEquals(BinaryProtocol.TRANSFER, response.get());
+		assertEquals(7, response.getLong());
+		assertEquals(BinaryProtocol.STATUS_MALFORMED, response.get());
+
+		// The connection stays usable.
+		send(balance(8, "from"));
+		response = receive();
+		response.get();
+		assertEquals(8, response.getLong());
+		assertEquals(BinaryProtocol.STATUS_OK, response.get());
+	}
+
+	@Test
+	public void testUnexpectedFailureIsAnswered() throws IOException {
+		AccountsService failing = Mockito.spy(accountsService);
+		Mockito.doThrow(new IllegalStateException("Repository unavailable")).when(failing).getAccountView("from");
+		client.close();
+		server.close();
+		server = new TcpTransferServer(failing, "localhost", 0, 1);
+		server.start();
+		client = SocketChannel.open(new InetSocketAddress("localhost", server.getPort()));
+
+		send(balance(1, "from"));
+		// The exception stays in the log.
+		assertFailure(receive(), 1, BinaryProtocol.STATUS_UNAVAILABLE, TcpTransferServer.UNAVAILABLE_MESSAGE);
+
+		// The loop survives and keeps serving the connection.
+		send(balance(2, "to"));
+		ByteBuffer response = receive();
+		response.get();
+		assertEquals(2, response.getLong());
+		assertEquals(BinaryProtocol.STATUS_OK, response.get());
+	}
+
+	@Test
+	public void testOversizedFrameClosesConnection() throws IOException {
+		ByteBuffer request = ByteBuffer.allocate(4);
+		request.putInt(BinaryProtocol.MAX_FRAME + 1);
+		request.flip();
+		send(request);
+
+		ByteBuffer response = receive();
+		response.get();
+		response.getLong();
+		assertEquals(BinaryProtocol.STATUS_MALFORMED, response.get());
+		assertTrue(client.read(ByteBuffer.allocate(1)) < 0);
+	}
+
+	@Test
+	public void testPipelinedTransfers() throws Exception {
+		int count = 20_000;
+		ByteBuffer requests = ByteBuffer.allocate(count * 32);
+		for (int i = 0; i < count; i++) {
+			requests.put(transfer(i, i % 2 == 0 ? "from" : "to", i % 2 == 0 ? "to" : "from", 1));
+		}
+		requests.flip();
+		// More than the socket buffers hold: the server stops reading while the responses are not read.
+		CompletableFuture<Void> sent = CompletableFuture.runAsync(() -> {
+			try {
+				send(requests);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+
+		for (int i = 0; i < count; i++) {
+			ByteBuffer response = receive();
+			response.get();
+			assertEquals(i, response.getLong());
+			assertEquals(BinaryProtocol.STATUS_OK, response.get());
+		}
+		sent.get(5, TimeUnit.SECONDS);
+		assertEquals(100_00, accountsService.getAccountView("from").getBalanceMinor());
+	}
+
+	private static ByteBuffer transfer(long requestId, String from, String to, long amount) {
+		ByteBuffer frame = ByteBuffer.allocate(64);
+		frame.putInt(0).put(BinaryProtocol.TRANSFER).putLong(requestId);
+		BinaryProtocol.putString(frame, from);
+		BinaryProtocol.putString(frame, to);
+		frame.putLong(amount);
+		return finish(frame);
+	}
+
+	private static ByteBuffer balance(long requestId, String accountId) {
+		ByteBuffer frame = ByteBuffer.allocate(64);
+		frame.putInt(0).put(BinaryProtocol.BALANCE).putLong(requestId);
+		BinaryProtocol.putString(frame, accountId);
+		return finish(frame);
+	}
+
+	private static ByteBuffer finish(ByteBuffer frame) {
+		frame.putInt(0, frame.position() - 4);
+		frame.flip();
+		return frame;
+	}
+
+	private void send(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			client.write(buffer);
+		}
+	}
+
+	/**
+	 * Reads one response frame and returns its body.
+	 */
+	private ByteBuffer receive() throws IOException {
+		ByteBuffer length = readFully(4);
+		return readFully(length.getInt());
+	}
+
+	private ByteBuffer readFully(int size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		while (buffer.hasRemaining()) {
+			if (client.read(buffer) < 0) {
+				throw new IOException("Connection closed");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static void assertFailure(ByteBuffer response, long requestId, byte status, String message) {
+		response.get();
+		assertEquals(requestId, response.getLong());
+		assertEquals(status, response.get());
+		assertEquals(0, response.getLong());
+		assertEquals(0, response.getLong());
+		assertEquals(message, BinaryProtocol.getString(response));
+	}
+}
@@ -0,0 +1,56 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.cluster.ClusterCredentials;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ClusterAuthenticationFilterTest {
+
+	private final ClusterAuthenticationFilter filter =
+			new ClusterAuthenticationFilter(new ClusterCredentials("0123456789abcdef"));
+
+	@Test
+	public void testRequestWithSecretPasses() throws Exception {
+		MockHttpServletRequest request = request();
+		request.addHeader(ClusterCredentials.HEADER, "0123456789abcdef");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MockFilterChain chain = new MockFilterChain();
+
+		filter.doFilter(request, response, chain);
+
+		assertEquals(200, response.getStatus());
+		assertNotNull(chain.getRequest());
+	}
+
+	@Test
+	public void testRequestWithoutSecretIsForbidden() throws Exception {
+		for (String secret : new String[]{null, "", "0123456789abcdeF"}) {
+			MockHttpServletRequest request = request();
+			if (secret != null) {
+				request.addHeader(ClusterCredentials.HEADER, secret);
+			}
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			MockFilterChain chain = new MockFilterChain();
+
+			filter.doFilter(request, response, chain);
+
+			assertEquals(403, response.getStatus());
+			assertNull(chain.getRequest());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testShortSecretIsRefused() {
+		new ClusterCredentials("secret");
+	}
+
+	private static MockHttpServletRequest request() {
+		return new MockHttpServletRequest("PUT", "/internal/shard/transfers/t-1/prepare-credit");
+	}
+}